@@ -0,0 +1,108 @@
+package com.bbn.sd2;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Parsing and comparison of dictionary rows, which run for every row of
+ * every tab on every pass
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DictionaryEntryBenchmark {
+    @Param({"10000", "100000"})
+    public int rowCount;
+
+    private Map<String, Integer> headerMap;
+    private List<List<Object>> rows;
+    private List<DictionaryEntry> entries;
+    private List<DictionaryEntry> copies;
+    private DictionaryTable table;
+
+    @Setup
+    public void setUp() throws Exception {
+        SyntheticDictionary.configure();
+
+        headerMap = SyntheticDictionary.headerMap();
+        rows = SyntheticDictionary.rows(rowCount);
+        entries = SyntheticDictionary.entries(rowCount);
+
+        copies = new ArrayList<>();
+        for(DictionaryEntry e : entries) {
+            copies.add(new DictionaryEntry(e));
+        }
+        table = DictionaryTable.of(entries);
+    }
+
+    @Benchmark
+    public void parseRows(Blackhole blackhole) throws Exception {
+        int row = 2;
+        for(List<Object> values : rows) {
+            blackhole.consume(new DictionaryEntry(SyntheticDictionary.TAB, headerMap,
+                                                  row++, values));
+        }
+    }
+
+    @Benchmark
+    public void decodeRows(Blackhole blackhole) {
+        RowDecoder decoder = RowDecoder.compile(SyntheticDictionary.TAB, headerMap);
+        int row = 2;
+        for(List<Object> values : rows) {
+            blackhole.consume(decoder.decode(row++, values));
+        }
+    }
+
+    @Benchmark
+    public int compareEntries() {
+        int equalCount = 0;
+        for(int i=0; i<entries.size(); ++i) {
+            if(entries.get(i).equals(copies.get(i))) {
+                ++equalCount;
+            }
+        }
+        return equalCount;
+    }
+
+    @Benchmark
+    public void copyEntries(Blackhole blackhole) {
+        for(DictionaryEntry e : entries) {
+            blackhole.consume(new DictionaryEntry(e));
+        }
+    }
+
+    @Benchmark
+    public DictionaryTable tabulateEntries() {
+        return DictionaryTable.of(entries);
+    }
+
+    @Benchmark
+    public int matchTabulatedEntries() {
+        int equalCount = 0;
+        for(int i=0; i<entries.size(); ++i) {
+            if(table.get(i).matches(copies.get(i))) {
+                ++equalCount;
+            }
+        }
+        return equalCount;
+    }
+
+    @Benchmark
+    public void generateFieldMaps(Blackhole blackhole) {
+        for(DictionaryEntry e : entries) {
+            blackhole.consume(e.generateFieldMap());
+        }
+    }
+}
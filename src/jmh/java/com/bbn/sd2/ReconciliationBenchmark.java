@@ -0,0 +1,120 @@
+package com.bbn.sd2;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.namespace.QName;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.sbolstandard.core2.ComponentDefinition;
+import org.sbolstandard.core2.SBOLDocument;
+
+/**
+ * Checks that run over whole tabs while they are reconciled with
+ * SynBioHub
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ReconciliationBenchmark {
+    private static final QName LAB_UID = new QName("http://sd2e.org#", "Ginkgo_UID", "sd2");
+
+    @Param({"10000", "100000"})
+    public int rowCount;
+
+    private List<DictionaryEntry> entries;
+    private List<DictionaryEntry> synBioHubEntries;
+    private List<String> names;
+
+    /** One object per row, each annotated with the lab UIDs of its row */
+    private List<ComponentDefinition> objects;
+    private List<Set<String>> spreadsheetUIDs;
+
+    @Setup
+    public void setUp() throws Exception {
+        SyntheticDictionary.configure();
+
+        entries = SyntheticDictionary.entries(rowCount);
+        synBioHubEntries = new ArrayList<>();
+        names = new ArrayList<>();
+        for(DictionaryEntry e : entries) {
+            synBioHubEntries.add(new DictionaryEntry(e));
+            names.add(e.name);
+        }
+
+        SBOLDocument document = new SBOLDocument();
+        document.setDefaultURIprefix("http://localhost/");
+
+        objects = new ArrayList<>();
+        spreadsheetUIDs = new ArrayList<>();
+        for(int i=0; i<rowCount; ++i) {
+            ComponentDefinition cd = document.createComponentDefinition("reagent_" + i, "1",
+                                                                       ComponentDefinition.PROTEIN);
+            cd.createAnnotation(LAB_UID, "G" + i);
+            cd.createAnnotation(LAB_UID, "GK" + i);
+            cd.createAnnotation(new QName("http://purl.org/dc/terms/", "alternative", "alternative"),
+                                "reagent-" + i);
+            cd.addWasDerivedFrom(URI.create("http://identifiers.org/chebi/CHEBI:" + (10000 + i)));
+            objects.add(cd);
+
+            // Every tenth row has a new lab UID in the spreadsheet
+            Set<String> uids = new HashSet<>();
+            uids.add("G" + i);
+            uids.add((i % 10 == 0) ? "GX" + i : "GK" + i);
+            spreadsheetUIDs.add(uids);
+        }
+    }
+
+    @Benchmark
+    public void checkShifts() throws Exception {
+        MaintainDictionary.checkShifts(entries, synBioHubEntries);
+    }
+
+    @Benchmark
+    public void validateUniqueNames() {
+        DictionaryAccessor.validateUniquenessOfEntries("Common Name", entries);
+    }
+
+    @Benchmark
+    public void validateUniqueLabUIDs() {
+        DictionaryAccessor.validateUniquenessOfEntries("Ginkgo UID", entries);
+    }
+
+    @Benchmark
+    public void sanitizeNames(Blackhole blackhole) {
+        for(String name : names) {
+            blackhole.consume(SynBioHubAccessor.sanitizeNameToDisplayID(name));
+        }
+    }
+
+    /**
+     * Compare the lab UIDs of each object with its row, and replace the
+     * annotations of the objects that differ, then restore them
+     */
+    @Benchmark
+    public int diffAnnotations() throws Exception {
+        int changedCount = 0;
+        for(int i=0; i<objects.size(); ++i) {
+            ComponentDefinition cd = objects.get(i);
+            Set<String> synBioHubUIDs = MaintainDictionary.annotationValues(cd, LAB_UID);
+            if(!synBioHubUIDs.equals(spreadsheetUIDs.get(i))) {
+                MaintainDictionary.replaceOldAnnotations(cd, LAB_UID, spreadsheetUIDs.get(i));
+                MaintainDictionary.replaceOldAnnotations(cd, LAB_UID, synBioHubUIDs);
+                ++changedCount;
+            }
+        }
+        return changedCount;
+    }
+}
@@ -0,0 +1,98 @@
+package com.bbn.sd2;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Generates spreadsheet rows for the benchmarks, in the layout of the
+ * dictionary tabs
+ */
+final class SyntheticDictionary {
+    static final String TAB = "Reagent";
+
+    static final List<String> HEADERS = Arrays.asList("Common Name", "Type",
+        "SynBioHub URI", "Stub Object?", "Definition URI / CHEBI ID",
+        "Definition Import", "Status", "Last Updated", "Alias Names",
+        "BioFAB UID", "Ginkgo UID", "Transcriptic UID");
+
+    private static final String[] TYPES = { "Bead", "CHEBI", "DNA", "Protein",
+        "RNA", "Media", "Stain", "Buffer", "Solution" };
+
+    private SyntheticDictionary() {} // static-only class
+
+    /**
+     * Register the lab UID columns and quiet the per-row logging
+     */
+    static void configure() {
+        Logger.getGlobal().setLevel(Level.WARNING);
+
+        Map<String, String> labUIDMap = DictionaryMaintainerApp.labUIDMap;
+        labUIDMap.clear();
+        labUIDMap.put("BioFAB UID", "BioFAB_UID");
+        labUIDMap.put("Ginkgo UID", "Ginkgo_UID");
+        labUIDMap.put("Transcriptic UID", "Transcriptic_UID");
+
+        DictionaryMaintainerApp.reverseLabUIDMap.clear();
+        for(String label : labUIDMap.keySet()) {
+            DictionaryMaintainerApp.reverseLabUIDMap.put(labUIDMap.get(label), label);
+        }
+    }
+
+    static Map<String, Integer> headerMap() {
+        Map<String, Integer> headerMap = new TreeMap<>();
+        for(int i=0; i<HEADERS.size(); ++i) {
+            headerMap.put(HEADERS.get(i), i);
+        }
+        return headerMap;
+    }
+
+    /**
+     * @param rowCount number of rows to generate
+     * @return the rows, each of which has a unique name, URI and lab UIDs
+     */
+    static List<List<Object>> rows(int rowCount) {
+        List<List<Object>> rows = new ArrayList<>();
+
+        for(int i=0; i<rowCount; ++i) {
+            String name = "Reagent " + i;
+            List<Object> row = new ArrayList<>();
+            row.add(name);
+            row.add(TYPES[i % TYPES.length]);
+            row.add("https://hub.sd2e.org/user/sd2e/design/"
+                    + SynBioHubAccessor.sanitizeNameToDisplayID(name) + "/1");
+            row.add((i % 3 == 0) ? "YES" : "NO");
+            row.add("http://identifiers.org/chebi/CHEBI:" + (10000 + i));
+            row.add("");
+            row.add("");
+            row.add("2019-01-01T00:00:00Z");
+            row.add("reagent-" + i + "; r" + i);
+            row.add("B" + i);
+            row.add("G" + i + ", GK" + i);
+            row.add((i % 2 == 0) ? "T" + i : "");
+            rows.add(row);
+        }
+
+        return rows;
+    }
+
+    /**
+     * @param rowCount number of rows to generate
+     * @return dictionary entries parsed from the generated rows
+     */
+    static List<DictionaryEntry> entries(int rowCount) throws Exception {
+        Map<String, Integer> headerMap = headerMap();
+        List<DictionaryEntry> entries = new ArrayList<>();
+
+        int row = 2;
+        for(List<Object> values : rows(rowCount)) {
+            entries.add(new DictionaryEntry(TAB, headerMap, row++, values));
+        }
+
+        return entries;
+    }
+}
@@ -0,0 +1,123 @@
+package com.bbn.sd2;
+
+import java.util.logging.Logger;
+
+import org.apache.commons.cli.CommandLine;
+
+import com.google.api.services.drive.model.File;
+
+/**
+ * Decides whether a pass can be skipped because neither the spreadsheet
+ * nor the SynBioHub collection has changed since the last complete pass.
+ * Both are probed cheaply: the spreadsheet through its Drive metadata,
+ * and the collection with a single SPARQL query.  The dictionary writes
+ * to both during a pass, so their revisions are recorded after the pass.
+ * A full pass is still made every maxSkipMillis, which catches changes
+ * the probes cannot see, such as rows edited by someone else during a
+ * pass and then overwritten by the dictionary's own status updates.
+ */
+public final class ChangeDetector {
+    private static Logger log = Logger.getGlobal();
+
+    /** Longest time between full passes, in milliseconds */
+    public static long maxSkipMillis = 3600000;
+
+    private static boolean enabled = false;
+
+    /** Revisions recorded after the last complete pass, or null */
+    private static String spreadsheetRevision = null;
+    private static String collectionRevision = null;
+
+    /** Time the last full pass ended */
+    private static long lastPassMillis = 0;
+
+    private ChangeDetector() {} // static-only class
+
+    public static synchronized void configure(CommandLine cmd) {
+        enabled = cmd.hasOption("skip_unchanged");
+        forget();
+    }
+
+    public static synchronized boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Forget the recorded revisions, so that the next pass is made */
+    public static synchronized void forget() {
+        spreadsheetRevision = null;
+        collectionRevision = null;
+    }
+
+    /**
+     * Probe the spreadsheet and the collection
+     * @return true if neither has changed since the last complete pass,
+     * and the last full pass was recent enough
+     */
+    public static synchronized boolean isUnchanged() {
+        if(!enabled || (spreadsheetRevision == null) || (collectionRevision == null)) {
+            return false;
+        }
+
+        if(System.currentTimeMillis() - lastPassMillis >= maxSkipMillis) {
+            log.info("Making a full pass, as the last one was "
+                     + ((System.currentTimeMillis() - lastPassMillis) / 1000L) + " seconds ago");
+            return false;
+        }
+
+        try {
+            // The spreadsheet is probed first, as it is the side that
+            // usually changes
+            if(!spreadsheetRevision.equals(probeSpreadsheet())) {
+                return false;
+            }
+
+            return collectionRevision.equals(SynBioHubAccessor.getCollectionRevision());
+        } catch(Exception e) {
+            log.warning("Failed to check for changes: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Record the revisions of the spreadsheet and the collection at the
+     * end of a pass
+     * @param complete true if the pass brought every tab up to date.
+     * Otherwise the next pass is made whether or not anything changes.
+     */
+    public static synchronized void endPass(boolean complete) {
+        forget();
+        lastPassMillis = System.currentTimeMillis();
+
+        if(!enabled || !complete) {
+            return;
+        }
+
+        try {
+            String spreadsheet = probeSpreadsheet();
+            if(spreadsheet == null) {
+                return;
+            }
+
+            collectionRevision = SynBioHubAccessor.getCollectionRevision();
+            spreadsheetRevision = spreadsheet;
+        } catch(Exception e) {
+            log.warning("Failed to record revisions: " + e.getMessage());
+            forget();
+        }
+    }
+
+    /**
+     * @return the revision of the spreadsheet, or null if its last change
+     * was made by someone other than the dictionary
+     */
+    private static String probeSpreadsheet() throws Exception {
+        File file = DictionaryAccessor.getSpreadsheetRevision();
+
+        if((file.getLastModifyingUser() != null) &&
+           !Boolean.TRUE.equals(file.getLastModifyingUser().getMe())) {
+            return null;
+        }
+
+        return file.getVersion() + " " + file.getModifiedTime();
+    }
+}
@@ -0,0 +1,266 @@
+package com.bbn.sd2;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+
+import javax.xml.namespace.QName;
+
+import org.apache.commons.cli.CommandLine;
+import org.json.JSONObject;
+import org.sbolstandard.core2.Collection;
+import org.sbolstandard.core2.ComponentDefinition;
+import org.sbolstandard.core2.ModuleDefinition;
+import org.sbolstandard.core2.SBOLDocument;
+import org.sbolstandard.core2.TopLevel;
+import org.synbiohub.frontend.SynBioHubException;
+
+/**
+ * Snapshot of the dictionary properties of every member of the target
+ * collection, read with a few SPARQL queries at the start of each pass.
+ * The snapshot is used to build a lightweight document for each entry,
+ * which holds only the properties the dictionary compares and updates:
+ * the name, types and roles, the definition, the modified date, and the
+ * lab UID, alias and stub annotations.  Entries are checked against these
+ * documents, and only entries that need to be written to SynBioHub fetch
+ * their full document.
+ */
+public final class CollectionSnapshot {
+    private static Logger log = Logger.getGlobal();
+
+    static final String RDF_TYPE = "http://www.w3.org/1999/02/22-rdf-syntax-ns#type";
+    static final String SBOL_NS = "http://sbols.org/v2#";
+    static final String DCTERMS_NS = "http://purl.org/dc/terms/";
+    static final String PROV_NS = "http://www.w3.org/ns/prov#";
+    static final String SD2_NS = "http://sd2e.org#";
+
+    /** Properties read for every collection member, in addition to the sd2 annotations */
+    static final List<String> memberProperties = Collections.unmodifiableList(new ArrayList<String>() {{
+        add(RDF_TYPE);
+        add(SBOL_NS + "type");
+        add(SBOL_NS + "role");
+        add(DCTERMS_NS + "title");
+        add(DCTERMS_NS + "alternative");
+        add(DCTERMS_NS + "modified");
+        add(PROV_NS + "wasDerivedFrom");
+    }
+    static final long serialVersionUID = 0;
+    });
+
+    private static boolean enabled = false;
+
+    /** Maps the SynBioHub URI of each member to its properties, which map
+     *  each predicate to its values */
+    private static Map<String, Map<String, List<JSONObject>>> members = new HashMap<>();
+
+    private CollectionSnapshot() {} // static-only class
+
+    public static synchronized void configure(CommandLine cmd) {
+        enabled = cmd.hasOption("bulk_read");
+        members = new HashMap<>();
+    }
+
+    public static synchronized boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Read the properties of all the collection members from SynBioHub
+     * @throws SynBioHubException
+     */
+    public static void load() throws SynBioHubException {
+        Map<String, Map<String, List<JSONObject>>> snapshot = new HashMap<>();
+
+        for(JSONObject binding : SynBioHubAccessor.getMemberProperties(memberProperties, SD2_NS)) {
+            String member = binding.getJSONObject("member").getString("value");
+            String predicate = binding.getJSONObject("predicate").getString("value");
+
+            Map<String, List<JSONObject>> properties = snapshot.get(member);
+            if(properties == null) {
+                properties = new HashMap<>();
+                snapshot.put(member, properties);
+            }
+
+            List<JSONObject> values = properties.get(predicate);
+            if(values == null) {
+                values = new ArrayList<>();
+                properties.put(predicate, values);
+            }
+
+            values.add(binding.getJSONObject("value"));
+        }
+
+        log.info("Read properties of " + snapshot.size() + " collection members");
+
+        synchronized(CollectionSnapshot.class) {
+            members = snapshot;
+        }
+    }
+
+    /** Drop the snapshot at the end of a pass */
+    public static synchronized void clear() {
+        members = new HashMap<>();
+    }
+
+    /**
+     * @return maps the SynBioHub URI of each member to its modified date
+     */
+    public static synchronized Map<String, String> getModifiedDates() {
+        Map<String, String> modifiedDates = new TreeMap<>();
+
+        for(String member : members.keySet()) {
+            List<String> values = values(members.get(member), DCTERMS_NS + "modified");
+            if(!values.isEmpty()) {
+                modifiedDates.put(member, values.get(0));
+            }
+        }
+
+        return modifiedDates;
+    }
+
+    /**
+     * Build a document from the snapshot
+     * @param uri SynBioHub URI of the collection member
+     * @return a document in the local namespace holding only the
+     * dictionary properties of the member, or null if the member is not
+     * in the snapshot and must be retrieved in full
+     */
+    public static SBOLDocument createDocument(URI uri) {
+        Map<String, List<JSONObject>> properties;
+        synchronized(CollectionSnapshot.class) {
+            properties = members.get(uri.toString());
+        }
+
+        if(properties == null) {
+            return null;
+        }
+
+        try {
+            return createDocument(uri, properties);
+        } catch(Exception e) {
+            log.warning("Failed to build " + uri + " from snapshot: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static SBOLDocument createDocument(URI uri, Map<String, List<JSONObject>> properties) throws Exception {
+        SBOLDocument document = SynBioHubAccessor.newBlankDocument();
+
+        // Local URIs have the form <prefix><displayId>/<version>
+        String localURI = SynBioHubAccessor.translateURI(uri).toString();
+        String prefix = document.getDefaultURIprefix();
+        if(!localURI.startsWith(prefix)) {
+            return null;
+        }
+
+        String[] path = localURI.substring(prefix.length()).split("/");
+        if(path.length != 2) {
+            return null;
+        }
+        String displayId = path[0];
+        String version = path[1];
+
+        List<String> rdfTypes = values(properties, RDF_TYPE);
+        if(rdfTypes.size() != 1) {
+            return null;
+        }
+        String rdfType = rdfTypes.get(0);
+
+        TopLevel topLevel;
+        if(rdfType.equals(SBOL_NS + "ComponentDefinition")) {
+            Set<URI> types = uris(properties, SBOL_NS + "type");
+            if(types.isEmpty()) {
+                return null;
+            }
+
+            ComponentDefinition cd = document.createComponentDefinition(displayId, version, types);
+            cd.setRoles(uris(properties, SBOL_NS + "role"));
+            topLevel = cd;
+
+        } else if(rdfType.equals(SBOL_NS + "ModuleDefinition")) {
+            ModuleDefinition md = document.createModuleDefinition(displayId, version);
+            md.setRoles(uris(properties, SBOL_NS + "role"));
+            topLevel = md;
+
+        } else if(rdfType.equals(SBOL_NS + "Collection")) {
+            Collection collection = document.createCollection(displayId, version);
+            topLevel = collection;
+
+        } else if(!rdfType.startsWith(SBOL_NS)) {
+            topLevel = document.createGenericTopLevel(displayId, version, toQName(rdfType, "ns0"));
+
+        } else {
+            // Some other kind of SBOL object, which is not in the dictionary
+            return null;
+        }
+
+        if(!topLevel.getIdentity().toString().equals(localURI)) {
+            return null;
+        }
+
+        List<String> names = values(properties, DCTERMS_NS + "title");
+        if(!names.isEmpty()) {
+            topLevel.setName(names.get(0));
+        }
+
+        topLevel.setWasDerivedFroms(uris(properties, PROV_NS + "wasDerivedFrom"));
+
+        for(String predicate : properties.keySet()) {
+            QName annotation = null;
+            if(predicate.startsWith(SD2_NS)) {
+                annotation = toQName(predicate, "sd2");
+            } else if(predicate.equals(DCTERMS_NS + "alternative") ||
+                      predicate.equals(DCTERMS_NS + "modified")) {
+                annotation = toQName(predicate, "dcterms");
+            } else {
+                continue;
+            }
+
+            for(JSONObject value : properties.get(predicate)) {
+                if("uri".equals(value.getString("type"))) {
+                    topLevel.createAnnotation(annotation, URI.create(value.getString("value")));
+                } else {
+                    topLevel.createAnnotation(annotation, value.getString("value"));
+                }
+            }
+        }
+
+        return document;
+    }
+
+    private static List<String> values(Map<String, List<JSONObject>> properties, String predicate) {
+        List<String> values = new ArrayList<>();
+
+        List<JSONObject> bindings = properties.get(predicate);
+        if(bindings != null) {
+            for(JSONObject binding : bindings) {
+                values.add(binding.getString("value"));
+            }
+        }
+
+        return values;
+    }
+
+    private static Set<URI> uris(Map<String, List<JSONObject>> properties, String predicate) {
+        Set<URI> uris = new HashSet<>();
+
+        for(String value : values(properties, predicate)) {
+            uris.add(URI.create(value));
+        }
+
+        return uris;
+    }
+
+    /** Split a predicate or class URI into a namespace and a local name */
+    private static QName toQName(String uri, String prefix) {
+        int split = Math.max(uri.lastIndexOf('#'), uri.lastIndexOf('/')) + 1;
+        return new QName(uri.substring(0, split), uri.substring(split), prefix);
+    }
+}
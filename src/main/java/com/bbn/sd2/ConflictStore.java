@@ -0,0 +1,104 @@
+package com.bbn.sd2;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+import org.apache.commons.cli.CommandLine;
+import org.json.JSONArray;
+
+/**
+ * Remembers the objects committed to SynBioHub whose rows were edited
+ * before the spreadsheet could be written, under optimistic concurrency.
+ * Their modified date in SynBioHub is later than the one in the
+ * spreadsheet only because the write of the spreadsheet was dropped, so
+ * the next pass keeps the edited row rather than syncing back from
+ * SynBioHub.  The store is saved to a JSON file whenever it changes, so
+ * that a restart between the edit and the next pass does not lose it.
+ */
+public final class ConflictStore {
+    private static Logger log = Logger.getGlobal();
+
+    /** File used when neither it nor the fingerprint file is given */
+    static final String DEFAULT_FILE = "conflicted_entries.json";
+
+    /** File the SynBioHub URIs are saved in */
+    private static File conflictFile = new File(DEFAULT_FILE);
+
+    /** SynBioHub URIs of the objects whose rows were edited */
+    private static final Set<String> conflictedURIs = ConcurrentHashMap.newKeySet();
+
+    private ConflictStore() {} // static-only class
+
+    public static void configure(CommandLine cmd) {
+        conflictedURIs.clear();
+
+        if(cmd.hasOption("conflict_file")) {
+            conflictFile = new File(cmd.getOptionValue("conflict_file"));
+        } else if(cmd.hasOption("fingerprint_file")) {
+            conflictFile = new File(cmd.getOptionValue("fingerprint_file") + ".conflicts");
+        } else {
+            conflictFile = new File(DEFAULT_FILE);
+        }
+        if(!conflictFile.exists()) {
+            return;
+        }
+
+        try {
+            String contents = new String(Files.readAllBytes(conflictFile.toPath()),
+                                         StandardCharsets.UTF_8);
+            JSONArray uris = new JSONArray(contents);
+            for(int i=0; i<uris.length(); ++i) {
+                conflictedURIs.add(uris.getString(i));
+            }
+            log.info("Loaded " + conflictedURIs.size() + " edited rows from " + conflictFile);
+        } catch(Exception e) {
+            // The edited rows will be synced back from SynBioHub
+            log.warning("Failed to load edited rows from " + conflictFile
+                        + ": " + e.getMessage());
+            conflictedURIs.clear();
+        }
+    }
+
+    /** @return true if the row of an object was edited after its last commit */
+    public static boolean contains(URI uri) {
+        return (uri != null) && conflictedURIs.contains(uri.toString());
+    }
+
+    /** Record that the row of an object was edited after its commit */
+    public static void add(URI uri) {
+        if(conflictedURIs.add(uri.toString())) {
+            save();
+        }
+    }
+
+    /** Forget an object, once its row has been synchronized again */
+    public static void remove(URI uri) {
+        if(conflictedURIs.remove(uri.toString())) {
+            save();
+        }
+    }
+
+    private static synchronized void save() {
+        JSONArray uris = new JSONArray(new TreeSet<>(conflictedURIs));
+
+        try {
+            // Write to a temporary file first, so an interrupted write
+            // does not leave a truncated store behind
+            File tmpFile = new File(conflictFile.getPath() + ".tmp");
+            Files.write(tmpFile.toPath(), uris.toString().getBytes(StandardCharsets.UTF_8));
+            Files.move(tmpFile.toPath(), conflictFile.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING);
+        } catch(IOException e) {
+            log.warning("Failed to save edited rows to " + conflictFile
+                        + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.bbn.sd2;
+
+import java.time.Instant;
+import java.util.logging.Logger;
+
+/**
+ * Chooses when to run the next dictionary pass.  After a pass that finds
+ * edits, the next pass runs soon, so curators do not wait long for their
+ * new rows to get URIs.  Each idle pass doubles the interval, up to a
+ * maximum, so an untouched spreadsheet costs few requests.  Intervals are
+ * measured from the end of a pass, so a pass that takes longer than the
+ * interval is never followed immediately by another.
+ */
+public class CycleScheduler {
+    private static Logger log = Logger.getGlobal();
+
+    /** Interval after a pass that found edits */
+    private final long minMillis;
+    /** Longest interval, reached after enough idle passes */
+    private final long maxMillis;
+
+    private long intervalMillis;
+    private long nextRunMillis;
+
+    /**
+     * @param minMillis interval after a pass that found edits
+     * @param initialMillis interval before the first pass has ended
+     * @param maxMillis longest interval
+     */
+    public CycleScheduler(long minMillis, long initialMillis, long maxMillis) {
+        this.minMillis = Math.max(0, minMillis);
+        this.maxMillis = Math.max(this.minMillis, maxMillis);
+        intervalMillis = Math.min(this.maxMillis, Math.max(this.minMillis, initialMillis));
+        nextRunMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * Schedule the next pass
+     * @param busy true if the pass that just ended found edits, or left
+     * work that should be retried soon
+     * @return the number of milliseconds until the next pass
+     */
+    public synchronized long passEnded(boolean busy) {
+        if(busy) {
+            intervalMillis = minMillis;
+        } else {
+            intervalMillis = Math.min(maxMillis, Math.max(1000, intervalMillis * 2));
+        }
+
+        nextRunMillis = System.currentTimeMillis() + intervalMillis;
+        Metrics.set(Metrics.NEXT_CYCLE, nextRunMillis / 1000.0);
+        log.info("Next update in " + (intervalMillis / 1000L) + " seconds, at "
+                 + Instant.ofEpochMilli(nextRunMillis));
+
+        return intervalMillis;
+    }
+
+    /** Wait until the next pass is due */
+    public void awaitNextRun() throws InterruptedException {
+        long delayMS = getNextRunMillis() - System.currentTimeMillis();
+        if(delayMS > 0) {
+            Thread.sleep(delayMS);
+        }
+    }
+
+    /** @return the time the next pass is due, in milliseconds since 1970 */
+    public synchronized long getNextRunMillis() {
+        return nextRunMillis;
+    }
+
+    /** @return the current interval between passes */
+    public synchronized long getIntervalMillis() {
+        return intervalMillis;
+    }
+}
@@ -10,6 +10,7 @@ import com.google.api.client.googleapis.javanet.GoogleNetHttpTransport;
 import com.google.api.client.googleapis.json.GoogleJsonError;
 import com.google.api.client.googleapis.json.GoogleJsonResponseException;
 import com.google.api.client.googleapis.services.AbstractGoogleClientRequest;
+import com.google.api.client.http.HttpRequestInitializer;
 import com.google.api.client.http.HttpTransport;
 import com.google.api.client.http.javanet.NetHttpTransport;
 import com.google.api.client.json.JsonFactory;
@@ -69,6 +70,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
@@ -76,6 +78,8 @@ import java.util.regex.Pattern;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
 
 import javax.activation.DataHandler;
@@ -99,19 +103,34 @@ public class DictionaryAccessor {
 
     private static Sheets sheetsService = null;
 
+    /** Used to look up the revision of the spreadsheet */
+    private static Drive driveService = null;
+
     private static Gmail gmailService = null;
 
     private DictionaryAccessor() {} // static-only class
 
     private static Map<String, Sheet> cachedSheetProperties = null;
 
-    private static Map< String, Map<String, Integer> > tab_headers = new TreeMap<>();
+    // Read by the thread that writes spreadsheet updates
+    private static Map< String, Map<String, Integer> > tab_headers = new ConcurrentHashMap<>();
 
     private static String loggedInUser = null;
 
+    /** Number of Google Sheets read requests issued, used to check read budgets */
+    private static AtomicLong sheetsReadCount = new AtomicLong();
+
+    /** Root URL of a stand-in for the Google Sheets API, or null to use Google */
+    private static String sheetsRootUrl = null;
+
     /** Configure from command-line arguments */
     public static void configure(CommandLine cmd) {
         spreadsheetId = cmd.getOptionValue("gsheet_id", MaintainDictionary.defaultSpreadsheet());
+
+        sheetsRootUrl = cmd.getOptionValue("sheets_url");
+        if((sheetsRootUrl != null) && !sheetsRootUrl.endsWith("/")) {
+            sheetsRootUrl += "/";
+        }
     }
 
     /** Make a clean boot, tearing down old instance if needed */
@@ -132,12 +151,17 @@ public class DictionaryAccessor {
      */
     private static final List<String> SCOPES =
         Arrays.asList(SheetsScopes.SPREADSHEETS, GmailScopes.GMAIL_COMPOSE,
-                      GmailScopes.GMAIL_SEND);
+                      GmailScopes.GMAIL_SEND, DriveScopes.DRIVE_METADATA_READONLY);
 
     private static final String CREDENTIALS_FILE_PATH = "/credentials.json";
 
-    private static final double googleRequestsPerSecond = 0.5;
-    public static final long msPerGoogleRequest = (long)(1000.0 / googleRequestsPerSecond);
+    /** Google Sheets per-user quotas, counted in HTTP requests per minute */
+    private static final int defaultReadRequestsPerMinute = 60;
+    private static final int defaultWriteRequestsPerMinute = 60;
+    private static RateLimiter readRateLimiter =
+        new RateLimiter("Google read", defaultReadRequestsPerMinute);
+    private static RateLimiter writeRateLimiter =
+        new RateLimiter("Google write", defaultWriteRequestsPerMinute);
 
     /**
      * Creates an authorized Credential object.
@@ -163,12 +187,36 @@ public class DictionaryAccessor {
         if(sheetsService!=null) return;
 
         try {
-            // Build a new authorized API client service.
             final NetHttpTransport HTTP_TRANSPORT = GoogleNetHttpTransport.newTrustedTransport();
+
+            if(sheetsRootUrl != null) {
+                // The stand-in does not check credentials
+                HttpRequestInitializer noCredentials = request -> {};
+                sheetsService =
+                    new Sheets.Builder(HTTP_TRANSPORT, JSON_FACTORY, noCredentials)
+                    .setApplicationName(APPLICATION_NAME)
+                    .setRootUrl(sheetsRootUrl)
+                    .build();
+                driveService =
+                    new Drive.Builder(HTTP_TRANSPORT, JSON_FACTORY, noCredentials)
+                    .setApplicationName(APPLICATION_NAME)
+                    .setRootUrl(sheetsRootUrl)
+                    .build();
+
+                log.info("Using Google Sheets stand-in at " + sheetsRootUrl);
+                return;
+            }
+
+            // Build a new authorized API client service.
+            Credential credential = getCredentials(HTTP_TRANSPORT);
             sheetsService =
                 new Sheets.Builder(HTTP_TRANSPORT,
                                    JSON_FACTORY,
-                                   getCredentials(HTTP_TRANSPORT))
+                                   credential)
+                .setApplicationName(APPLICATION_NAME)
+                .build();
+            driveService =
+                new Drive.Builder(HTTP_TRANSPORT, JSON_FACTORY, credential)
                 .setApplicationName(APPLICATION_NAME)
                 .build();
 
@@ -195,6 +243,11 @@ public class DictionaryAccessor {
                                  String bodyText,
                                  byte[] attachmentData)
         throws MessagingException, IOException {
+        if(gmailService == null) {
+            log.warning("Not connected to Gmail, so email to " + to + " was not sent");
+            return;
+        }
+
         Properties props = new Properties();
         Session session = Session.getDefaultInstance(props, null);
 
@@ -263,6 +316,12 @@ public class DictionaryAccessor {
     private static void ensureGmailService() {
         if(gmailService!=null) return;
 
+        if(sheetsRootUrl != null) {
+            // There is no Gmail stand-in, so no email is sent
+            loggedInUser = "dictionary@localhost";
+            return;
+        }
+
         try {
             // Build a new authorized API client service.
             final NetHttpTransport HTTP_TRANSPORT = GoogleNetHttpTransport.newTrustedTransport();
@@ -291,15 +350,7 @@ public class DictionaryAccessor {
         log.info("Scanning tab " + tab);
         Map<String, Integer> header_map = getDictionaryHeaders(tab);
 
-        Collection<Integer> columns = header_map.values();
-
-        char last_column = 'A';
-        for(Integer column : columns) {
-            char columnChar = (char)('A' + column);
-            if(columnChar > last_column) {
-                last_column = columnChar;
-            }
-        }
+        char last_column = (char)('A' + lastHeaderColumn(header_map));
 
         // Pull the current range
         String readRange = tab + "!A" + (row_offset+1) + ":" + last_column;
@@ -308,10 +359,63 @@ public class DictionaryAccessor {
             log.info("No entries found on this tab");
             return entries;
         }
+
+        return createEntries(tab, header_map, response.getValues());
+    }
+
+    /**
+     * Create the dictionary entries of a tab from a snapshot of the
+     * spreadsheet, without making any requests.  The headers of the tab
+     * must have been cached from the same snapshot.
+     * @param snapshot the snapshot
+     * @param tab name of the tab
+     * @return the entries, in row order
+     */
+    public static List<DictionaryEntry> snapshotCurrentDictionary(SpreadsheetSnapshot snapshot,
+                                                                  String tab) throws Exception {
+        log.info("Scanning tab " + tab);
+        Map<String, Integer> header_map = getDictionaryHeaders(tab);
+
+        // The snapshot holds whole rows.  Only the columns up to the
+        // last dictionary header are used, with trailing empty cells
+        // left out, as when the entries are read on their own
+        int columnCount = lastHeaderColumn(header_map) + 1;
+        List<List<Object>> rows = new ArrayList<>();
+        for(List<Object> row : snapshot.getDataRows(tab)) {
+            int end = Math.min(row.size(), columnCount);
+            while((end > 0) && "".equals(row.get(end - 1))) {
+                --end;
+            }
+            rows.add(row.subList(0, end));
+        }
+        while(!rows.isEmpty() && rows.get(rows.size() - 1).isEmpty()) {
+            rows.remove(rows.size() - 1);
+        }
+
+        if(rows.isEmpty()) {
+            log.info("No entries found on this tab");
+        }
+
+        return createEntries(tab, header_map, rows);
+    }
+
+    /** @return the index of the right-most dictionary column */
+    private static int lastHeaderColumn(Map<String, Integer> header_map) {
+        int last_column = 0;
+        for(Integer column : header_map.values()) {
+            last_column = Math.max(last_column, column);
+        }
+        return last_column;
+    }
+
+    private static List<DictionaryEntry> createEntries(String tab, Map<String, Integer> header_map,
+                                                       List<List<Object>> rows) throws Exception {
+        List<DictionaryEntry> entries = new ArrayList<>(rows.size());
         int row_index = row_offset;
 
-        for(List<Object> value : response.getValues()) {
-            entries.add(new DictionaryEntry(tab, header_map, ++row_index, value));
+        RowDecoder decoder = RowDecoder.compile(tab, header_map);
+        for(List<Object> value : rows) {
+            entries.add(decoder.decode(++row_index, value));
         }
 
         log.info("Read " + entries.size());
@@ -319,6 +423,30 @@ public class DictionaryAccessor {
         return entries;
     }
 
+    /**
+     * Read whole tabs of the spreadsheet with a single request
+     * @param tabs names of the tabs
+     * @return the contents of the tabs
+     */
+    public static SpreadsheetSnapshot snapshotSpreadsheet(Collection<String> tabs) throws IOException {
+        ensureSheetsService();
+
+        List<String> ranges = new ArrayList<>();
+        for(String tab : tabs) {
+            ranges.add("'" + tab.replace("'", "''") + "'");
+        }
+
+        List<ValueRange> valueRanges = batchGet(ranges);
+
+        Map<String, List<List<Object>>> tabValues = new LinkedHashMap<>();
+        int i = 0;
+        for(String tab : tabs) {
+            tabValues.put(tab, valueRanges.get(i++).getValues());
+        }
+
+        return new SpreadsheetSnapshot(tabValues);
+    }
+
     public static void backup() throws IOException, GeneralSecurityException {
         String GDRIVE_BACKUP_FOLDER = "1e3Lz-fzqZpEDKrH52Xso4bG0_y46Da1x";
         ensureSheetsService();
@@ -348,6 +476,21 @@ public class DictionaryAccessor {
         }
     }
 
+    /**
+     * Look up the Drive metadata of the spreadsheet, which is far cheaper
+     * than reading its tabs.  The version changes whenever anyone edits
+     * the spreadsheet.
+     * @return the version, modified time and last modifying user of the
+     * spreadsheet
+     * @throws IOException if the request fails, such as when the stored
+     * credentials predate the Drive metadata scope
+     */
+    public static com.google.api.services.drive.model.File getSpreadsheetRevision() throws IOException {
+        ensureSheetsService();
+        return execute(driveService.files().get(spreadsheetId)
+                       .setFields("version,modifiedTime,lastModifyingUser(me)"));
+    }
+
     public static void exportCSV() throws IOException {
         for(String tab : MaintainDictionary.tabs()) {
             String readRange = tab;
@@ -377,7 +520,6 @@ public class DictionaryAccessor {
 
 
     public static void cacheTabHeaders(String tab) throws IOException {
-        Map<String, Integer> header_map = new TreeMap<>();
         String headerRange = tab + "!" + row_offset + ":" + row_offset;
         ValueRange response = getTabData(headerRange);
 
@@ -385,7 +527,27 @@ public class DictionaryAccessor {
             return; // skip empty sheets
         }
 
-        List<Object> headers = response.getValues().get(0);
+        cacheTabHeaders(tab, response.getValues().get(0));
+    }
+
+    /**
+     * Cache the location of the columns of a tab from a snapshot of the
+     * spreadsheet, without making any requests
+     */
+    public static void cacheTabHeaders(SpreadsheetSnapshot snapshot, String tab) {
+        List<Object> headers = snapshot.getHeaderRow(tab);
+        if(headers == null) {
+            return; // skip empty sheets
+        }
+
+        cacheTabHeaders(tab, headers);
+    }
+
+    /**
+     * Cache the location of the columns of a tab from its header row
+     */
+    public static void cacheTabHeaders(String tab, List<Object> headers) {
+        Map<String, Integer> header_map = new TreeMap<>();
         // TODO: validate required headers Type, Common Name, etc.
         // TODO: if header cells aren't locked, might need to check for duplicate header entries
         for(int i_h = 0; i_h < headers.size(); ++i_h) {
@@ -789,6 +951,16 @@ public class DictionaryAccessor {
     public static void writeStatusUpdate(String tab, String status) throws IOException {
         List<ValueRange> updates = new ArrayList<ValueRange>();
 
+        updates.add(statusUpdate(tab, status));
+
+        batchUpdateValues(updates);
+    }
+
+    /**
+     * @return the write of the status of a tab, above its Status column
+     * @throws IOException
+     */
+    public static ValueRange statusUpdate(String tab, String status) throws IOException {
         Map<String, Integer> header_map;
         header_map = getDictionaryHeaders(tab);
 
@@ -797,9 +969,7 @@ public class DictionaryAccessor {
 
         String location = tab + "!"  + col + "1";
 
-        updates.add(writeLocationText(location, status));
-
-        batchUpdateValues(updates);
+        return writeLocationText(location, status);
     }
 
     public static Request deleteRowRequest(String tab, int row) throws IOException {
@@ -1166,16 +1336,23 @@ public class DictionaryAccessor {
     }
 
     public static void unprotectRange(int rangeId) throws IOException {
+        List<Request> requestList = new ArrayList<>();
+        requestList.add( unprotectRangeRequest(rangeId) );
+
+        batchUpdateRequests(requestList);
+    }
+
+    /**
+     * @return a request that removes a protected range
+     */
+    public static Request unprotectRangeRequest(int rangeId) {
         DeleteProtectedRangeRequest deleteRequest = new DeleteProtectedRangeRequest();
         deleteRequest.setProtectedRangeId(rangeId);
 
         Request request = new Request();
         request.setDeleteProtectedRange(deleteRequest);
 
-        List<Request> requestList = new ArrayList<>();
-        requestList.add( request );
-
-        batchUpdateRequests(requestList);
+        return request;
     }
 
     public static void cacheSheetProperties() throws IOException {
@@ -1426,81 +1603,118 @@ public class DictionaryAccessor {
         return spreadsheetId;
     }
 
+    /**
+     * @return the number of Google Sheets read requests (values.get,
+     * values.batchGet and spreadsheets.get) issued so far
+     */
+    public static long getSheetsReadCount() {
+        return sheetsReadCount.get();
+    }
+
+    /** @return the rate limiter for Google Sheets read requests */
+    public static RateLimiter getReadRateLimiter() {
+        return readRateLimiter;
+    }
+
+    /** @return the rate limiter for all other Google requests */
+    public static RateLimiter getWriteRateLimiter() {
+        return writeRateLimiter;
+    }
+
+    /** @return the total time spent waiting for Google quota */
+    public static long getRateLimitWaitMillis() {
+        return readRateLimiter.getWaitMillis() + writeRateLimiter.getWaitMillis();
+    }
+
+    private static boolean isSheetsRead(AbstractGoogleClientRequest<?> request) {
+        return (request instanceof Values.Get) ||
+            (request instanceof Values.BatchGet) ||
+            (request instanceof Sheets.Spreadsheets.Get);
+    }
+
+    /**
+     * @return the kind of a Google request, such as
+     * "Spreadsheets.Values.BatchGet", used to label its metrics
+     */
+    private static String requestKind(AbstractGoogleClientRequest<?> request) {
+        String kind = request.getClass().getName();
+        kind = kind.substring(kind.lastIndexOf('.') + 1);
+        return kind.substring(kind.indexOf('$') + 1).replace('$', '.');
+    }
+
     public static <T> T execute(AbstractGoogleClientRequest<T> request) throws IOException {
         long delayExtraMS = 60000;
         long delayBaseMS = 60000;
         int retriesLeft = 4;
-        long requestCount = 1;
-
-        Object requestOb = request;
-        if(requestOb instanceof BatchUpdateValuesRequest) {
-            BatchUpdateValuesRequest req = (BatchUpdateValuesRequest)requestOb;
-            requestCount = (long)req.getData().size();
-
-        } else if(requestOb instanceof BatchUpdateSpreadsheetRequest) {
-            BatchUpdateSpreadsheetRequest req =
-                (BatchUpdateSpreadsheetRequest)requestOb;
-            requestCount = (long)req.getRequests().size();
 
-        } else if(requestOb instanceof Values.BatchGet) {
-            Values.BatchGet req = (Values.BatchGet)requestOb;
-            requestCount = req.getRanges().size();
+        // Google quotas count HTTP requests, no matter how many
+        // ranges or requests are batched into each one
+        RateLimiter rateLimiter = writeRateLimiter;
+        String quota = "write";
+        if(isSheetsRead(request)) {
+            sheetsReadCount.incrementAndGet();
+            rateLimiter = readRateLimiter;
+            quota = "read";
         }
 
-        while(true) {
-            try {
-                Thread.sleep(msPerGoogleRequest * requestCount);
-                return request.execute();
-            } catch(InterruptedException e) {
-                throw new IOException();
-
-            } catch(GoogleJsonResponseException e) {
-                if(retriesLeft == 0) {
-                    throw e;
-                }
+        String kind = requestKind(request);
+        try(Metrics.Timer timer = Metrics.time(Metrics.GOOGLE_SECONDS, "kind", kind)) {
+            while(true) {
+                try {
+                    long waitStart = System.nanoTime();
+                    rateLimiter.acquire();
+                    Metrics.add(Metrics.GOOGLE_QUOTA_WAIT, (System.nanoTime() - waitStart) / 1e9,
+                                "quota", quota);
+
+                    T response = request.execute();
+                    rateLimiter.succeeded();
+                    return response;
+                } catch(InterruptedException e) {
+                    throw new IOException();
+
+                } catch(GoogleJsonResponseException e) {
+                    Metrics.increment(Metrics.GOOGLE_ERRORS, "kind", kind,
+                                      "code", Integer.toString(e.getStatusCode()));
+                    if(retriesLeft == 0) {
+                        throw e;
+                    }
 
-                GoogleJsonError err = e.getDetails();
-                if(err == null) {
-                    throw e;
-                }
+                    GoogleJsonError err = e.getDetails();
+                    if(err == null) {
+                        throw e;
+                    }
 
-                // If the error code is 429 it means that
-                // there were too man requests to Google
-                if(err.getCode() != 429) {
-                    throw e;
-                }
+                    // If the error code is 429 it means that
+                    // there were too man requests to Google.  The
+                    // rate limiter holds off the next request
+                    if(err.getCode() != 429) {
+                        throw e;
+                    }
 
-                long delayMS = delayExtraMS + delayBaseMS;
+                    Metrics.increment(Metrics.GOOGLE_THROTTLES, "quota", quota);
+                    rateLimiter.throttled(e.getHeaders().getRetryAfter());
 
-                // Wait a bit and try again
-                try {
-                    log.warning("Too many Google requests.  Re-trying in "
-                                + (delayMS / 1000L) + " seconds ...");
-                    Thread.sleep(delayMS);
-                } catch(InterruptedException e2) {
-                    // Might as well retry request
-                }
+                    --retriesLeft;
+                } catch(SocketTimeoutException e) {
+                    Metrics.increment(Metrics.GOOGLE_ERRORS, "kind", kind, "code", "timeout");
+                    if(retriesLeft == 0) {
+                        throw e;
+                    }
 
-                --retriesLeft;
-                delayExtraMS *= 2;
-            } catch(SocketTimeoutException e) {
-                if(retriesLeft == 0) {
-                    throw e;
-                }
+                    long delayMS = delayExtraMS + delayBaseMS;
 
-                long delayMS = delayExtraMS + delayBaseMS;
+                    // Wait a bit and try again
+                    try {
+                        log.warning("Google request timed out.  Re-trying in "
+                                    + (delayMS / 1000L) + " seconds ...");
+                        Thread.sleep(delayMS);
+                    } catch(InterruptedException e2) {
+                        // Might as well retry request
+                    }
 
-                // Wait a bit and try again
-                try {
-                    log.warning("Google request timed out.  Re-trying in "
-                                + (delayMS / 1000L) + " seconds ...");
-                    Thread.sleep(delayMS);
-                } catch(InterruptedException e2) {
-                    // Might as well retry request
+                    --retriesLeft;
+                    delayExtraMS *= 2;
                 }
-
-                --retriesLeft;
-                delayExtraMS *= 2;
             }
         }
     }
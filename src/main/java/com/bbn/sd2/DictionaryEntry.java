@@ -5,7 +5,6 @@ import java.net.URI;
 import java.security.GeneralSecurityException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
@@ -48,12 +47,18 @@ public class DictionaryEntry {
 	public Integer definitionURIColumn = null;
 	public UpdateReport report = new UpdateReport();
 	public Date modifiedDate = null;
-	private final String lastNotifyTag = "Last Notify ";
-	private SimpleDateFormat dateFormatter = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss z");
-	private Map<String, String> labUIDMap = DictionaryMaintainerApp.labUIDMap;
-	private Map<String, String> reverseLabUIDMap = DictionaryMaintainerApp.reverseLabUIDMap;
-	private SimpleDateFormat sdfDate = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssX");
-	private SimpleDateFormat sdfDate2 = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
+	public String lastUpdated = null;  // Contents of the "Last Updated" cell when the row was read
+	private static final String lastNotifyTag = "Last Notify ";
+
+	// Formatters are shared by the entries of each thread, since a
+	// SimpleDateFormat is larger than the rest of an entry and is not
+	// thread-safe
+	private static final ThreadLocal<SimpleDateFormat> dateFormatter =
+			ThreadLocal.withInitial(() -> new SimpleDateFormat("yyyy-MM-dd HH:mm:ss z"));
+	private static final ThreadLocal<SimpleDateFormat> sdfDate =
+			ThreadLocal.withInitial(() -> new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssX"));
+	private static final ThreadLocal<SimpleDateFormat> sdfDate2 =
+			ThreadLocal.withInitial(() -> new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss"));
 
 	public List<ValueRange> spreadsheetUpdates = new ArrayList<ValueRange>();
 
@@ -189,134 +194,43 @@ public class DictionaryEntry {
 		header_map = src.header_map;
 		changed = src.changed;
 		modifiedDate = src.modifiedDate;
+		lastUpdated = src.lastUpdated;
 
 		// Should this be a deep copy?
 		document = src.document;
 	}
 
 	public void addNotificationDateToStatus() {
-		report.success(lastNotifyTag + dateFormatter.format(lastNotifyTime));
+		report.success(lastNotifyTag + dateFormatter.get().format(lastNotifyTime));
 	}
 
-	private boolean fullbox(List<Object> row,int i) {
-		return row.size()>i && row.get(i).toString().length()>0;
-	}
-
-	public DictionaryEntry(String tab, Map<String, Integer> header_map, int row_number, List<Object> row) throws IOException, GeneralSecurityException {
-		this.tab = tab;
-		row_index = row_number;
-
-		if (fullbox(row, header_map.get("Common Name")))
-			name = row.get(header_map.get("Common Name")).toString();
-		else
-			statusCode = StatusCode.MISSING_NAME;
-		log.info("Scanning entry " + name);
-
-		if(fullbox(row, header_map.get("Type"))) {
-			type = row.get(header_map.get("Type")).toString();
-			// if type is restricted, watch out for it
-			if(!MaintainDictionary.validType(tab, type))
-				statusCode = StatusCode.INVALID_TYPE;
-		}
-		else
-			statusCode = StatusCode.MISSING_TYPE;
-
-		if(fullbox(row, header_map.get("Status"))) {
-			statusLog = row.get(header_map.get("Status")).toString();
-			int idx = statusLog.indexOf(lastNotifyTag);
-			if(idx >= 0) {
-				idx += lastNotifyTag.length();
-				try {
-					String dateStr = statusLog.substring(idx);
-					lastNotifyTime = dateFormatter.parse(dateStr);
-				} catch(Exception e) {
-				}
-			}
-		}
-
-		if(fullbox(row, header_map.get("Last Updated"))) {
-			try {
-				String dateString = (String)row.get(header_map.get("Last Updated"));
-				modifiedDate = sdfDate.parse( dateString );
-			} catch(Exception e) {
-			}
-		}
-
-		if("Attribute".equals(type)) attribute = true; // check if it's an attribute
-		if(fullbox(row, header_map.get("SynBioHub URI"))) uri = URI.create(row.get(header_map.get("SynBioHub URI")).toString());
-
-		String attributeStr = null;
-		Integer col = header_map.get("Definition URI / CHEBI ID");
-		if(col == null) {
-			col = header_map.get("Definition URI");
-		}
-		definitionURIColumn = col;
-
-		if((col != null) && (fullbox(row, col))) {
-			attributeStr = (String)row.get(col);
-
-			try {
-				attributeDefinition = new URI(attributeStr);
-			} catch(Exception e) {
-			}
-		}
-
-		col = header_map.get("Alias Names");
-		if(col != null) {
-			if(fullbox(row, col)) {
-				try {
-					String aliasName_cell = row.get(col).toString();
-					String[] aliasList = aliasName_cell.split(";");
-					for(String aliasVal : aliasList) {
-						String trimmedVal = aliasVal.trim();
-						if(trimmedVal.length() != 0) {
-							aliasNames.add(trimmedVal);
-						}
-					}
-				} catch (Exception e) {
-					// TODO: handle exception
-				}
-
-			}
-		}
-
-		col = header_map.get("Definition Import");
-		if(col != null) {
-			try {
-				URI definitionImportURI = new URI((String)row.get(col));
-				definitionImport = definitionImportURI.toString();
-			} catch(Exception e) {
-			}
+	/**
+	 * @return the time of the last notification recorded in the
+	 * contents of a Status cell, or null if there is none
+	 */
+	static Date parseLastNotifyTime(String statusLog) {
+		int idx = statusLog.indexOf(lastNotifyTag);
+		if(idx < 0) {
+			return null;
 		}
 
-		for(String uidLabel : labUIDMap.keySet()) {
-			String uidTag = labUIDMap.get(uidLabel);
-
-			Integer column = header_map.get(uidLabel);
-			if(column == null) {
-				continue;
-			}
-
-			if(fullbox(row, column)) {
-				String cellValue = (String)row.get(header_map.get(uidLabel));
-				Set<String> uidSet = new TreeSet<>();
-				uidSet.addAll(Arrays.asList(cellValue.split("\\s*,\\s*")));
-				labUIDs.put(uidTag, uidSet);
-			} else {
-				labUIDs.put(uidTag, null);
-			}
+		try {
+			return dateFormatter.get().parse(statusLog.substring(idx + lastNotifyTag.length()));
+		} catch(Exception e) {
+			return null;
 		}
+	}
 
-		if (header_map.get("Stub Object?") != null && fullbox(row, header_map.get("Stub Object?"))) {
-			String value = row.get(header_map.get("Stub Object?")).toString();
-			if(value.equals("YES")) {
-				stub = StubStatus.YES;
-			} else if(value.equals("NO")) {
-				stub = StubStatus.NO;
-			}
-		}
+	public DictionaryEntry(String tab, Map<String, Integer> header_map, int row_number, List<Object> row) throws IOException, GeneralSecurityException {
+		this(RowDecoder.compile(tab, header_map), row_number, row);
+	}
 
-		this.header_map = header_map;
+	/**
+	 * Create an entry from a spreadsheet row, using a decoder compiled
+	 * for the headers of its tab
+	 */
+	DictionaryEntry(RowDecoder decoder, int row_number, List<Object> row) {
+		decoder.decode(this, row_number, row);
 	}
 
 	public Map<String, String> generateFieldMap() {
@@ -348,7 +262,7 @@ public class DictionaryEntry {
 				}
 			}
 
-			fieldMap.put(reverseLabUIDMap.get(key), uidsString);
+			fieldMap.put(DictionaryMaintainerApp.reverseLabUIDMap.get(key), uidsString);
 		}
 
 
@@ -366,7 +280,7 @@ public class DictionaryEntry {
 		Set<String> itemIds = new TreeSet<>();
 
 		String key = labUID + " UID";
-		String uidKey = labUIDMap.get(key);
+		String uidKey = DictionaryMaintainerApp.labUIDMap.get(key);
 
 		if(uidKey != null) {
 			Set<String> _itemIds = labUIDs.get(uidKey);
@@ -390,10 +304,10 @@ public class DictionaryEntry {
 
 	public boolean setModifiedDate(String dateString) {
 		try {
-			modifiedDate = sdfDate.parse(dateString);
+			modifiedDate = sdfDate.get().parse(dateString);
 		} catch(Exception e) {
 			try {
-				modifiedDate = sdfDate2.parse(dateString);
+				modifiedDate = sdfDate2.get().parse(dateString);
 			} catch(Exception e2) {
 				return false;
 			}
@@ -406,7 +320,7 @@ public class DictionaryEntry {
 		if(modifiedDate == null) {
 			return null;
 		}
-		return sdfDate.format(modifiedDate);
+		return sdfDate.get().format(modifiedDate);
 	}
 
 	//    public boolean validType() {
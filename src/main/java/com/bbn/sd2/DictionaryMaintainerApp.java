@@ -3,10 +3,11 @@ package com.bbn.sd2;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.net.URI;
-import java.security.GeneralSecurityException;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import java.util.logging.Logger;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.List;
@@ -25,9 +26,14 @@ public class DictionaryMaintainerApp {
 
     private static Logger log = Logger.getGlobal();
     private static int sleepMillis;
+    /** Time between updates after one that found edits, or -1 for the default */
+    private static long minSleepMillis = -1;
+    /** Longest time between updates while nothing is edited, or -1 for the default */
+    private static long maxSleepMillis = -1;
+    /** Time between copies to the staging spreadsheet, or -1 for the default */
+    private static long stagingCopyMillis = -1;
     private static boolean stopSignal = false;
     private static Semaphore heartbeatSem = new Semaphore(0);
-    private static Semaphore backupSem = new Semaphore(0);
     private static boolean stopWorkerThreads = false;
     private static Map<String, Map<String, String>> emailLists = new TreeMap<>();
 
@@ -40,12 +46,12 @@ public class DictionaryMaintainerApp {
         // Parse arguments and configure
         CommandLine cmd = parseArguments(args);
         sleepMillis = 1000*Integer.valueOf(cmd.getOptionValue("sleep","60"));
+        MaintainDictionary.workerCount = Math.max(1, Integer.valueOf(cmd.getOptionValue("workers","1")));
         log.info("Dictionary Maintainer initializing "+(cmd.hasOption("test_mode") ?
                                                         "in single update mode":
                                                         "for continuous operation"));
         stopWorkerThreads = false;
         kludge_heartbeat_reporter();
-        final boolean backupInMainLoop = true;
         boolean test_mode = cmd.hasOption("test_mode");
         boolean no_email = cmd.hasOption("no_email");
 
@@ -62,34 +68,16 @@ public class DictionaryMaintainerApp {
 
         DictionaryAccessor.configure(cmd);
         DictionaryAccessor.restart();
-
-        if(!backupInMainLoop) {
-            if(!test_mode) {
-                start_backup(1);
-            }
-        }
-
-        // Number of milliseconds in one hour
-        long hourMillis = 3600000;
-
-        // Number of milliseconds in one day
-        long dayMillis = hourMillis * 24;
-
-        // Get time, in milliseconds since 1970 UTC
-        long now = System.currentTimeMillis();
-
-        // Calculate time of next midnight (UTC)
-        long nextMidnightUTC = now - (now % dayMillis) + dayMillis;
-
-        // Backup time in hours after midnight UTC.
-        long backTimeHoursAM_UTC = 8;
-
-        // This keeps track of the next time to run a backup
-        long nextBackupTime = nextMidnightUTC + (backTimeHoursAM_UTC * hourMillis);
+        FingerprintStore.configure(cmd);
+        ConflictStore.configure(cmd);
+        DocumentCache.configure(cmd);
+        CollectionSnapshot.configure(cmd);
+        ChangeDetector.configure(cmd);
+        Metrics.configure(cmd);
 
         // Make sure collection exists
 
-        SynBioHubAccessor.configure(cmd);
+        SynBioHubAccessor.configure(cmd, MaintainDictionary.workerCount);
         SynBioHubAccessor.restart();
         try {
             if(!SynBioHubAccessor.collectionExists()) {
@@ -107,13 +95,38 @@ public class DictionaryMaintainerApp {
         }
         SynBioHubAccessor.logout();
 
+        // Backups and copies to the staging spreadsheet run on a thread
+        // of their own, so they never delay an update
+        ScheduledExecutorService backgroundTasks = null;
+        if(!test_mode) {
+            backgroundTasks = startBackgroundTasks();
+        }
+
+        CycleScheduler scheduler =
+            new CycleScheduler((minSleepMillis >= 0) ? minSleepMillis : Math.min(sleepMillis, 10000),
+                               sleepMillis,
+                               (maxSleepMillis >= 0) ? maxSleepMillis : 4L * sleepMillis);
+
         // Run as an eternal loop, reporting errors but not crashing out
         while(!stopSignal) {
+            Metrics.Timer cycleTimer = Metrics.time(Metrics.CYCLE_SECONDS);
+
+            // True if the update found edits, so the next one should
+            // come soon
+            boolean busy = false;
             try {
                 long start = System.currentTimeMillis();
-                SynBioHubAccessor.configure(cmd);
+                SynBioHubAccessor.configure(cmd, MaintainDictionary.workerCount);
                 SynBioHubAccessor.restart();
-                MaintainDictionary.maintain_dictionary(emailLists);
+                if(ChangeDetector.isUnchanged()) {
+                    log.info("Spreadsheet and collection are unchanged, so skipping this update");
+                    Metrics.increment(Metrics.SKIPPED_CYCLES);
+                } else {
+                    MaintainDictionary.maintain_dictionary(emailLists);
+                    ChangeDetector.endPass(MaintainDictionary.lastPassComplete());
+                    busy = (MaintainDictionary.lastPassChangeCount() > 0) ||
+                        !MaintainDictionary.lastPassComplete();
+                }
                 SynBioHubAccessor.logout();
                 long end = System.currentTimeMillis();
                 NumberFormat formatter = new DecimalFormat("#0.00000");
@@ -122,65 +135,84 @@ public class DictionaryMaintainerApp {
             } catch(Exception e) {
                 log.severe("Exception while maintaining dictionary:");
                 e.printStackTrace();
+                ChangeDetector.forget();
+                // Retry soon, as after an incomplete update
+                busy = true;
+                Metrics.increment(Metrics.CYCLE_FAILURES);
             }
+            cycleTimer.stop();
+            Metrics.set(Metrics.LAST_CYCLE_END, System.currentTimeMillis() / 1000.0);
 
             if (test_mode) {
                 setStopSignal();
             } else {
-                if(backupInMainLoop) {
-                    try {
-                        Thread.sleep(sleepMillis);
-
-                        if(System.currentTimeMillis() > nextBackupTime) {
-                            // Back up spreadsheet
-                            DictionaryAccessor.backup();
-
-                            while(System.currentTimeMillis() > nextBackupTime) {
-                                nextBackupTime += dayMillis;
-                            }
-                        }
-
-                        copyTabsToStagingSpreadsheet();
-                    } catch(Exception e) {
-                        e.printStackTrace();
-                    }
-                }
-
+                scheduler.passEnded(busy);
                 try {
-                    Thread.sleep(sleepMillis);
+                    scheduler.awaitNextRun();
                 } catch(InterruptedException e) {
                     // ignore sleep interruptions
                 }
             }
         }
 
+        if(backgroundTasks != null) {
+            backgroundTasks.shutdownNow();
+        }
+
         stopWorkerThreads = true;
         heartbeatSem.release(1);
-        backupSem.release(1);
+        Metrics.stop();
         log.info("Dictionary Maintainer run complete, shutting down.");
     }
 
-    private static void start_backup(int days) {
-
-        new Thread() {
-            public void run() {
-                while(!stopWorkerThreads) {
-                    log.info("Executing Dictionary backup");
-                    try {
-                        DictionaryAccessor.backup();
-                        copyTabsToStagingSpreadsheet();
-
-                    } catch (IOException | GeneralSecurityException e) {
-                        e.printStackTrace();
-                    }
-                    try {
-                        backupSem.tryAcquire(1, days*24*3600, TimeUnit.SECONDS);
-                    }
-                    catch(InterruptedException e) {}
-                }
-                log.info("Stopping Dictionary backups");
+    /**
+     * Schedule the daily backup and the periodic copy of the tabs to the
+     * staging spreadsheet.  Both run on a single thread, so they never
+     * overlap each other, and each copy starts a fixed delay after the
+     * last one ended.
+     */
+    private static ScheduledExecutorService startBackgroundTasks() {
+        ScheduledExecutorService tasks = Executors.newSingleThreadScheduledExecutor();
+
+        // Number of milliseconds in one hour
+        long hourMillis = 3600000;
+
+        // Number of milliseconds in one day
+        long dayMillis = hourMillis * 24;
+
+        // Get time, in milliseconds since 1970 UTC
+        long now = System.currentTimeMillis();
+
+        // Calculate time of next midnight (UTC)
+        long nextMidnightUTC = now - (now % dayMillis) + dayMillis;
+
+        // Backup time in hours after midnight UTC.
+        long backTimeHoursAM_UTC = 8;
+
+        // Time of the first backup.  Backups are made once a day
+        long nextBackupTime = nextMidnightUTC + (backTimeHoursAM_UTC * hourMillis);
+
+        tasks.scheduleAtFixedRate(() -> {
+            try {
+                log.info("Executing Dictionary backup");
+                DictionaryAccessor.backup();
+            } catch(Exception e) {
+                e.printStackTrace();
+            }
+        }, nextBackupTime - now, dayMillis, TimeUnit.MILLISECONDS);
+
+        // By default the staging spreadsheet is copied about as often as
+        // it was when the copy was made between updates
+        long copyMillis = (stagingCopyMillis > 0) ? stagingCopyMillis : Math.max(60000, 2L * sleepMillis);
+        tasks.scheduleWithFixedDelay(() -> {
+            try {
+                copyTabsToStagingSpreadsheet();
+            } catch(Exception e) {
+                e.printStackTrace();
             }
-        }.start();
+        }, copyMillis, copyMillis, TimeUnit.MILLISECONDS);
+
+        return tasks;
     }
 
     public static void loadConfigFile(String fName) throws IOException {
@@ -275,6 +307,68 @@ public class DictionaryMaintainerApp {
                 MaintainDictionary.synBioHubAccessRetryPauseMS =
                     (int)config.getLong("synBioHubAccessRetryPauseMS");
             }
+
+            if(config.has("synBioHubBatchSize")) {
+                MaintainDictionary.synBioHubBatchSize =
+                    Math.max(1, config.getInt("synBioHubBatchSize"));
+            }
+
+            if(config.has("pipelineDepth")) {
+                MaintainDictionary.pipelineDepth =
+                    Math.max(0, config.getInt("pipelineDepth"));
+            }
+
+            if(config.has("optimisticConcurrency")) {
+                MaintainDictionary.optimisticConcurrency =
+                    config.getBoolean("optimisticConcurrency");
+            }
+
+            if(config.has("writeFlushPolicy")) {
+                WriteBuffer.flushPolicy =
+                    WriteBuffer.FlushPolicy.valueOf(config.getString("writeFlushPolicy"));
+            }
+
+            if(config.has("writeFlushBytes")) {
+                WriteBuffer.flushBytes = config.getLong("writeFlushBytes");
+            }
+
+            if(config.has("writeFlushSeconds")) {
+                WriteBuffer.flushAgeMillis = 1000L * config.getLong("writeFlushSeconds");
+            }
+
+            if(config.has("documentCacheMemoryEntries")) {
+                DocumentCache.maxMemoryEntries = config.getInt("documentCacheMemoryEntries");
+            }
+
+            if(config.has("documentCacheDiskEntries")) {
+                DocumentCache.maxDiskEntries = config.getInt("documentCacheDiskEntries");
+            }
+
+            if(config.has("googleReadRequestsPerMinute")) {
+                DictionaryAccessor.getReadRateLimiter().setRequestsPerMinute(
+                    config.getInt("googleReadRequestsPerMinute"));
+            }
+
+            if(config.has("googleWriteRequestsPerMinute")) {
+                DictionaryAccessor.getWriteRateLimiter().setRequestsPerMinute(
+                    config.getInt("googleWriteRequestsPerMinute"));
+            }
+
+            if(config.has("maxSkipSeconds")) {
+                ChangeDetector.maxSkipMillis = 1000L * config.getLong("maxSkipSeconds");
+            }
+
+            if(config.has("minSleepSeconds")) {
+                minSleepMillis = 1000L * config.getLong("minSleepSeconds");
+            }
+
+            if(config.has("maxSleepSeconds")) {
+                maxSleepMillis = 1000L * config.getLong("maxSleepSeconds");
+            }
+
+            if(config.has("stagingCopySeconds")) {
+                stagingCopyMillis = 1000L * config.getLong("stagingCopySeconds");
+            }
         }
     }
 
@@ -338,12 +432,20 @@ public class DictionaryMaintainerApp {
         options.addOption("p", "password", true, "login password for SynBioHub maintainer account");
         options.addOption("c", "collection", true, "URL for SynBioHub collection to be synchronized");
         options.addOption("g", "gsheet_id", true, "Google Sheets ID of spreadsheet");
+        options.addOption("G", "sheets_url", true, "root URL of a Google Sheets API stand-in to use instead of Google, for testing");
         options.addOption("S", "server", true, "URL for SynBioHub server");
         options.addOption("f", "spoofing", true, "URL prefix for a test SynBioHub server spoofing as another");
         options.addOption("t", "test_mode", false, "Run only one update for testing purposes, then terminate");
         options.addOption("T", "timeout", true, "Connection timeout in seconds (zero to disable timeout)");
         options.addOption("n", "no_email", false, "Don't send email");
         options.addOption("i", "config_file", true, "Configuration File");
+        options.addOption("w", "workers", true, "number of dictionary entries to exchange with SynBioHub in parallel");
+        options.addOption("F", "fingerprint_file", true, "file that remembers unchanged rows between passes, so they can be skipped");
+        options.addOption("K", "conflict_file", true, "file that remembers rows edited after their commit to SynBioHub, under optimistic concurrency");
+        options.addOption("D", "document_cache", true, "directory for caching documents retrieved from SynBioHub");
+        options.addOption("U", "skip_unchanged", false, "skip updates while neither the spreadsheet nor the SynBioHub collection changes");
+        options.addOption("M", "metrics_port", true, "serve Prometheus metrics on this port, or host:port, at /metrics");
+        options.addOption("B", "bulk_read", false, "read the whole SynBioHub collection with SPARQL queries, retrieving documents only to update them");
 
         // Parse arguments
         CommandLine cmd = null;
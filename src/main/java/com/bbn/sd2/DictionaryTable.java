@@ -0,0 +1,427 @@
+package com.bbn.sd2;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import com.bbn.sd2.DictionaryEntry.StubStatus;
+
+/**
+ * Column-oriented copy of the fields of dictionary entries that a pass
+ * compares against later, such as the entries as they were read at the
+ * start of the pass and the SynBioHub view of the entries.  Each field is
+ * kept in an array indexed by the position of the entry in the table,
+ * rather than in an entry object with its own maps, sets and formatters.
+ * Types, tabs and status codes are stored as small integer codes, and
+ * alias names and lab UIDs as single strings in sorted order.  Entries are
+ * read through Row views, which have the comparison and field map methods
+ * of DictionaryEntry.
+ */
+public final class DictionaryTable {
+    private static final StatusCode[] statusCodes = StatusCode.values();
+    private static final StubStatus[] stubStatuses = StubStatus.values();
+
+    /** Separates the alias names and the lab UIDs joined in one cell */
+    private static final String ALIAS_SEPARATOR = ";";
+    private static final String UID_SEPARATOR = ", ";
+
+    private int size = 0;
+    private boolean sorted = true;
+
+    private int[] rowIndexes;
+    private int[] tabCodes;
+    private int[] typeCodes;
+    private byte[] statuses;
+    private byte[] stubs;
+    private final BitSet attributes = new BitSet();
+    private String[] names;
+    private URI[] uris;
+    private URI[] attributeDefinitions;
+    private String[] aliases;
+
+    /** Lab UIDs, by lab key, then by position in the table */
+    private final Map<String, LabColumn> labColumns = new LinkedHashMap<>();
+
+    /** Values of the dictionary-encoded columns, and their codes */
+    private final List<String> codedValues = new ArrayList<>();
+    private final Map<String, Integer> codes = new HashMap<>();
+
+    /** Lab UIDs of one lab */
+    private static final class LabColumn {
+        /** Entries that have the lab key, even with no UIDs */
+        final BitSet present = new BitSet();
+        String[] uids;
+
+        LabColumn(int capacity) {
+            uids = new String[capacity];
+        }
+    }
+
+    public DictionaryTable() {
+        this(16);
+    }
+
+    /**
+     * @param capacity number of entries the table holds before it grows
+     */
+    public DictionaryTable(int capacity) {
+        capacity = Math.max(1, capacity);
+        rowIndexes = new int[capacity];
+        tabCodes = new int[capacity];
+        typeCodes = new int[capacity];
+        statuses = new byte[capacity];
+        stubs = new byte[capacity];
+        names = new String[capacity];
+        uris = new URI[capacity];
+        attributeDefinitions = new URI[capacity];
+        aliases = new String[capacity];
+    }
+
+    /**
+     * Create a table from a list of entries
+     * @param entries entries to be copied
+     * @return the table
+     */
+    public static DictionaryTable of(List<DictionaryEntry> entries) {
+        DictionaryTable table = new DictionaryTable(entries.size());
+        for(DictionaryEntry e : entries) {
+            table.add(e);
+        }
+        return table;
+    }
+
+    /**
+     * Copy the fields of an entry to the end of the table.  Later changes
+     * to the entry do not change the table.
+     * @param e entry to be copied
+     * @return the position of the entry in the table
+     */
+    public synchronized int add(DictionaryEntry e) {
+        if(size == rowIndexes.length) {
+            grow();
+        }
+
+        int i = size++;
+        if((i > 0) && (rowIndexes[i - 1] >= e.row_index)) {
+            sorted = false;
+        }
+
+        rowIndexes[i] = e.row_index;
+        tabCodes[i] = encode(e.tab);
+        typeCodes[i] = encode(e.type);
+        statuses[i] = (byte)e.statusCode.ordinal();
+        stubs[i] = (byte)e.stub.ordinal();
+        attributes.set(i, e.attribute);
+        names[i] = e.name;
+        uris[i] = e.uri;
+        attributeDefinitions[i] = e.attributeDefinition;
+        aliases[i] = join(e.aliasNames, ALIAS_SEPARATOR);
+
+        for(String lab : e.labUIDs.keySet()) {
+            LabColumn column = labColumns.get(lab);
+            if(column == null) {
+                column = new LabColumn(rowIndexes.length);
+                labColumns.put(lab, column);
+            }
+
+            column.present.set(i);
+            Set<String> uids = e.labUIDs.get(lab);
+            if(uids != null) {
+                column.uids[i] = join(uids, UID_SEPARATOR);
+            }
+        }
+
+        return i;
+    }
+
+    /** @return the number of entries in the table */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @param i position of the entry in the table
+     * @return a view of the entry
+     */
+    public Row get(int i) {
+        if((i < 0) || (i >= size())) {
+            throw new IndexOutOfBoundsException("Entry " + i + " of " + size());
+        }
+        return new Row(i);
+    }
+
+    /**
+     * Find the entry read from a spreadsheet row
+     * @param rowIndex spreadsheet row of the entry, counting from one
+     * @return a view of the entry, or null if no entry came from the row
+     */
+    public synchronized Row find(int rowIndex) {
+        if(sorted) {
+            int i = Arrays.binarySearch(rowIndexes, 0, size, rowIndex);
+            return (i >= 0) ? new Row(i) : null;
+        }
+
+        for(int i=0; i<size; ++i) {
+            if(rowIndexes[i] == rowIndex) {
+                return new Row(i);
+            }
+        }
+        return null;
+    }
+
+    /** @return views of all of the entries, in the order they were added */
+    public List<Row> rows() {
+        int count = size();
+        List<Row> rows = new ArrayList<>(count);
+        for(int i=0; i<count; ++i) {
+            rows.add(new Row(i));
+        }
+        return rows;
+    }
+
+    private void grow() {
+        int capacity = rowIndexes.length * 2;
+        rowIndexes = Arrays.copyOf(rowIndexes, capacity);
+        tabCodes = Arrays.copyOf(tabCodes, capacity);
+        typeCodes = Arrays.copyOf(typeCodes, capacity);
+        statuses = Arrays.copyOf(statuses, capacity);
+        stubs = Arrays.copyOf(stubs, capacity);
+        names = Arrays.copyOf(names, capacity);
+        uris = Arrays.copyOf(uris, capacity);
+        attributeDefinitions = Arrays.copyOf(attributeDefinitions, capacity);
+        aliases = Arrays.copyOf(aliases, capacity);
+        for(LabColumn column : labColumns.values()) {
+            column.uids = Arrays.copyOf(column.uids, capacity);
+        }
+    }
+
+    /**
+     * @return the code of a value of a dictionary-encoded column, or -1
+     * for null
+     */
+    private int encode(String value) {
+        if(value == null) {
+            return -1;
+        }
+
+        Integer code = codes.get(value);
+        if(code == null) {
+            code = codedValues.size();
+            codedValues.add(value);
+            codes.put(value, code);
+        }
+        return code;
+    }
+
+    private synchronized String decode(int code) {
+        return (code < 0) ? null : codedValues.get(code);
+    }
+
+    /**
+     * Join a set of strings in sorted order, so that equal sets give
+     * equal strings
+     */
+    private static String join(Set<String> values, String separator) {
+        if(values.isEmpty()) {
+            return "";
+        }
+        if(values.size() == 1) {
+            return values.iterator().next();
+        }
+        return String.join(separator, new TreeSet<>(values));
+    }
+
+    private static Set<String> split(String joined, String separator) {
+        if(joined.isEmpty()) {
+            return Collections.emptySet();
+        }
+        return new TreeSet<>(Arrays.asList(joined.split(separator)));
+    }
+
+    /**
+     * View of one entry of the table.  Views hold only a position, so they
+     * are cheap to create and to throw away.
+     */
+    public final class Row {
+        private final int i;
+
+        private Row(int i) {
+            this.i = i;
+        }
+
+        public int getRowIndex() {
+            synchronized(DictionaryTable.this) {
+                return rowIndexes[i];
+            }
+        }
+
+        public String getTab() {
+            synchronized(DictionaryTable.this) {
+                return decode(tabCodes[i]);
+            }
+        }
+
+        public String getType() {
+            synchronized(DictionaryTable.this) {
+                return decode(typeCodes[i]);
+            }
+        }
+
+        public StatusCode getStatusCode() {
+            synchronized(DictionaryTable.this) {
+                return statusCodes[statuses[i]];
+            }
+        }
+
+        public StubStatus getStub() {
+            synchronized(DictionaryTable.this) {
+                return stubStatuses[stubs[i]];
+            }
+        }
+
+        public boolean isAttribute() {
+            synchronized(DictionaryTable.this) {
+                return attributes.get(i);
+            }
+        }
+
+        public String getName() {
+            synchronized(DictionaryTable.this) {
+                return names[i];
+            }
+        }
+
+        public URI getUri() {
+            synchronized(DictionaryTable.this) {
+                return uris[i];
+            }
+        }
+
+        public URI getAttributeDefinition() {
+            synchronized(DictionaryTable.this) {
+                return attributeDefinitions[i];
+            }
+        }
+
+        /** @return the alias names, in sorted order */
+        public Set<String> getAliasNames() {
+            synchronized(DictionaryTable.this) {
+                return split(aliases[i], ALIAS_SEPARATOR);
+            }
+        }
+
+        /**
+         * @return the lab UIDs of the entry, by lab key.  As in
+         * DictionaryEntry.labUIDs, a lab whose column is empty maps to null.
+         */
+        public Map<String, Set<String>> getLabUIDs() {
+            Map<String, Set<String>> labUIDs = new HashMap<>();
+            synchronized(DictionaryTable.this) {
+                for(String lab : labColumns.keySet()) {
+                    LabColumn column = labColumns.get(lab);
+                    if(column.present.get(i)) {
+                        String uids = column.uids[i];
+                        labUIDs.put(lab, (uids == null) ? null : split(uids, UID_SEPARATOR));
+                    }
+                }
+            }
+            return labUIDs;
+        }
+
+        /**
+         * Compare the entry with a dictionary entry, in the same way as
+         * DictionaryEntry.equals
+         * @param e dictionary entry
+         * @return true if the name, type, URI, definition, alias names,
+         * lab UIDs and attribute flag are all equal
+         */
+        public boolean matches(DictionaryEntry e) {
+            synchronized(DictionaryTable.this) {
+                if(!equal(names[i], e.name) || !equal(decode(typeCodes[i]), e.type)
+                   || !equal(uris[i], e.uri)
+                   || !equal(attributeDefinitions[i], e.attributeDefinition)
+                   || (attributes.get(i) != e.attribute)) {
+                    return false;
+                }
+
+                if(!aliases[i].equals(join(e.aliasNames, ALIAS_SEPARATOR))) {
+                    return false;
+                }
+
+                int labCount = 0;
+                for(String lab : labColumns.keySet()) {
+                    LabColumn column = labColumns.get(lab);
+                    if(column.present.get(i)) {
+                        ++labCount;
+                    }
+                }
+                if(labCount != e.labUIDs.size()) {
+                    return false;
+                }
+
+                for(String lab : e.labUIDs.keySet()) {
+                    LabColumn column = labColumns.get(lab);
+                    String uids = (column == null) ? null : column.uids[i];
+
+                    Set<String> otherUids = e.labUIDs.get(lab);
+                    String joined = (otherUids == null) ? null : join(otherUids, UID_SEPARATOR);
+                    if(!equal(uids, joined)) {
+                        return false;
+                    }
+                }
+
+                return true;
+            }
+        }
+
+        /**
+         * @return the same field map as DictionaryEntry.generateFieldMap
+         */
+        public Map<String, String> generateFieldMap() {
+            Map<String, String> fieldMap = new TreeMap<String, String>();
+
+            synchronized(DictionaryTable.this) {
+                for(String lab : labColumns.keySet()) {
+                    LabColumn column = labColumns.get(lab);
+                    if(column.present.get(i)) {
+                        String uids = column.uids[i];
+                        fieldMap.put(DictionaryMaintainerApp.reverseLabUIDMap.get(lab),
+                                     (uids == null) ? "" : uids);
+                    }
+                }
+
+                fieldMap.put("Common Name", names[i]);
+                switch(stubStatuses[stubs[i]]) {
+                case YES:
+                    fieldMap.put("Stub Object?", "YES");
+                    break;
+                case NO:
+                    fieldMap.put("Stub Object?", "NO");
+                    break;
+                default:
+                    fieldMap.put("Stub Object?", "");
+                    break;
+                }
+                fieldMap.put("Type", decode(typeCodes[i]));
+                if(attributeDefinitions[i] != null) {
+                    fieldMap.put("Definition URI", attributeDefinitions[i].toString());
+                }
+            }
+
+            return fieldMap;
+        }
+    }
+
+    private static boolean equal(Object o1, Object o2) {
+        return (o1 == null) ? (o2 == null) : o1.equals(o2);
+    }
+}
@@ -0,0 +1,424 @@
+package com.bbn.sd2;
+
+import java.io.File;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import javax.xml.namespace.QName;
+
+import org.apache.commons.cli.CommandLine;
+import org.json.JSONObject;
+import org.sbolstandard.core2.Annotation;
+import org.sbolstandard.core2.SBOLDocument;
+import org.sbolstandard.core2.SBOLReader;
+import org.sbolstandard.core2.SBOLValidationException;
+import org.sbolstandard.core2.SBOLWriter;
+import org.sbolstandard.core2.TopLevel;
+
+/**
+ * Cache of documents retrieved from SynBioHub, kept in memory and on
+ * disk.  A cached document is only used while the dcterms:modified date
+ * of its object matches the date found in SynBioHub at the start of the
+ * current pass, so objects that have not changed are neither downloaded
+ * nor parsed again.  Both levels evict the least recently used documents
+ * once they reach their size caps.  Files are read and written without
+ * holding the lock on the cache, which only guards its indexes, so
+ * threads using different documents do not wait for each other.
+ */
+public final class DocumentCache {
+    private static Logger log = Logger.getGlobal();
+
+    private static final QName MODIFIED = new QName("http://purl.org/dc/terms/","modified","dcterms");
+
+    /** Maximum number of parsed documents kept in memory */
+    public static int maxMemoryEntries = 1000;
+    /** Maximum number of documents kept on disk */
+    public static int maxDiskEntries = 20000;
+
+    /** Directory the documents are saved in, or null if the cache is disabled */
+    private static File cacheDirectory = null;
+
+    private static class CachedDocument {
+        final SBOLDocument document;
+        final String modified;
+
+        CachedDocument(SBOLDocument document, String modified) {
+            this.document = document;
+            this.modified = modified;
+        }
+    }
+
+    /** Parsed documents, indexed by SynBioHub URI, in least recently used order */
+    private static LinkedHashMap<String, CachedDocument> memoryEntries =
+        new LinkedHashMap<>(16, 0.75f, true);
+
+    /** Names of the files on disk, in least recently used order */
+    private static LinkedHashMap<String, Boolean> diskEntries =
+        new LinkedHashMap<>(16, 0.75f, true);
+
+    /** Modified dates of the collection members at the start of the current pass */
+    private static Map<String, String> synBioHubModifiedDates = new HashMap<>();
+
+    private static long memoryHits = 0;
+    private static long diskHits = 0;
+    private static long misses = 0;
+    private static long staleCount = 0;
+    private static long evictionCount = 0;
+
+    private DocumentCache() {} // static-only class
+
+    public static synchronized void configure(CommandLine cmd) {
+        memoryEntries.clear();
+        diskEntries.clear();
+
+        if(!cmd.hasOption("document_cache")) {
+            cacheDirectory = null;
+            return;
+        }
+
+        cacheDirectory = new File(cmd.getOptionValue("document_cache"));
+        if(!cacheDirectory.isDirectory() && !cacheDirectory.mkdirs()) {
+            log.warning("Failed to create document cache directory " + cacheDirectory);
+            cacheDirectory = null;
+            return;
+        }
+
+        // Pick up the documents saved by earlier runs, oldest first
+        File[] files = cacheDirectory.listFiles((dir, name) -> name.endsWith(".json"));
+        if(files != null) {
+            Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+            for(File file : files) {
+                String name = file.getName();
+                diskEntries.put(name.substring(0, name.length() - ".json".length()), true);
+            }
+        }
+
+        log.info("Document cache holds " + diskEntries.size() + " documents on disk");
+    }
+
+    public static synchronized boolean isEnabled() {
+        return cacheDirectory != null;
+    }
+
+    /**
+     * Start a pass through the dictionary
+     * @param modifiedDates maps SynBioHub URIs to their modified dates, or
+     * null if the dates could not be looked up
+     */
+    public static synchronized void beginPass(Map<String, String> modifiedDates) {
+        synBioHubModifiedDates = new HashMap<>();
+        if(modifiedDates != null) {
+            synBioHubModifiedDates.putAll(modifiedDates);
+        }
+    }
+
+    /**
+     * Finish a pass through the dictionary
+     */
+    public static synchronized void endPass() {
+        if(cacheDirectory == null) {
+            return;
+        }
+
+        log.info("Document cache: " + memoryHits + " memory hits, " + diskHits + " disk hits, "
+                 + misses + " misses, " + staleCount + " stale, " + evictionCount + " evicted");
+    }
+
+    /**
+     * Look up a document that is still current
+     * @param uri SynBioHub URI of the object
+     * @return a copy of the document that the caller may modify, or null
+     * if there is no current copy in the cache
+     */
+    public static SBOLDocument get(URI uri) {
+        String key = uri.toString();
+        String fileName = fileName(key);
+        CachedDocument cached;
+        File directory;
+        String modified;
+
+        synchronized(DocumentCache.class) {
+            directory = cacheDirectory;
+            if(directory == null) {
+                return null;
+            }
+
+            modified = synBioHubModifiedDates.get(key);
+            if(modified == null) {
+                ++misses;
+                return null;
+            }
+
+            cached = memoryEntries.get(key);
+            if(cached != null) {
+                if(!modified.equals(cached.modified)) {
+                    memoryEntries.remove(key);
+                    ++staleCount;
+                    ++misses;
+                    return null;
+                }
+                ++memoryHits;
+
+            } else if(!diskEntries.containsKey(fileName)) {
+                ++misses;
+                return null;
+            }
+        }
+
+        if(cached == null) {
+            cached = readFromDisk(directory, fileName, key, modified);
+
+            synchronized(DocumentCache.class) {
+                // The document may have been dropped during the read
+                if((cached == null) || !diskEntries.containsKey(fileName)) {
+                    ++misses;
+                    return null;
+                }
+
+                ++diskHits;
+                putInMemory(key, cached);
+            }
+        }
+
+        try {
+            return copyOf(cached.document);
+        } catch(Exception e) {
+            log.warning("Failed to copy cached document " + uri + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Add a document that was just retrieved from SynBioHub
+     * @param uri SynBioHub URI of the object
+     * @param localURI URI of the object in the document
+     * @param document the document, which is copied before it is cached
+     */
+    public static void put(URI uri, URI localURI, SBOLDocument document) {
+        if(!isEnabled()) {
+            return;
+        }
+
+        TopLevel topLevel = document.getTopLevel(localURI);
+        if(topLevel == null) {
+            return;
+        }
+
+        // Without a modified date the document can never be revalidated
+        Annotation modifiedAnnotation = topLevel.getAnnotation(MODIFIED);
+        if((modifiedAnnotation == null) || (modifiedAnnotation.getStringValue() == null)) {
+            return;
+        }
+
+        CachedDocument cached;
+        try {
+            cached = new CachedDocument(copyOf(document), modifiedAnnotation.getStringValue());
+        } catch(Exception e) {
+            log.warning("Failed to copy document " + uri + ": " + e.getMessage());
+            return;
+        }
+
+        String key = uri.toString();
+        String fileName = fileName(key);
+        File directory;
+        synchronized(DocumentCache.class) {
+            directory = cacheDirectory;
+            if(directory == null) {
+                return;
+            }
+            putInMemory(key, cached);
+        }
+
+        if(!writeToDisk(directory, fileName, key, cached)) {
+            return;
+        }
+
+        List<String> evicted = new ArrayList<>();
+        synchronized(DocumentCache.class) {
+            diskEntries.put(fileName, true);
+
+            Iterator<String> lru = diskEntries.keySet().iterator();
+            while(diskEntries.size() > maxDiskEntries) {
+                evicted.add(lru.next());
+                lru.remove();
+                ++evictionCount;
+            }
+        }
+
+        for(String evictedName : evicted) {
+            deleteFromDisk(directory, evictedName);
+        }
+    }
+
+    /**
+     * Drop a document, such as one that has just been updated in SynBioHub
+     * @param uri SynBioHub URI of the object
+     */
+    public static void invalidate(URI uri) {
+        String key = uri.toString();
+        String fileName = fileName(key);
+        File directory;
+
+        synchronized(DocumentCache.class) {
+            directory = cacheDirectory;
+            if(directory == null) {
+                return;
+            }
+
+            memoryEntries.remove(key);
+            if(diskEntries.remove(fileName) == null) {
+                return;
+            }
+        }
+
+        deleteFromDisk(directory, fileName);
+    }
+
+    public static synchronized long getMemoryHits() {
+        return memoryHits;
+    }
+
+    public static synchronized long getDiskHits() {
+        return diskHits;
+    }
+
+    public static synchronized long getMisses() {
+        return misses;
+    }
+
+    public static synchronized long getStaleCount() {
+        return staleCount;
+    }
+
+    public static synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    private static void putInMemory(String key, CachedDocument cached) {
+        memoryEntries.put(key, cached);
+
+        Iterator<String> lru = memoryEntries.keySet().iterator();
+        while(memoryEntries.size() > maxMemoryEntries) {
+            lru.next();
+            lru.remove();
+            ++evictionCount;
+        }
+    }
+
+    /** Called without the lock held */
+    private static CachedDocument readFromDisk(File directory, String fileName,
+                                               String key, String modified) {
+        try {
+            File metadataFile = new File(directory, fileName + ".json");
+            JSONObject metadata =
+                new JSONObject(new String(Files.readAllBytes(metadataFile.toPath()),
+                                          StandardCharsets.UTF_8));
+            if(!key.equals(metadata.getString("uri")) ||
+               !modified.equals(metadata.getString("modified"))) {
+                synchronized(DocumentCache.class) {
+                    ++staleCount;
+                }
+                return null;
+            }
+
+            SBOLDocument document = SBOLReader.read(new File(directory, fileName + ".xml"));
+            return new CachedDocument(document, modified);
+
+        } catch(Exception e) {
+            log.warning("Failed to read cached document " + key + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Called without the lock held.  Each file is written under a
+     * temporary name and then renamed, so a thread reading the document
+     * at the same time never sees a partly written file.
+     * @return true if the document was written
+     */
+    private static boolean writeToDisk(File directory, String fileName,
+                                       String key, CachedDocument cached) {
+        File partialFile = null;
+        try {
+            File documentFile = new File(directory, fileName + ".xml");
+            partialFile = File.createTempFile(fileName, ".xml.tmp", directory);
+            SBOLWriter.write(cached.document, partialFile);
+            Files.move(partialFile.toPath(), documentFile.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            // The metadata is written last, so it only exists for
+            // complete documents
+            JSONObject metadata = new JSONObject();
+            metadata.put("uri", key);
+            metadata.put("modified", cached.modified);
+            File metadataFile = new File(directory, fileName + ".json");
+            partialFile = File.createTempFile(fileName, ".json.tmp", directory);
+            Files.write(partialFile.toPath(), metadata.toString().getBytes(StandardCharsets.UTF_8));
+            Files.move(partialFile.toPath(), metadataFile.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+
+        } catch(Exception e) {
+            log.warning("Failed to write cached document " + key + ": " + e.getMessage());
+            if(partialFile != null) {
+                partialFile.delete();
+            }
+            return false;
+        }
+    }
+
+    /** Called without the lock held */
+    private static void deleteFromDisk(File directory, String fileName) {
+        new File(directory, fileName + ".json").delete();
+        new File(directory, fileName + ".xml").delete();
+    }
+
+    /** File names are derived from a hash of the URI */
+    private static String fileName(String key) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(key.getBytes(StandardCharsets.UTF_8));
+
+            StringBuilder hex = new StringBuilder();
+            for(byte b : hash) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch(Exception e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** Make a deep copy of a document */
+    private static SBOLDocument copyOf(SBOLDocument document) throws SBOLValidationException {
+        SBOLDocument copy = new SBOLDocument();
+        copy.setComplete(document.isComplete());
+        copy.setCreateDefaults(document.isCreateDefaults());
+        copy.setTypesInURIs(document.isTypesInURIs());
+        if(document.getDefaultURIprefix() != null) {
+            copy.setDefaultURIprefix(document.getDefaultURIprefix());
+        }
+
+        for(QName namespace : document.getNamespaces()) {
+            if(copy.getNamespace(URI.create(namespace.getNamespaceURI())) == null) {
+                copy.addNamespace(namespace);
+            }
+        }
+
+        copy.createCopy(document);
+        return copy;
+    }
+}
@@ -0,0 +1,266 @@
+package com.bbn.sd2;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.ParsePosition;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import org.apache.commons.cli.CommandLine;
+import org.json.JSONObject;
+
+/**
+ * Remembers which dictionary rows were in sync with SynBioHub at the end
+ * of the previous pass, so that they can skip SynBioHub entirely in the
+ * next pass.  Rows are identified by their SynBioHub URI, and recorded
+ * with a hash of the row contents and the dcterms:modified date of the
+ * SynBioHub object.  The modified dates of the whole collection are
+ * looked up with a single query at the start of each pass.  The store is
+ * saved to a JSON file so that it survives restarts.
+ */
+public final class FingerprintStore {
+    private static Logger log = Logger.getGlobal();
+
+    /** Modified dates without an offset, which are in local time */
+    private static final DateTimeFormatter LOCAL_MODIFIED_FORMAT =
+        DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss");
+
+    /** File the fingerprints are saved in, or null if the store is disabled */
+    private static File fingerprintFile = null;
+
+    /** Fingerprints recorded during the previous pass, indexed by SynBioHub URI */
+    private static Map<String, Fingerprint> previousFingerprints = new ConcurrentHashMap<>();
+
+    /** Fingerprints recorded during the current pass, indexed by SynBioHub URI */
+    private static Map<String, Fingerprint> currentFingerprints = new ConcurrentHashMap<>();
+
+    /** Modified dates of the collection members at the start of the current pass */
+    private static Map<String, Long> synBioHubModifiedDates = new HashMap<>();
+
+    private static AtomicInteger skippedCount = new AtomicInteger();
+
+    private FingerprintStore() {} // static-only class
+
+    private static class Fingerprint {
+        final String rowHash;
+        final long modified;
+
+        Fingerprint(String rowHash, long modified) {
+            this.rowHash = rowHash;
+            this.modified = modified;
+        }
+    }
+
+    public static void configure(CommandLine cmd) {
+        previousFingerprints.clear();
+        currentFingerprints.clear();
+
+        if(!cmd.hasOption("fingerprint_file")) {
+            fingerprintFile = null;
+            return;
+        }
+
+        fingerprintFile = new File(cmd.getOptionValue("fingerprint_file"));
+        if(!fingerprintFile.exists()) {
+            return;
+        }
+
+        try {
+            String contents = new String(Files.readAllBytes(fingerprintFile.toPath()),
+                                         StandardCharsets.UTF_8);
+            JSONObject fingerprints = new JSONObject(contents);
+            for(String uri : fingerprints.keySet()) {
+                JSONObject fingerprint = fingerprints.getJSONObject(uri);
+                previousFingerprints.put(uri, new Fingerprint(fingerprint.getString("row"),
+                                                              fingerprint.getLong("modified")));
+            }
+            log.info("Loaded " + previousFingerprints.size() + " row fingerprints from "
+                     + fingerprintFile);
+        } catch(Exception e) {
+            // Every row will be processed in full, which rebuilds the store
+            log.warning("Failed to load row fingerprints from " + fingerprintFile
+                        + ": " + e.getMessage());
+            previousFingerprints.clear();
+        }
+    }
+
+    public static boolean isEnabled() {
+        return fingerprintFile != null;
+    }
+
+    /**
+     * Start a pass through the dictionary
+     * @param modifiedDates maps SynBioHub URIs to their modified dates, or
+     * null if the dates could not be looked up, in which case no rows are
+     * skipped
+     */
+    public static void beginPass(Map<String, String> modifiedDates) {
+        currentFingerprints.clear();
+        skippedCount.set(0);
+        synBioHubModifiedDates = new HashMap<>();
+
+        if((fingerprintFile == null) || (modifiedDates == null)) {
+            return;
+        }
+
+        for(String uri : modifiedDates.keySet()) {
+            Long modified = parseModifiedDate(modifiedDates.get(uri));
+            if(modified != null) {
+                synBioHubModifiedDates.put(uri, modified);
+            }
+        }
+    }
+
+    /**
+     * Determine whether a row can skip SynBioHub because neither the row
+     * nor the SynBioHub object have changed since the row was last found
+     * to be in sync
+     */
+    public static boolean isUnchanged(DictionaryEntry e) {
+        if((fingerprintFile == null) || (e.uri == null)) {
+            return false;
+        }
+
+        String uri = e.uri.toString();
+        Fingerprint fingerprint = previousFingerprints.get(uri);
+        Long modified = synBioHubModifiedDates.get(uri);
+        if((fingerprint == null) || (modified == null)) {
+            return false;
+        }
+
+        if((fingerprint.modified != modified) || !fingerprint.rowHash.equals(rowHash(e))) {
+            return false;
+        }
+
+        skippedCount.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Record the fingerprint of a row that has been processed, if the row
+     * is in sync with SynBioHub.  Rows that needed any kind of update are
+     * not recorded, and are checked in full again on the next pass.
+     */
+    public static void record(DictionaryEntry e) {
+        if((fingerprintFile == null) || (e.uri == null)) {
+            return;
+        }
+
+        if((e.statusCode != StatusCode.VALID) || e.changed || e.dictionaryEntryChanged ||
+           !e.spreadsheetUpdates.isEmpty() || (e.modifiedDate == null)) {
+            return;
+        }
+
+        currentFingerprints.put(e.uri.toString(),
+                                new Fingerprint(rowHash(e), e.modifiedDate.getTime()));
+    }
+
+    /**
+     * Finish a pass through the dictionary, saving the fingerprints of
+     * the rows that were in sync.  Rows that were not seen in this pass
+     * are dropped from the store.
+     */
+    public static void endPass() {
+        if(fingerprintFile == null) {
+            return;
+        }
+
+        log.info("Skipped " + skippedCount.get() + " unchanged rows, "
+                 + currentFingerprints.size() + " rows in sync");
+
+        previousFingerprints = currentFingerprints;
+        currentFingerprints = new ConcurrentHashMap<>();
+
+        JSONObject fingerprints = new JSONObject();
+        for(String uri : previousFingerprints.keySet()) {
+            Fingerprint fingerprint = previousFingerprints.get(uri);
+            JSONObject entry = new JSONObject();
+            entry.put("row", fingerprint.rowHash);
+            entry.put("modified", fingerprint.modified);
+            fingerprints.put(uri, entry);
+        }
+
+        try {
+            // Write to a temporary file first, so an interrupted write
+            // does not leave a truncated store behind
+            File tmpFile = new File(fingerprintFile.getPath() + ".tmp");
+            Files.write(tmpFile.toPath(), fingerprints.toString().getBytes(StandardCharsets.UTF_8));
+            Files.move(tmpFile.toPath(), fingerprintFile.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING);
+        } catch(IOException e) {
+            log.warning("Failed to save row fingerprints to " + fingerprintFile
+                        + ": " + e.getMessage());
+        }
+    }
+
+    /** @return the number of rows skipped in the current pass */
+    public static int getSkippedCount() {
+        return skippedCount.get();
+    }
+
+    /**
+     * Hash the contents of a row that are compared against SynBioHub
+     */
+    static String rowHash(DictionaryEntry e) {
+        StringBuilder contents = new StringBuilder();
+
+        contents.append("Tab\t").append(e.tab).append('\n');
+
+        Map<String, String> fieldMap = e.generateFieldMap();
+        for(String key : fieldMap.keySet()) {
+            contents.append(key).append('\t').append(fieldMap.get(key)).append('\n');
+        }
+
+        List<String> aliasNames = new ArrayList<>(e.aliasNames);
+        Collections.sort(aliasNames);
+        contents.append("Alias Names\t").append(String.join("; ", aliasNames)).append('\n');
+        contents.append("Definition Import\t").append(e.definitionImport).append('\n');
+        contents.append("Last Updated\t").append(e.lastUpdated).append('\n');
+
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(contents.toString().getBytes(StandardCharsets.UTF_8));
+
+            StringBuilder hex = new StringBuilder();
+            for(byte b : hash) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch(NoSuchAlgorithmException exception) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(exception);
+        }
+    }
+
+    static Long parseModifiedDate(String dateString) {
+        // Same formats as DictionaryEntry.setModifiedDate
+        Date date = RowDecoder.parseLastUpdated(dateString);
+        if(date != null) {
+            return date.getTime();
+        }
+
+        try {
+            LocalDateTime local =
+                LocalDateTime.from(LOCAL_MODIFIED_FORMAT.parse(dateString, new ParsePosition(0)));
+            return local.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        } catch(DateTimeException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.bbn.sd2;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+import com.google.api.services.sheets.v4.model.GridRange;
+import com.google.api.services.sheets.v4.model.RepeatCellRequest;
+import com.google.api.services.sheets.v4.model.Request;
+
+/**
+ * Merges the formatting requests of single rows, such as the Status colors
+ * set by DictionaryEntry.setColor, into one request per run of adjacent
+ * rows that get the same format.  A tab whose rows are mostly valid then
+ * needs a handful of requests instead of one per row.
+ */
+public final class FormattingPlanner {
+    private FormattingPlanner() {} // static-only class
+
+    /**
+     * Merge the repeat cell requests that format single rows.  The result
+     * has the same effect as the requests applied in order: where two
+     * requests format the same cell, the later one wins, and requests of
+     * other kinds keep their place relative to the ones around them.
+     * @param requests requests to be merged
+     * @return the merged requests
+     */
+    public static List<Request> coalesce(List<Request> requests) {
+        List<Request> planned = new ArrayList<>();
+        List<Request> segment = new ArrayList<>();
+
+        for(Request request : requests) {
+            if(isSingleRow(request)) {
+                segment.add(request);
+            } else {
+                planned.addAll(mergeRows(segment));
+                segment.clear();
+                planned.add(request);
+            }
+        }
+        planned.addAll(mergeRows(segment));
+
+        return planned;
+    }
+
+    private static boolean isSingleRow(Request request) {
+        RepeatCellRequest repeatCell = request.getRepeatCell();
+        if((repeatCell == null) || (repeatCell.getRange() == null)) {
+            return false;
+        }
+
+        GridRange range = repeatCell.getRange();
+        return (range.getStartRowIndex() != null) && (range.getEndRowIndex() != null)
+            && (range.getEndRowIndex() == range.getStartRowIndex() + 1);
+    }
+
+    /**
+     * Merge single row repeat cell requests, which may be applied in any
+     * order once only the last request for each cell is kept
+     */
+    private static List<Request> mergeRows(List<Request> requests) {
+        // The last request for each row, by sheet, columns and fields
+        Map<String, Map<Integer, RepeatCellRequest>> columns = new LinkedHashMap<>();
+        Map<String, GridRange> columnRanges = new LinkedHashMap<>();
+
+        for(Request request : requests) {
+            RepeatCellRequest repeatCell = request.getRepeatCell();
+            GridRange range = repeatCell.getRange();
+            String key = range.getSheetId() + " " + range.getStartColumnIndex() + " "
+                + range.getEndColumnIndex() + " " + repeatCell.getFields();
+
+            Map<Integer, RepeatCellRequest> rows = columns.get(key);
+            if(rows == null) {
+                rows = new TreeMap<>();
+                columns.put(key, rows);
+                columnRanges.put(key, range);
+            }
+            rows.put(range.getStartRowIndex(), repeatCell);
+        }
+
+        // If different requests format overlapping columns, their order
+        // matters, so they are left as they are
+        List<GridRange> ranges = new ArrayList<>(columnRanges.values());
+        for(int i=0; i<ranges.size(); ++i) {
+            for(int j=i+1; j<ranges.size(); ++j) {
+                if(overlap(ranges.get(i), ranges.get(j))) {
+                    return new ArrayList<>(requests);
+                }
+            }
+        }
+
+        List<Request> merged = new ArrayList<>();
+        for(Map<Integer, RepeatCellRequest> rows : columns.values()) {
+            RepeatCellRequest run = null;
+            int runStart = 0;
+            int runEnd = 0;
+
+            for(Map.Entry<Integer, RepeatCellRequest> entry : rows.entrySet()) {
+                int row = entry.getKey();
+                RepeatCellRequest repeatCell = entry.getValue();
+
+                if((run != null) && (row == runEnd)
+                   && Objects.equals(run.getCell(), repeatCell.getCell())) {
+                    runEnd = row + 1;
+                    continue;
+                }
+
+                if(run != null) {
+                    merged.add(runRequest(run, runStart, runEnd));
+                }
+                run = repeatCell;
+                runStart = row;
+                runEnd = row + 1;
+            }
+
+            if(run != null) {
+                merged.add(runRequest(run, runStart, runEnd));
+            }
+        }
+
+        return merged;
+    }
+
+    /** @return true if two ranges of the same sheet share a column */
+    private static boolean overlap(GridRange r1, GridRange r2) {
+        if(!Objects.equals(r1.getSheetId(), r2.getSheetId())) {
+            return false;
+        }
+
+        int start1 = (r1.getStartColumnIndex() == null) ? 0 : r1.getStartColumnIndex();
+        int end1 = (r1.getEndColumnIndex() == null) ? Integer.MAX_VALUE : r1.getEndColumnIndex();
+        int start2 = (r2.getStartColumnIndex() == null) ? 0 : r2.getStartColumnIndex();
+        int end2 = (r2.getEndColumnIndex() == null) ? Integer.MAX_VALUE : r2.getEndColumnIndex();
+
+        return (start1 < end2) && (start2 < end1);
+    }
+
+    private static Request runRequest(RepeatCellRequest repeatCell, int start, int end) {
+        GridRange range = repeatCell.getRange().clone();
+        range.setStartRowIndex(start);
+        range.setEndRowIndex(end);
+
+        RepeatCellRequest merged = new RepeatCellRequest();
+        merged.setCell(repeatCell.getCell());
+        merged.setFields(repeatCell.getFields());
+        merged.setRange(range);
+
+        return new Request().setRepeatCell(merged);
+    }
+}
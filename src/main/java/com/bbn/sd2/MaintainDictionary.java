@@ -3,11 +3,13 @@ package com.bbn.sd2;
 import java.io.IOException;
 import java.net.URI;
 import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -15,6 +17,12 @@ import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
 import javax.mail.MessagingException;
@@ -56,6 +64,19 @@ public final class MaintainDictionary {
 
 	public static int synBioHubAccessRetryCount = 5;
 	public static int synBioHubAccessRetryPauseMS = 1000;
+	/** Number of rows that are fetched from and committed to SynBioHub in parallel */
+	public static int workerCount = 1;
+	/** Maximum number of objects committed to SynBioHub in a single submission */
+	public static int synBioHubBatchSize = 50;
+	/** Number of tabs fetched ahead of, and written behind, the tab being checked for edits */
+	public static int pipelineDepth = 1;
+	/**
+	 * If true, tabs are not protected while they are checked and
+	 * committed to SynBioHub.  Instead, the rows to be written are read
+	 * again just before the writes are sent, and rows edited in the
+	 * meantime are left for the next pass.
+	 */
+	public static boolean optimisticConcurrency = false;
 
 	public static final String CHEBIPrefix = "http://identifiers.org/chebi/CHEBI:";
 
@@ -146,13 +167,30 @@ public final class MaintainDictionary {
 	 */
 	private static final long minumumMappingFailureNotificationTime = 86400;
 
+	/** Tab that lists the names that labs failed to map to dictionary entries */
+	static final String MAPPING_FAILURES_TAB = "Mapping Failures";
+
 	/**
-	 * The maximum number of individual requests in a single Google request
+	 * False if part of the last pass failed, or left work for a later
+	 * pass, such as rows that were edited while they were being processed
 	 */
-	private static int maxGoogleRequestCount = 50;
+	private static volatile boolean passComplete = false;
+
+	/** Number of entries the last pass synchronized with SynBioHub */
+	private static volatile int passChangeCount = 0;
+
+	/** Cell writes dropped during the current pass because nothing changed */
+	private static final AtomicInteger unchangedWrites = new AtomicInteger();
 
 	/**
-	 * Standard XML date format for sbol objects
+	 * URIs of the entries committed to SynBioHub whose rows are waiting in
+	 * the write buffer, by tab then row, under optimistic concurrency
+	 */
+	private static final Map<String, Map<Integer, URI>> pendingCommits = new ConcurrentHashMap<>();
+
+	/**
+	 * Standard XML date format for sbol objects.  SimpleDateFormat is
+	 * not thread-safe, so it must only be used through formatXmlDate
 	 */
 	private static SimpleDateFormat sdfDate = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssX");
 
@@ -166,6 +204,21 @@ public final class MaintainDictionary {
 		return typeTabs.get(tab).contains(type);
 	}
 
+	/**
+	 * @return true if the last pass brought every tab up to date
+	 */
+	public static boolean lastPassComplete() {
+		return passComplete;
+	}
+
+	/**
+	 * @return the number of entries the last pass synchronized with
+	 * SynBioHub, which is zero if nobody edited the spreadsheet
+	 */
+	public static int lastPassChangeCount() {
+		return passChangeCount;
+	}
+
 	/**
 	 * @param tab String name of a spreadsheet tab
 	 * @return true if the given spreadsheet tab belongs to a predetermined set
@@ -361,7 +414,28 @@ public final class MaintainDictionary {
 	/** Get current date/time in standard XML format */
 	public static String xmlDateTimeStamp() {
 		// return current date/time
-		return sdfDate.format(new Date());
+		return formatXmlDate(new Date());
+	}
+
+	/** Format a date/time in standard XML format */
+	private static String formatXmlDate(Date date) {
+		synchronized(sdfDate) {
+			return sdfDate.format(date);
+		}
+	}
+
+	/**
+	 * Collect the values of all instances of an annotation
+	 * @return the string values of the annotations with the given key
+	 */
+	static Set<String> annotationValues(TopLevel entity, QName key) {
+		Set<String> values = new HashSet<String>();
+		for(Annotation ann : entity.getAnnotations()) {
+			if(ann.getQName().equals(key)) {
+				values.add(ann.getStringValue());
+			}
+		}
+		return values;
 	}
 
 	/**
@@ -377,7 +451,7 @@ public final class MaintainDictionary {
 	 * Clear all prior instances of an annotation and replace with a set of new annotations
 	 * @throws SBOLValidationException
 	 */
-	private static void replaceOldAnnotations(TopLevel entity, QName key, Set<String> new_values) throws SBOLValidationException {
+	static void replaceOldAnnotations(TopLevel entity, QName key, Set<String> new_values) throws SBOLValidationException {
 		while(entity.getAnnotation(key)!=null) {
 			entity.removeAnnotation(entity.getAnnotation(key));
 		}
@@ -385,6 +459,48 @@ public final class MaintainDictionary {
 			entity.createAnnotation(key, value);
 	}
 
+	/**
+	 * Retrieve a document from SynBioHub, retrying on failure
+	 * @return the document, or null if it could not be retrieved
+	 */
+	private static SBOLDocument retrieveWithRetries(URI uri) {
+		for(int i=0; i<synBioHubAccessRetryCount; ++i) {
+			try {
+				return SynBioHubAccessor.retrieve(uri, false);
+			} catch(Exception exception) {
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Copy the properties that update_entry manages from one version of
+	 * an object to another
+	 * @param e the entry the object belongs to
+	 * @param from the updated object
+	 * @param to the object to update
+	 * @throws SBOLValidationException
+	 */
+	private static void copyManagedProperties(DictionaryEntry e, TopLevel from, TopLevel to) throws SBOLValidationException {
+		to.setName(from.getName());
+		to.setWasDerivedFroms(from.getWasDerivedFroms());
+
+		if((from instanceof ComponentDefinition) && (to instanceof ComponentDefinition)) {
+			((ComponentDefinition)to).setTypes(((ComponentDefinition)from).getTypes());
+		}
+
+		Set<QName> annotationKeys = new HashSet<>();
+		annotationKeys.add(new QName("http://purl.org/dc/terms/", "alternative", "alternative"));
+		for(String labKey : e.labUIDs.keySet()) {
+			annotationKeys.add(new QName("http://sd2e.org#",labKey,"sd2"));
+		}
+
+		for(QName key : annotationKeys) {
+			replaceOldAnnotations(to, key, annotationValues(from, key));
+		}
+	}
+
 	/**
 	 * Update a single dictionary entry, assumed to be valid
 	 * @param e entry to be updated
@@ -394,6 +510,12 @@ public final class MaintainDictionary {
 	private static DictionaryEntry update_entry(DictionaryEntry e) throws SBOLConversionException, IOException, SBOLValidationException {
 		assert(e.statusCode == StatusCode.VALID);
 
+		// Rows that have not changed in the spreadsheet or in SynBioHub
+		// since they were last found to be in sync need no more work
+		if(FingerprintStore.isUnchanged(e)) {
+			return new DictionaryEntry(e);
+		}
+
 		// This is never called unless the entry is known valid
 		URI local_uri = null;
 		DictionaryEntry synbiohubEntry = null;
@@ -404,6 +526,10 @@ public final class MaintainDictionary {
 		boolean reverseSync = false;
 		boolean uri_imported_from_SBH = false;
 
+		// True when the entry is checked against a document built from
+		// the collection snapshot, rather than the full document
+		boolean snapshotDocument = false;
+
 		try {
 			// If the URI is null and the name is not, attempt to resolve:
 			if(e.uri==null && e.name!=null) {
@@ -421,7 +547,7 @@ public final class MaintainDictionary {
 			// if the entry has no URI, create per type
 			if(e.uri==null) {
 				synBioHubAction = "create document for " + e.name + " in SynBioHub";
-				e.document = createStubOfType(e.name, e.type, sdfDate.format(now));
+				e.document = createStubOfType(e.name, e.type, formatXmlDate(now));
 				if(e.document==null) {
 					e.report.failure("Could not make object "+e.name, true);
 					e.statusCode = StatusCode.SBH_CONNECTION_FAILED;
@@ -439,13 +565,13 @@ public final class MaintainDictionary {
 				synBioHubAction = "translate local URI";
 				local_uri = SynBioHubAccessor.translateURI(e.uri);
 
-				e.document = null;
-				for(int i=0; i<synBioHubAccessRetryCount; ++i) {
-					try {
-						e.document = SynBioHubAccessor.retrieve(e.uri, false);
-						break;
-					} catch(Exception exception) {
-					}
+				// In bulk read mode, start from the properties in the
+				// collection snapshot.  The full document is only
+				// retrieved if the entry needs to be written back
+				e.document = CollectionSnapshot.createDocument(e.uri);
+				snapshotDocument = (e.document != null);
+				if(e.document == null) {
+					e.document = retrieveWithRetries(e.uri);
 				}
 
 				if(e.document == null) {
@@ -498,6 +624,12 @@ public final class MaintainDictionary {
 				Date synBioHubDate = e.modifiedDate;
 
 				if(sheetDate==null || synBioHubDate.after(sheetDate)) {
+					if(ConflictStore.contains(e.uri)) {
+						// The row was edited after its last commit
+						e.report.note("Kept spreadsheet edit made during the last update", true);
+						break;
+					}
+
 					// Item was modifed in SynBioHub since dictionary edit
 					reverseSync = true;
 					e.dictionaryEntryChanged = true;
@@ -632,15 +764,8 @@ public final class MaintainDictionary {
 				}
 
 				// Extract lab ids from SynBioHub
-				Set<String> synBioHubIds = new HashSet<String>();
-
 				QName labQKey = new QName("http://sd2e.org#",labKey,"sd2");
-				List<Annotation> annotations = topLevelEntity.getAnnotations();
-				for (Annotation ann : annotations) {
-					if(ann.getQName().equals(labQKey)) {
-						synBioHubIds.add(ann.getStringValue());
-					}
-				}
+				Set<String> synBioHubIds = annotationValues(topLevelEntity, labQKey);
 
 				// Compare lab ids
 				if(!labIds.equals(synBioHubIds)) {
@@ -682,15 +807,9 @@ public final class MaintainDictionary {
 				}
 			}
 			
-			Set<String> synbiohubAliases = new HashSet<String>();
 			QName nameAliasKey = new QName("http://purl.org/dc/terms/", "alternative", "alternative");
 			//Go over each alias entities from SBOL
-			List<Annotation> annotations = topLevelEntity.getAnnotations();
-			for (Annotation ann : annotations) {
-				if(ann.getQName().equals(nameAliasKey)) {
-					synbiohubAliases.add(ann.getStringValue());
-				}
-			}
+			Set<String> synbiohubAliases = annotationValues(topLevelEntity, nameAliasKey);
 			if(synbiohubEntry != null) {
 				synbiohubEntry.aliasNames = synbiohubAliases;
 			}
@@ -809,6 +928,27 @@ public final class MaintainDictionary {
 				}
 			}
 
+			if(e.changed && snapshotDocument) {
+				// Carry the updates over to the full document, which
+				// is what gets committed to SynBioHub
+				synBioHubAction = "retrieve " + e.uri;
+				SBOLDocument document = retrieveWithRetries(e.uri);
+				TopLevel fullEntity = null;
+				if(document != null) {
+					fullEntity = document.getTopLevel(local_uri);
+				}
+
+				if(fullEntity == null) {
+					e.report.failure("Failed to retrieve linked object from SynBioHub");
+					e.statusCode = StatusCode.SBH_CONNECTION_FAILED;
+					return synbiohubEntry;
+				}
+
+				copyManagedProperties(e, topLevelEntity, fullEntity);
+				e.document = document;
+				topLevelEntity = fullEntity;
+			}
+
 			if(e.changed) {
 				e.modifiedDate = now;
 				replaceOldAnnotations(topLevelEntity, MODIFIED, e.getModifiedDate());
@@ -816,7 +956,9 @@ public final class MaintainDictionary {
 			String entryUpdateTime = e.getModifiedDate();
 
 			if(entryUpdateTime != null) {
-				String sheetUpdateTime = DictionaryAccessor.readLastUpdated(e);
+				// The "Last Updated" cell was captured when the tab was
+				// read, so there is no need to go back to the spreadsheet
+				String sheetUpdateTime = e.lastUpdated;
 				if((sheetUpdateTime == null) ||
 						!sheetUpdateTime.equals(entryUpdateTime)) {
 					// Update the time stamp in the spreadsheet
@@ -837,14 +979,14 @@ public final class MaintainDictionary {
 		return synbiohubEntry;
 	}
 
-	private static Map< String, Map<String, String>> generateFieldMap(List<DictionaryEntry> entries) {
+	private static Map< String, Map<String, String>> generateFieldMap(DictionaryTable entries) {
 		Map<String, Map<String, String>> retVal = new TreeMap< String, Map<String, String>>();
 
-		for(DictionaryEntry entry : entries) {
-			if(entry.uri == null) {
+		for(DictionaryTable.Row entry : entries.rows()) {
+			if(entry.getUri() == null) {
 				continue;
 			}
-			String uri = entry.uri.toString();
+			String uri = entry.getUri().toString();
 
 			Map<String, String> fieldMap = entry.generateFieldMap();
 			retVal.put(uri, fieldMap);
@@ -853,8 +995,13 @@ public final class MaintainDictionary {
 		return retVal;
 	}
 
-	private static void checkShifts(List<DictionaryEntry> currentEntries,
+	static void checkShifts(List<DictionaryEntry> currentEntries,
 			List<DictionaryEntry> originalEntries) throws Exception {
+		checkShifts(currentEntries, DictionaryTable.of(originalEntries));
+	}
+
+	static void checkShifts(List<DictionaryEntry> currentEntries,
+			DictionaryTable originalEntries) throws Exception {
 		// Extract spreadsheet data into a map
 		Map< String, Map<String, String>> originalEntryMap = generateFieldMap(originalEntries);
 
@@ -983,14 +1130,13 @@ public final class MaintainDictionary {
 		return makeColor(146, 146, 146);
 	}
 
-	private static List<MappingFailureEntry> getMappingFailures() throws IOException {
+	private static List<MappingFailureEntry> getMappingFailures(SpreadsheetSnapshot snapshot) throws IOException {
 		List<MappingFailureEntry> entries = new ArrayList<>();
 
-		// First, read the data from the Mapping Failures tab
-		ValueRange tabData = DictionaryAccessor.getTabData("Mapping Failures");
-
-		List<List<Object>> values = tabData.getValues();
-		if(values == null) {
+		// First, take the data of the Mapping Failures tab from the
+		// snapshot
+		List<List<Object>> values = snapshot.getValues(MAPPING_FAILURES_TAB);
+		if(values.isEmpty()) {
 			return entries;
 		}
 
@@ -1075,34 +1221,43 @@ public final class MaintainDictionary {
 		return email;
 	}
 
-	private static void batchUpdateValues(List<ValueRange> values) throws IOException {
-		for(int i=0; i<values.size(); i += maxGoogleRequestCount) {
-			int endIndex = i + maxGoogleRequestCount;
-
-			if(endIndex > values.size()) {
-				endIndex = values.size();
+	/**
+	 * @param rows row numbers, in ascending order
+	 * @return the first and last row of each run of adjacent rows
+	 */
+	static List<int[]> rowSpans(Set<Integer> rows) {
+		List<int[]> spans = new ArrayList<>();
+		int[] span = null;
+		for(int row : rows) {
+			if((span != null) && (row == span[1] + 1)) {
+				span[1] = row;
+				continue;
 			}
-
-			List<ValueRange> requests = values.subList(i, endIndex);
-			DictionaryAccessor.batchUpdateValues(requests);
+			span = new int[] { row, row };
+			spans.add(span);
 		}
+		return spans;
 	}
 
-	private static void batchUpdateRequests(List<Request> requestList) throws IOException {
-		for(int i=0; i<requestList.size(); i += maxGoogleRequestCount) {
-			int endIndex = i + maxGoogleRequestCount;
-
-			if(endIndex > requestList.size()) {
-				endIndex = requestList.size();
-			}
-
-			List<Request> requests = requestList.subList(i, endIndex);
-			DictionaryAccessor.batchUpdateRequests(requests);
-		}
+	/**
+	 * Leave out the writes of cells that already hold the value being
+	 * written, and count them
+	 * @param updates the writes
+	 * @param tab name of the tab
+	 * @param rows current values of the rows of the tab, by row
+	 * @return the writes that change a cell
+	 */
+	private static List<ValueRange> dropUnchanged(List<ValueRange> updates, String tab,
+			Map<Integer, List<Object>> rows) {
+		List<ValueRange> changed = WritePlanner.dropUnchanged(updates, tab, rows);
+		int unchanged = updates.size() - changed.size();
+		unchangedWrites.addAndGet(unchanged);
+		Metrics.add(Metrics.GOOGLE_REQUESTS_SAVED, unchanged, "kind", "unchanged");
+		return changed;
 	}
 
-	private static void updateMappingFailuresTab(List<MappingFailureEntry> entries,
-			char statusColumn) throws IOException {
+	private static void updateMappingFailuresTab(SpreadsheetSnapshot snapshot,
+			List<MappingFailureEntry> entries, char statusColumn) throws IOException {
 		List<ValueRange> updates = new ArrayList<>();
 
 		// Update the Status column in the Mapping Failures tab
@@ -1117,9 +1272,29 @@ public final class MaintainDictionary {
 			updates.add(valueRange);
 		}
 
-		if(!updates.isEmpty()) {
-			batchUpdateValues(updates);
+		Map<Integer, List<Object>> rows =
+				mappingFailureRows(snapshot.getValues(MAPPING_FAILURES_TAB), entries);
+		updates = dropUnchanged(updates, MAPPING_FAILURES_TAB, rows);
+
+		WriteBuffer.add(updates, new ArrayList<>(), -1, null);
+	}
+
+	/**
+	 * Rows of the Mapping Failures tab as they were read at the start of
+	 * the pass, indexed by the rows they have after any deletions
+	 * @param values values of the tab when it was read
+	 * @param entries entries left in the tab
+	 * @return the row read for each entry, by its current row
+	 */
+	static Map<Integer, List<Object>> mappingFailureRows(List<List<Object>> values,
+			List<MappingFailureEntry> entries) {
+		Map<Integer, List<Object>> rows = new TreeMap<>();
+		for(MappingFailureEntry entry : entries) {
+			if(entry.getSnapshotRow() <= values.size()) {
+				rows.put(entry.getRow(), values.get(entry.getSnapshotRow() - 1));
+			}
 		}
+		return rows;
 	}
 
 	static class MappingFailureEmailContent {
@@ -1134,17 +1309,16 @@ public final class MaintainDictionary {
 
 	// Find the spreadsheet column of the Status column in the mapping
 	// failures tab
-	private static char getMappingFailuresStatusColumn() throws IOException {
-		ValueRange columnHeaders = DictionaryAccessor.getTabData("Mapping Failures!2:2");
-		List<List<Object>> values = columnHeaders.getValues();
+	private static char getMappingFailuresStatusColumn(SpreadsheetSnapshot snapshot) throws IOException {
+		List<Object> columnHeaders = snapshot.getHeaderRow(MAPPING_FAILURES_TAB);
 
-		if(values == null) {
+		if(columnHeaders == null) {
 			throw new IOException("Did not find headers in Mapping Failures tab");
 		}
 
 		char columnName = 'A';
 
-		for(Object stringObject : values.get(0)) {
+		for(Object stringObject : columnHeaders) {
 			if(stringObject == null) {
 				continue;
 			}
@@ -1337,7 +1511,11 @@ public final class MaintainDictionary {
 			++decrementDelta;
 		}
 
-		batchUpdateRequests(deleteRequests);
+		// The rows are deleted at once, since the Status writes of the
+		// entries below them use their new rows
+		if(!deleteRequests.isEmpty()) {
+			DictionaryAccessor.batchUpdateRequests(deleteRequests);
+		}
 
 		MappingFailureEmailContent email = null;
 		if(notification != null) {
@@ -1357,7 +1535,8 @@ public final class MaintainDictionary {
 	 * notification email for that lab.
 	 */
 	private static Map<String, MappingFailureEmailContent>
-	generateMappingFailureEmails(List<MappingFailureEntry> entries) throws IOException {
+	generateMappingFailureEmails(SpreadsheetSnapshot snapshot,
+			List<MappingFailureEntry> entries) throws IOException {
 
 		Map<String, MappingFailureEmailContent> notifications = new TreeMap<>();
 
@@ -1371,9 +1550,9 @@ public final class MaintainDictionary {
 			}
 		}
 
-		char statusColumn = getMappingFailuresStatusColumn();
+		char statusColumn = getMappingFailuresStatusColumn(snapshot);
 
-		updateMappingFailuresTab(entries, statusColumn);
+		updateMappingFailuresTab(snapshot, entries, statusColumn);
 
 		return notifications;
 	}
@@ -1411,8 +1590,9 @@ public final class MaintainDictionary {
 	/**
 	 * Process mapping failures tab
 	 */
-	private static void processMappingFailures(List<DictionaryEntry> dictionaryEntries) throws IOException {
-		List<MappingFailureEntry> entries = getMappingFailures();
+	private static void processMappingFailures(SpreadsheetSnapshot snapshot,
+			List<DictionaryEntry> dictionaryEntries) throws IOException {
+		List<MappingFailureEntry> entries = getMappingFailures(snapshot);
 
 		Map<String, MappingFailureEmailContent>
 		notifications = generateMappingFailureResolutionEmails(entries, dictionaryEntries);
@@ -1457,7 +1637,7 @@ public final class MaintainDictionary {
 			}
 		}
 
-		notifications = generateMappingFailureEmails(entries);
+		notifications = generateMappingFailureEmails(snapshot, entries);
 		if(notifications != null) {
 			for(String lab : notifications.keySet()) {
 				String toList = null;
@@ -1592,14 +1772,100 @@ public final class MaintainDictionary {
 
 	}
 
+	/**
+	 * Commit an updated entry's document to SynBioHub
+	 * @return true if the commit succeeded
+	 */
+	private static boolean commit_entry(DictionaryEntry e) {
+		try {
+			SynBioHubAccessor.update(e.document);
+			return true;
+		} catch(Exception exception) {
+			return false;
+		}
+	}
+
+	/**
+	 * Commit the updated documents of several entries to SynBioHub in a
+	 * single submission.  If the submission fails, the entries are
+	 * committed one at a time to find out which of them failed.
+	 * @return the rows of the entries that failed to commit
+	 */
+	private static Set<Integer> commit_entries(List<DictionaryEntry> batch) {
+		if(batch.size() > 1) {
+			List<SBOLDocument> documents = new ArrayList<>();
+			for(DictionaryEntry e : batch) {
+				documents.add(e.document);
+			}
+
+			try {
+				SynBioHubAccessor.update(documents);
+				return new TreeSet<>();
+			} catch(Exception exception) {
+				log.warning("Failed to commit " + batch.size()
+						+ " entries together, committing them one at a time");
+			}
+		}
+
+		Set<Integer> failedRows = new TreeSet<>();
+		for(DictionaryEntry e : batch) {
+			if(!commit_entry(e)) {
+				failedRows.add(e.row_index);
+			}
+		}
+
+		return failedRows;
+	}
+
+	/**
+	 * Split the entries to commit to SynBioHub into batches of at most
+	 * synBioHubBatchSize objects
+	 */
+	private static List<List<DictionaryEntry>> batchEntries(List<DictionaryEntry> entries) {
+		List<List<DictionaryEntry>> batches = new ArrayList<>();
+		List<DictionaryEntry> batch = new ArrayList<>();
+		int batchObjects = 0;
+
+		for(DictionaryEntry e : entries) {
+			int objects = e.document.getTopLevels().size();
+			if(!batch.isEmpty() && (batchObjects + objects > synBioHubBatchSize)) {
+				batches.add(batch);
+				batch = new ArrayList<>();
+				batchObjects = 0;
+			}
+
+			batch.add(e);
+			batchObjects += objects;
+		}
+
+		if(!batch.isEmpty()) {
+			batches.add(batch);
+		}
+
+		return batches;
+	}
+
+	/**
+	 * Wait for work submitted to a worker thread to finish
+	 * @return the result of the work
+	 * @throws Exception the exception thrown by the work, if any
+	 */
+	private static <T> T awaitResult(Future<T> future) throws Exception {
+		try {
+			return future.get();
+		} catch(ExecutionException e) {
+			Throwable cause = e.getCause();
+			if(cause instanceof Exception) {
+				throw (Exception)cause;
+			}
+			throw e;
+		}
+	}
+
 	/**
 	 * Run one pass through the dictionary, updating all entries as needed
 	 */
 	public static void maintain_dictionary(Map<String, Map<String, String>> emailLists) {
-		Color green = greenColor();
-		Color red = redColor();
-		Color gray = grayColor();
-
 		// Extract email address lists for mapping failure tab notifications
 		mappingFailureToList = emailLists.get("MappingFailuresTo");
 		mappingFailureCCList = emailLists.get("MappingFailuresCC");
@@ -1611,8 +1877,18 @@ public final class MaintainDictionary {
 		// Maps the tab name to the dictionary entries in that tab
 		Map<String, List<DictionaryEntry>> tabEntries = new TreeMap<>();
 
+		// Time spent waiting on Google quotas before this pass
+		long rateLimitWaitMS = DictionaryAccessor.getRateLimitWaitMillis();
+
+		passComplete = true;
+		passChangeCount = 0;
+		unchangedWrites.set(0);
+
+		// Contents of the tabs at the start of the pass
+		SpreadsheetSnapshot snapshot;
+
 		// Read the Google spreadsheet tabs
-		try {
+		try(Metrics.Timer timer = Metrics.phase("snapshot")) {
 			log.info("Beginning dictionary update");
 
 			// Certain properties, such as "sheet id" numbers for the
@@ -1621,25 +1897,32 @@ public final class MaintainDictionary {
 			// number of requests to Google
 			DictionaryAccessor.cacheSheetProperties();
 
+			// Read every tab, including the Mapping Failures tab, with
+			// a single request
+			List<String> snapshotTabs = new ArrayList<>(MaintainDictionary.tabs());
+			snapshotTabs.add(MAPPING_FAILURES_TAB);
+			snapshot = DictionaryAccessor.snapshotSpreadsheet(snapshotTabs);
+
 			for(String tab : MaintainDictionary.tabs()) {
 				// This caches the location of the the columns in the
 				// tab
-				DictionaryAccessor.cacheTabHeaders(tab);
+				DictionaryAccessor.cacheTabHeaders(snapshot, tab);
 
 				// Read the dictionary entries from the tab
 				List<DictionaryEntry> entries =
-						DictionaryAccessor.snapshotCurrentDictionary(tab);
+						DictionaryAccessor.snapshotCurrentDictionary(snapshot, tab);
 
 				tabEntries.put(tab, entries);
 				allTabEntries.addAll(entries);
 			}
 
-			DictionaryAccessor.cacheTabHeaders("Mapping Failures");
+			DictionaryAccessor.cacheTabHeaders(snapshot, MAPPING_FAILURES_TAB);
 
 		} catch(Exception e) {
 			UpdateReport report = new UpdateReport();
 			e.printStackTrace();
 			report.failure("Failed to read dictionary spreadsheet: " + e.getMessage());
+			passComplete = false;
 			try {
 				DictionaryAccessor.writeStatusUpdate("SD2 Dictionary ("
 						+ DictionaryMaintainerApp.VERSION
@@ -1651,7 +1934,12 @@ public final class MaintainDictionary {
 			return;
 		}
 
-		try {
+		// Check whether the Status formatting recorded in the last pass
+		// can be used.  This follows the snapshot, so that an edit made
+		// while the tabs were read is noticed
+		StatusShadow.beginPass();
+
+		try(Metrics.Timer timer = Metrics.phase("check_protections")) {
 			log.info("Checking protections ...");
 			DictionaryAccessor.checkProtections();
 			log.info("Finished checking protections ...");
@@ -1662,335 +1950,693 @@ public final class MaintainDictionary {
 
 		// Check for duplicate names.  Dictionary entries with
 		// duplicate names are marked as invalid
-		DictionaryAccessor.validateUniquenessOfEntries("Common Name", allTabEntries);
-		for(String uidTag : DictionaryMaintainerApp.labUIDMap.keySet()) {
-			DictionaryAccessor.validateUniquenessOfEntries(uidTag, allTabEntries);
+		try(Metrics.Timer timer = Metrics.phase("uniqueness")) {
+			DictionaryAccessor.validateUniquenessOfEntries("Common Name", allTabEntries);
+			for(String uidTag : DictionaryMaintainerApp.labUIDMap.keySet()) {
+				DictionaryAccessor.validateUniquenessOfEntries(uidTag, allTabEntries);
+			}
 		}
 
 		// List of entries that failed that need to be included in
 		// notification email messages
 		List<DictionaryEntry> failuresToEmail = new ArrayList<>();
 
-		for(String tab : MaintainDictionary.tabs()) {
-			int rangeId = -1;
-			UpdateReport report = new UpdateReport();
-			int mod_count = 0, bad_count = 0, io_failure_count = 0;
+		// Threads that exchange dictionary entries with SynBioHub
+		ExecutorService workers = Executors.newFixedThreadPool(workerCount);
+
+		// Look up which objects have changed in SynBioHub, using a
+		// single query for the whole collection
+		Map<String, String> modifiedDates = null;
+		try(Metrics.Timer timer = Metrics.phase("modified_dates")) {
+			if(CollectionSnapshot.isEnabled()) {
+				try {
+					CollectionSnapshot.load();
+					modifiedDates = CollectionSnapshot.getModifiedDates();
+				} catch(Exception e) {
+					// Entries are retrieved one at a time instead
+					log.warning("Failed to read collection snapshot: " + e.getMessage());
+					CollectionSnapshot.clear();
+				}
+			} else if(FingerprintStore.isEnabled() || DocumentCache.isEnabled()) {
+				try {
+					modifiedDates = SynBioHubAccessor.getModifiedDates();
+				} catch(Exception e) {
+					log.warning("Failed to look up SynBioHub modified dates: " + e.getMessage());
+				}
+			}
+		}
+		FingerprintStore.beginPass(modifiedDates);
+		DocumentCache.beginPass(modifiedDates);
+		NameIndex.beginPass();
+
+		try(Metrics.Timer timer = Metrics.phase("process_tabs")) {
+			processTabs(workers, tabEntries, failuresToEmail);
+		} catch(RuntimeException e) {
+			// The tabs that were checked stay protected until their
+			// writes are sent
+			flushWrites(true);
+			throw e;
+		} finally {
+			workers.shutdownNow();
+		}
 
-			// This will contain updates to be made to the spreadsheet
-			List<ValueRange> spreadsheetUpdates = new ArrayList<ValueRange>();
+		FingerprintStore.endPass();
+		DocumentCache.endPass();
+		CollectionSnapshot.clear();
 
-			// This will contain the status column formatting updates
-			List<Request> statusFormattingUpdates = new ArrayList<>();
+		try(Metrics.Timer timer = Metrics.phase("mapping_failures")) {
+			// Process Mapping Failures Tab in the spreadsheet
+			log.info("Processing Mapping Failures ...");
+			processMappingFailures(snapshot, allTabEntries);
+			log.info("Finished processing Mapping Failures");
+		} catch(Exception e) {
+			e.printStackTrace();
+		}
 
-			log.info("Processing \"" + tab + "\" tab");
+		try(Metrics.Timer timer = Metrics.phase("entry_failure_emails")) {
+			// Periodically send email message about entry failures
+			sendEntryFailureEmails(failuresToEmail);
+		} catch(Exception e) {
+			e.printStackTrace();
+		}
 
-			try {
-				// These are the entries according to the spreadsheet
-				List<DictionaryEntry> spreadsheetEntries = tabEntries.get(tab);
+		// Send the writes of every tab and of the Mapping Failures tab
+		flushWrites(true);
 
-				// This will contain the SynBioHub view of the
-				// dictionary entries
-				List<DictionaryEntry> synBioHubEntries = new ArrayList<DictionaryEntry>();
+		// Every write of the pass has been made
+		StatusShadow.endPass();
 
-				// This contains the entries as they were before being
-				// updated by the dictionary application.  The map is
-				// indexed by the entry row
-				Map<Integer, DictionaryEntry> initialEntryMap = new TreeMap<>();
+		rateLimitWaitMS = DictionaryAccessor.getRateLimitWaitMillis() - rateLimitWaitMS;
+		log.info("Waited " + (rateLimitWaitMS / 1000L) + " seconds for Google quota ("
+				+ DictionaryAccessor.getReadRateLimiter() + "; "
+				+ DictionaryAccessor.getWriteRateLimiter() + ")");
+		log.info("Skipped " + unchangedWrites.get() + " writes of cells that had not changed");
 
-				// This contains the updated entries.  It is indexed
-				// by the entry row.
-				Map<Integer, DictionaryEntry> updatedEntryMap = new TreeMap<>();
+		log.info("Completed certification of dictionary");
+	}
 
-				long soonestNotifyTime = 0;
+	/**
+	 * State of one tab as it moves through the stages of a pass
+	 */
+	static class TabPass {
+		TabPass(String tab, List<DictionaryEntry> spreadsheetEntries) {
+			this.tab = tab;
+			this.spreadsheetEntries = spreadsheetEntries;
+			initialEntries = new DictionaryTable(
+					(spreadsheetEntries == null) ? 0 : spreadsheetEntries.size());
+		}
 
+		final String tab;
 
-				// Loop through the spreadsheet rows
-				for(DictionaryEntry e : spreadsheetEntries) {
-					DictionaryEntry synBioHubEntry = null;
+		// These are the entries according to the spreadsheet
+		final List<DictionaryEntry> spreadsheetEntries;
 
-					// Save a copy of the entry before it is updated
-					initialEntryMap.put(e.row_index, new DictionaryEntry(e));
+		final UpdateReport report = new UpdateReport();
 
-					if (e.statusCode == StatusCode.VALID) {
-						// At this point the spreadsheet row has passed some rudimentary
-						// sanity checks.  The following method fetches or creates the
-						// corresponding SBOL Document and updates the document according
-						// to the spreadsheet row.  The method returns the "original"
-						// spreadsheet row, based on data in SynBioHub
-						synBioHubEntry = update_entry(e);
-					}
+		// This contains the entries as they were before being
+		// updated by the dictionary application
+		final DictionaryTable initialEntries;
 
-					if(e.lastNotifyTime.getTime() > soonestNotifyTime) {
-						soonestNotifyTime = e.lastNotifyTime.getTime();
-					}
+		// Fetches of the SynBioHub documents, indexed by row
+		final Map<Integer, Future<DictionaryEntry>> synBioHubFetches = new TreeMap<>();
 
-					Color statusColor;
-					if(e.statusCode == StatusCode.VALID) {
-						// This row looks good
-						if(synBioHubEntry != null) {
-							// Save original (SynBioHub) entry
-							synBioHubEntries.add(synBioHubEntry);
-						}
+		// Work submitted to the worker threads for this tab
+		final List<Future<?>> pendingTasks = new ArrayList<>();
 
-						statusColor = green;
-					} else {
-						// There is a problem with this row
-						switch (e.statusCode) {
-						case MISSING_NAME:
-							log.info("Invalid entry, missing name, skipping");
-							e.report.failure("Common name is missing");
-							statusColor = red;
-							break;
-						case MISSING_TYPE:
-							log.info("Invalid entry for name "+e.name+", skipping");
-							e.report.failure("Type is missing");
-							statusColor = red;
-							break;
-						case MISMATCH_TYPE:
-							log.info("Entry type does not match SynBioHub");
-							e.report.failure("Entry type does not match SynBioHub");
-							statusColor = red;
-							break;
-						case INVALID_TYPE:
-							log.info("Invalid entry for name "+e.name+", skipping");
-							e.report.failure("Type must be one of "+ typeTabs.get(e.tab).toString());
-							statusColor = red;
-							break;
-						case TYPE_IN_ROLE:
-							log.info("Chebi type is role");
-							e.report.failure("CHEBI type is in role");
-							statusColor = red;
-							break;
-						case DUPLICATE_VALUE:
-							log.info("Invalid entry for name "+e.name+", skipping");
-							e.report.failure(e.statusLog);
-							statusColor = red;
-							break;
-						case SBH_CONNECTION_FAILED:
-							log.warning("SynBioHub failure");
-							statusColor = gray;
-							break;
-						case GOOGLE_SHEETS_CONNECTION_FAILED:
-							statusColor = gray;
-							break;
-						default:
-							statusColor = red;
-							break;
-						}
-					}
+		// This will contain updates to be made to the spreadsheet
+		final List<ValueRange> spreadsheetUpdates = new ArrayList<ValueRange>();
+
+		// This will contain the status column formatting updates
+		final List<Request> statusFormattingUpdates = new ArrayList<>();
+
+		// Status text and color being written, indexed by row
+		final Map<Integer, StatusShadow.Status> statusWrites = new TreeMap<>();
+
+		// Header row and rows to be written as they were re-read,
+		// indexed by row
+		final Map<Integer, List<Object>> currentRows = new TreeMap<>();
 
-					e.statusColor = statusColor;
+		// URIs of the entries committed to SynBioHub, indexed by row
+		final Map<Integer, URI> committedURIs = new TreeMap<>();
 
-					updatedEntryMap.put(e.row_index, e);
+		// ID of the range protecting the tab, or -1 if it is not protected
+		int rangeId = -1;
+
+		int mod_count = 0, bad_count = 0, io_failure_count = 0;
+
+		// True once the spreadsheet updates have been queued
+		boolean reconciled = false;
+	}
+
+	/**
+	 * Reconcile each tab of the spreadsheet with SynBioHub.  The tabs
+	 * move through three stages: the SynBioHub documents of a tab are
+	 * fetched, then the tab is locked and checked for edits and its
+	 * changes are committed to SynBioHub, then its spreadsheet updates
+	 * are written and it is unlocked.  The stages overlap, so up to
+	 * pipelineDepth tabs are fetched ahead of the tab being checked, and
+	 * up to pipelineDepth tabs are being written behind it.
+	 * @param workers threads used to exchange entries with SynBioHub
+	 * @param tabEntries maps the tab name to the dictionary entries in that tab
+	 * @param failuresToEmail collects the failed entries to include in notification email
+	 */
+	private static void processTabs(ExecutorService workers,
+			Map<String, List<DictionaryEntry>> tabEntries,
+			List<DictionaryEntry> failuresToEmail) {
+		List<String> tabs = new ArrayList<>(MaintainDictionary.tabs());
+		Map<String, TabPass> fetchedTabs = new TreeMap<>();
+		int fetchedCount = 0;
+
+		// Spreadsheet updates are written by a thread of their own, one
+		// tab at a time, in the order the tabs were checked
+		ExecutorService writer = Executors.newSingleThreadExecutor();
+		Deque<Future<?>> pendingWrites = new ArrayDeque<>();
+
+		try {
+			for(int i=0; i<tabs.size(); ++i) {
+				// Start fetching the documents of this tab and of the
+				// tabs that follow it
+				while((fetchedCount < tabs.size()) && (fetchedCount <= i + pipelineDepth)) {
+					String tab = tabs.get(fetchedCount++);
+					fetchedTabs.put(tab, fetchTab(workers, tab, tabEntries.get(tab)));
 				}
 
-				failuresToEmail.addAll(findFailuresToEmail(spreadsheetEntries, soonestNotifyTime));
+				TabPass pass = fetchedTabs.remove(tabs.get(i));
+				reconcileTab(workers, pass, failuresToEmail);
 
-				// Check for deleted cells that caused column values to shift up
-				// If a deleted cell is found, an exception will be thrown
-				checkShifts(spreadsheetEntries, synBioHubEntries);
+				if(pipelineDepth <= 0) {
+					writeTab(pass);
+					continue;
+				}
+
+				// Wait for the oldest writes if too many are in flight
+				while(pendingWrites.size() >= pipelineDepth) {
+					awaitWrite(pendingWrites.removeFirst());
+				}
+				pendingWrites.addLast(writer.submit(() -> writeTab(pass)));
+			}
+
+			while(!pendingWrites.isEmpty()) {
+				awaitWrite(pendingWrites.removeFirst());
+			}
+		} finally {
+			writer.shutdown();
+		}
+	}
 
-				// List of requests to re-read spreadsheet rows
-				List<String> rowRanges = new ArrayList<>();
+	private static void awaitWrite(Future<?> write) {
+		try {
+			write.get();
+		} catch(Exception e) {
+			// writeTab reports its own failures
+			e.printStackTrace();
+		}
+	}
 
-				// Lock tab to prevent race conditions before updating
-				rangeId = DictionaryAccessor.protectTab(tab);
+	/**
+	 * First stage: submit the fetches of the SynBioHub documents of a tab
+	 * to the worker threads
+	 * @param workers threads used to exchange entries with SynBioHub
+	 * @param tab name of the tab
+	 * @param spreadsheetEntries the entries in the tab
+	 * @return the state of the tab
+	 */
+	private static TabPass fetchTab(ExecutorService workers, String tab,
+			List<DictionaryEntry> spreadsheetEntries) {
+		TabPass pass = new TabPass(tab, spreadsheetEntries);
+		if(spreadsheetEntries == null) {
+			return pass;
+		}
 
-				// Make sure columns have not moved
-				Map<String, Integer> oldHeaderMap =
-						DictionaryAccessor.getDictionaryHeaders(tab);
+		for(DictionaryEntry e : spreadsheetEntries) {
+			// Save a copy of the entry before it is updated
+			pass.initialEntries.add(e);
+
+			if (e.statusCode == StatusCode.VALID) {
+				// At this point the spreadsheet row has passed some rudimentary
+				// sanity checks.  The following method fetches or creates the
+				// corresponding SBOL Document and updates the document according
+				// to the spreadsheet row.  The method returns the "original"
+				// spreadsheet row, based on data in SynBioHub.  Rows are
+				// independent of each other, so they are spread across
+				// the worker threads.
+				Future<DictionaryEntry> fetch = workers.submit(() -> update_entry(e));
+				pass.synBioHubFetches.put(e.row_index, fetch);
+				pass.pendingTasks.add(fetch);
+			}
+		}
 
-				DictionaryAccessor.cacheTabHeaders(tab);
+		return pass;
+	}
+
+	/**
+	 * Second stage: wait for the fetched documents of a tab, lock the
+	 * tab, make sure that the rows being updated were not edited during
+	 * processing, commit their changes to SynBioHub and queue their
+	 * spreadsheet updates
+	 * @param workers threads used to exchange entries with SynBioHub
+	 * @param pass the state of the tab
+	 * @param failuresToEmail collects the failed entries to include in notification email
+	 */
+	private static void reconcileTab(ExecutorService workers, TabPass pass,
+			List<DictionaryEntry> failuresToEmail) {
+		Color green = greenColor();
+		Color red = redColor();
+		Color gray = grayColor();
 
-				Map<String, Integer> newHeaderMap =
-						DictionaryAccessor.getDictionaryHeaders(tab);
+		String tab = pass.tab;
+		List<DictionaryEntry> spreadsheetEntries = pass.spreadsheetEntries;
+		List<ValueRange> spreadsheetUpdates = pass.spreadsheetUpdates;
+		List<Request> statusFormattingUpdates = pass.statusFormattingUpdates;
 
-				for(String header : oldHeaderMap.keySet()) {
-					int oldIndex = oldHeaderMap.get(header);
-					int newIndex = newHeaderMap.get(header);
+		log.info("Processing \"" + tab + "\" tab");
 
-					if(oldIndex != newIndex) {
-						throw new Exception("Column " + header + " on tab \"" +
-								tab + "\" moved during processing");
-					}
+		try(Metrics.Timer timer = Metrics.phase("reconcile", tab)) {
+			// This will contain the SynBioHub view of the
+			// dictionary entries
+			DictionaryTable synBioHubEntries = new DictionaryTable(spreadsheetEntries.size());
+
+			// This contains the entries as they were before being
+			// updated by the dictionary application
+			DictionaryTable initialEntries = pass.initialEntries;
+
+			// This contains the updated entries.  It is indexed
+			// by the entry row.
+			Map<Integer, DictionaryEntry> updatedEntryMap = new TreeMap<>();
+
+			long soonestNotifyTime = 0;
+
+			// Loop through the spreadsheet rows
+			for(DictionaryEntry e : spreadsheetEntries) {
+				DictionaryEntry synBioHubEntry = null;
+
+				if (e.statusCode == StatusCode.VALID) {
+					// The fetch is dropped once its result is copied to
+					// synBioHubEntries, so the entry can be collected
+					synBioHubEntry = awaitResult(pass.synBioHubFetches.remove(e.row_index));
+					FingerprintStore.record(e);
 				}
 
-				// Get formatting information for Status column
-				List<CellFormat> cellFormatList =
-						DictionaryAccessor.getColumnFormatting(tab, "Status");
+				if(e.lastNotifyTime.getTime() > soonestNotifyTime) {
+					soonestNotifyTime = e.lastNotifyTime.getTime();
+				}
 
-				// Determine which rows either have changed or are invalid
-				for(DictionaryEntry e : spreadsheetEntries) {
-					if(e.changed || (e.statusCode != StatusCode.VALID) ||
-							e.dictionaryEntryChanged) {
-						String rowRange = tab + "!" + e.row_index + ":" + e.row_index;
-						rowRanges.add(rowRange);
-					} else {
-						// This checks to see if the color of the text
-						// in the Status field changed.  If the color
-						// changed, the row is added to rowRanges,
-						// causing it to be updated in the spreadsheet
-						// (in particular the Status field will be
-						// updated in the spreadsheet).
-						if(cellFormatList.size() >= e.row_index) {
-							CellFormat format = cellFormatList.get(e.row_index-1);
-							if(format != null) {
-								Color statusColor =
-										format.getTextFormat().getForegroundColor();
-								if((statusColor != null) && (e.statusColor != null)) {
-									if(!colorsEqual(statusColor, e.statusColor)) {
-										String rowRange = tab + "!" + e.row_index
-												+ ":" + e.row_index;
-										rowRanges.add(rowRange);
-									}
-								}
-							}
-						}
+				Color statusColor;
+				if(e.statusCode == StatusCode.VALID) {
+					// This row looks good
+					if(synBioHubEntry != null) {
+						// Save original (SynBioHub) entry
+						synBioHubEntries.add(synBioHubEntry);
+					}
+
+					statusColor = green;
+				} else {
+					// There is a problem with this row
+					switch (e.statusCode) {
+					case MISSING_NAME:
+						log.info("Invalid entry, missing name, skipping");
+						e.report.failure("Common name is missing");
+						statusColor = red;
+						break;
+					case MISSING_TYPE:
+						log.info("Invalid entry for name "+e.name+", skipping");
+						e.report.failure("Type is missing");
+						statusColor = red;
+						break;
+					case MISMATCH_TYPE:
+						log.info("Entry type does not match SynBioHub");
+						e.report.failure("Entry type does not match SynBioHub");
+						statusColor = red;
+						break;
+					case INVALID_TYPE:
+						log.info("Invalid entry for name "+e.name+", skipping");
+						e.report.failure("Type must be one of "+ typeTabs.get(e.tab).toString());
+						statusColor = red;
+						break;
+					case TYPE_IN_ROLE:
+						log.info("Chebi type is role");
+						e.report.failure("CHEBI type is in role");
+						statusColor = red;
+						break;
+					case DUPLICATE_VALUE:
+						log.info("Invalid entry for name "+e.name+", skipping");
+						e.report.failure(e.statusLog);
+						statusColor = red;
+						break;
+					case SBH_CONNECTION_FAILED:
+						log.warning("SynBioHub failure");
+						statusColor = gray;
+						break;
+					case GOOGLE_SHEETS_CONNECTION_FAILED:
+						statusColor = gray;
+						break;
+					default:
+						statusColor = red;
+						break;
 					}
 				}
 
-				// Maps row index to current row contents
-				Map<Integer, DictionaryEntry> currentEntryMap = new TreeMap<>();
+				e.statusColor = statusColor;
 
-				// Read contents of rows that need to updated, in
-				// order to ensure they have not changed during
-				// processing.
-				if(!rowRanges.isEmpty()) {
-					// Re-read spreadsheet rows that are about to be
-					// updated
-					List<ValueRange> valueRanges = DictionaryAccessor.batchGet(rowRanges);
+				updatedEntryMap.put(e.row_index, e);
+			}
 
-					// Create dictionary entries from the rows
-					for(ValueRange valueRange : valueRanges) {
-						String rowStr = valueRange.getRange();
-						rowStr = rowStr.split("!")[1];
-						rowStr = rowStr.split(":")[0];
-						rowStr = rowStr.substring(1);
+			// Finished fetches need no cancelling, and holding them
+			// would keep their entries alive until the tab is written
+			pass.pendingTasks.removeIf(Future::isDone);
 
-						if(valueRange.getValues() == null) {
-							continue;
-						}
+			failuresToEmail.addAll(findFailuresToEmail(spreadsheetEntries, soonestNotifyTime));
+
+			// Check for deleted cells that caused column values to shift up
+			// If a deleted cell is found, an exception will be thrown
+			try(Metrics.Timer shiftsTimer = Metrics.phase("check_shifts", tab)) {
+				checkShifts(spreadsheetEntries, synBioHubEntries);
+			}
+
+			// Rows to re-read before they are written
+			Set<Integer> rowsToRead = new TreeSet<>();
+
+			// Lock tab to prevent race conditions before updating.
+			// The tab stays locked until its updates are written.
+			// Without the lock, the rows are checked again just before
+			// they are written.
+			if(!optimisticConcurrency) {
+				try(Metrics.Timer protectTimer = Metrics.phase("protect", tab)) {
+					pass.rangeId = DictionaryAccessor.protectTab(tab);
+				}
+			}
+
+			// Rows that are up to date, apart perhaps from the color
+			// of their Status text
+			List<DictionaryEntry> statusCheckEntries = new ArrayList<>();
+
+			// Determine which rows either have changed or are invalid
+			for(DictionaryEntry e : spreadsheetEntries) {
+				if(e.changed || (e.statusCode != StatusCode.VALID) ||
+						e.dictionaryEntryChanged) {
+					rowsToRead.add(e.row_index);
+				} else {
+					statusCheckEntries.add(e);
+				}
+			}
 
-						// Create a dictionary entry what is currently
-						// in the spreadsheet
-						int row = (int)Integer.parseInt(rowStr);
-						DictionaryEntry currentEntry =
-								new DictionaryEntry(tab, newHeaderMap, row,
-										valueRange.getValues().get(0));
+			// Get the Status text colors, from the records of earlier
+			// passes if the spreadsheet has not changed since then,
+			// or else from the formatting of the Status column
+			Map<Integer, Color> statusColors =
+					StatusShadow.getColors(tab, statusCheckEntries);
+			if(statusColors == null) {
+				try(Metrics.Timer formatsTimer = Metrics.phase("status_formats", tab)) {
+					List<CellFormat> cellFormatList =
+							DictionaryAccessor.getColumnFormatting(tab, "Status");
+					statusColors = StatusShadow.load(tab, cellFormatList, spreadsheetEntries);
+				}
+			}
 
-						currentEntryMap.put(row, currentEntry);
+			// This checks to see if the color of the text in the
+			// Status field changed.  If the color changed, the row is
+			// added to rowRanges, causing it to be updated in the
+			// spreadsheet (in particular the Status field will be
+			// updated in the spreadsheet).
+			for(DictionaryEntry e : statusCheckEntries) {
+				Color statusColor = statusColors.get(e.row_index);
+				if((statusColor != null) && (e.statusColor != null)) {
+					if(!colorsEqual(statusColor, e.statusColor)) {
+						rowsToRead.add(e.row_index);
 					}
 				}
+			}
 
-				// Loop through entries that have either been updated
-				// or are invalid
-				for(Integer row : currentEntryMap.keySet()) {
-					DictionaryEntry e = updatedEntryMap.get( row );
+			// Read the header row again, along with the rows that need to
+			// be updated, in order to ensure they have not changed during
+			// processing.  Adjacent rows are read as a single range.
+			List<int[]> spans = rowSpans(rowsToRead);
+			List<String> readRanges = new ArrayList<>();
+			readRanges.add(tab + "!" + SpreadsheetSnapshot.HEADER_ROW + ":"
+					+ SpreadsheetSnapshot.HEADER_ROW);
+			for(int[] span : spans) {
+				readRanges.add(tab + "!" + span[0] + ":" + span[1]);
+			}
 
-					// This is the entry before it was processed
-					DictionaryEntry initialEntry = initialEntryMap.get(e.row_index);
+			List<ValueRange> valueRanges;
+			try(Metrics.Timer rereadTimer = Metrics.phase("reread", tab)) {
+				valueRanges = DictionaryAccessor.batchGet(readRanges);
+			}
+
+			// Make sure columns have not moved
+			Map<String, Integer> oldHeaderMap =
+					DictionaryAccessor.getDictionaryHeaders(tab);
+
+			List<List<Object>> headerValues = valueRanges.get(0).getValues();
+			if(headerValues != null) {
+				DictionaryAccessor.cacheTabHeaders(tab, headerValues.get(0));
+				pass.currentRows.put(SpreadsheetSnapshot.HEADER_ROW, headerValues.get(0));
+			}
+
+			Map<String, Integer> newHeaderMap =
+					DictionaryAccessor.getDictionaryHeaders(tab);
 
-					// This entry represents the spreadsheet contents
-					// of the entry row after processing
-					DictionaryEntry currentEntry = currentEntryMap.get(e.row_index);
+			for(String header : oldHeaderMap.keySet()) {
+				int oldIndex = oldHeaderMap.get(header);
+				int newIndex = newHeaderMap.get(header);
 
-					// Make sure entry was not edited during processing
-					if(!initialEntry.equals(currentEntry)) {
+				if(oldIndex != newIndex) {
+					throw new Exception("Column " + header + " on tab \"" +
+							tab + "\" moved during processing");
+				}
+			}
+
+			// Maps row index to current row contents
+			Map<Integer, DictionaryEntry> currentEntryMap = new TreeMap<>();
+
+			// Create dictionary entries from the rows, which are
+			// returned in the order they were requested
+			RowDecoder decoder = RowDecoder.compile(tab, newHeaderMap);
+			for(int i=0; i<spans.size(); ++i) {
+				List<List<Object>> values = valueRanges.get(i + 1).getValues();
+				if(values == null) {
+					continue;
+				}
+
+				for(int row=spans.get(i)[0]; row<=spans.get(i)[1]; ++row) {
+					int offset = row - spans.get(i)[0];
+					if((offset >= values.size()) || values.get(offset).isEmpty()) {
 						continue;
 					}
 
+					// Create a dictionary entry what is currently
+					// in the spreadsheet
+					pass.currentRows.put(row, values.get(offset));
+					DictionaryEntry currentEntry = decoder.decode(row, values.get(offset));
+
+					currentEntryMap.put(row, currentEntry);
+				}
+			}
+
+			// Entries that were not edited during processing
+			List<DictionaryEntry> entriesToCommit = new ArrayList<>();
+
+			// Loop through entries that have either been updated
+			// or are invalid
+			for(Integer row : currentEntryMap.keySet()) {
+				DictionaryEntry e = updatedEntryMap.get( row );
+
+				// This is the entry before it was processed
+				DictionaryTable.Row initialEntry = initialEntries.find(e.row_index);
+
+				// This entry represents the spreadsheet contents
+				// of the entry row after processing
+				DictionaryEntry currentEntry = currentEntryMap.get(e.row_index);
+
+				// Make sure entry was not edited during processing
+				if(!initialEntry.matches(currentEntry)) {
+					passComplete = false;
+					continue;
+				}
+
+				entriesToCommit.add(e);
+			}
+
+			// Commit changes to SynBioHub in batches, using the
+			// worker threads.  Each batch reports the rows that
+			// failed, and is indexed by the rows it contains
+			List<DictionaryEntry> changedEntries = new ArrayList<>();
+			for(DictionaryEntry e : entriesToCommit) {
+				if(e.changed) {
+					changedEntries.add(e);
+				}
+			}
+
+			Map<Integer, Future<Set<Integer>>> synBioHubCommits = new TreeMap<>();
+			for(List<DictionaryEntry> batch : batchEntries(changedEntries)) {
+				Future<Set<Integer>> commit = workers.submit(() -> commit_entries(batch));
+				for(DictionaryEntry e : batch) {
+					synBioHubCommits.put(e.row_index, commit);
+				}
+				pass.pendingTasks.add(commit);
+			}
+
+			// Queue spreadsheet updates in row order
+			try(Metrics.Timer commitTimer = Metrics.phase("commit", tab)) {
+				for(DictionaryEntry e : entriesToCommit) {
 					// Add any queued up spreadsheet updates
 					// associated with this entry
 					spreadsheetUpdates.addAll( e.spreadsheetUpdates );
 
 					if(e.changed) {
-						// Commit changes to SynBioHub
-						try {
-							SynBioHubAccessor.update(e.document);
+						Set<Integer> failedRows = awaitResult(synBioHubCommits.get(e.row_index));
+						if(!failedRows.contains(e.row_index)) {
 							e.report.success("Synchronized with SynBioHub");
-							++mod_count;
+							++pass.mod_count;
+							++passChangeCount;
+							pass.committedURIs.put(e.row_index, e.uri);
+							ConflictStore.remove(e.uri);
 
-						} catch(Exception exception) {
+						} else {
 							e.report.failure("Failed to synchronize with SynBioBub");
 							e.statusColor = gray;
-							io_failure_count++;
+							pass.io_failure_count++;
 						}
 
 					} else if((e.statusCode == StatusCode.SBH_CONNECTION_FAILED) ||
 							(e.statusCode == StatusCode.GOOGLE_SHEETS_CONNECTION_FAILED)) {
-						io_failure_count++;
+						pass.io_failure_count++;
 
-					} else if(e.statusCode != StatusCode.VALID) {
-						bad_count++;
+					} else {
+						if(e.statusCode != StatusCode.VALID) {
+							pass.bad_count++;
+						}
+						if(e.uri != null) {
+							ConflictStore.remove(e.uri);
+						}
 					}
 
-					spreadsheetUpdates.add(DictionaryAccessor.writeEntryNotes(e, e.report.toString()));
+					String notes = e.report.toString();
+					spreadsheetUpdates.add(DictionaryAccessor.writeEntryNotes(e, notes));
 					statusFormattingUpdates.add( e.setColor("Status", e.statusColor) );
+					pass.statusWrites.put(e.row_index, new StatusShadow.Status(e.statusColor, notes));
 
 				}
+			}
 
-				// Commit updates to spreadsheet
-				if(!spreadsheetUpdates.isEmpty()) {
-					log.info("Updating " + tab + " tab in spreadsheet");
-					batchUpdateValues(spreadsheetUpdates);
-				}
+			pass.reconciled = true;
+		} catch(Exception e) {
+			e.printStackTrace();
+			pass.report.failure("Dictionary update failed: " + e.getMessage());
+			passComplete = false;
+		}
 
-				// Commit formatting updates to spreadsheet
-				if(!statusFormattingUpdates.isEmpty()) {
-					batchUpdateRequests(statusFormattingUpdates);
-				}
+		// Stop any SynBioHub work left over from a failed tab
+		for(Future<?> task : pass.pendingTasks) {
+			task.cancel(true);
+		}
+	}
 
-				report.success(spreadsheetEntries.size()+" entries", true);
-				report.success(mod_count+" modified",true);
-				if(bad_count>0) {
-					report.failure(bad_count+" invalid", true);
-				}
-				if(io_failure_count > 0) {
-					report.failure(io_failure_count+" I/O failures", true);
+	/**
+	 * Third stage: pass the spreadsheet updates of a tab, its status and
+	 * the removal of its protection to the write buffer.  The updates of
+	 * a protected tab are sent right away, with any collected before them,
+	 * so that curators are not locked out of it while later tabs are
+	 * processed.  The updates of other tabs are sent with those of the
+	 * tabs after them, unless the flush policy calls for them sooner.
+	 * @param pass the state of the tab
+	 */
+	private static void writeTab(TabPass pass) {
+		String tab = pass.tab;
+		UpdateReport report = pass.report;
+		boolean flushNow = pass.rangeId >= 0;
+
+		try(Metrics.Timer timer = Metrics.phase("batch_writes", tab)) {
+			List<ValueRange> updates = new ArrayList<>();
+			List<Request> formatting = new ArrayList<>();
+			Runnable written = null;
+
+			if(pass.reconciled) {
+				updates = dropUnchanged(pass.spreadsheetUpdates, tab, pass.currentRows);
+				formatting = pass.statusFormattingUpdates;
+				Map<Integer, StatusShadow.Status> statusWrites = pass.statusWrites;
+				written = () -> StatusShadow.recordWrites(tab, statusWrites);
+
+				report.success(pass.spreadsheetEntries.size()+" entries", true);
+				report.success(pass.mod_count+" modified",true);
+				if(pass.bad_count>0) {
+					report.failure(pass.bad_count+" invalid", true);
 				}
-			} catch(Exception e) {
-				e.printStackTrace();
-				report.failure("Dictionary update failed: " + e.getMessage());
-			}
-
-			try {
-				if(rangeId >= 0) {
-					DictionaryAccessor.unprotectRange(rangeId);
-					rangeId = -1;
+				if(pass.io_failure_count > 0) {
+					report.failure(pass.io_failure_count+" I/O failures", true);
+					passComplete = false;
 				}
-
-			} catch(Exception e) {
-				log.warning("Failed to unprotect tab \"" + tab + "\"");
 			}
 
 			try {
-				DictionaryAccessor.writeStatusUpdate(tab,
+				updates.add(DictionaryAccessor.statusUpdate(tab,
 						"SD2 Dictionary ("
 								+ DictionaryMaintainerApp.VERSION
 								+ ") "
-								+ report.toString());
-
+								+ report.toString()));
 			} catch(Exception e2) {
 				e2.printStackTrace();
 			}
-		}
 
-		try {
-			// Process Mapping Failures Tab in the spreadsheet
-			log.info("Processing Mapping Failures ...");
-			processMappingFailures(allTabEntries);
-			log.info("Finished processing Mapping Failures");
-		} catch(Exception e) {
-			e.printStackTrace();
+			log.info("Queueing updates of " + tab + " tab");
+			if(optimisticConcurrency && pass.reconciled) {
+				WriteBuffer.expect(tab, pass.currentRows);
+				pendingCommits.put(tab, pass.committedURIs);
+			}
+			WriteBuffer.add(updates, formatting, pass.rangeId, written);
+			pass.rangeId = -1;
 		}
 
+		flushWrites(flushNow);
+	}
+
+	/**
+	 * Send the writes collected in the write buffer
+	 * @param all true to send them all, or false to send them only if
+	 * the flush policy calls for it
+	 * @return the rows that were edited, whose writes were dropped, by tab
+	 */
+	private static Map<String, Set<Integer>> flushWrites(boolean all) {
+		Map<String, Set<Integer>> editedRows = new TreeMap<>();
 		try {
-			// Periodically send email message about entry failures
-			sendEntryFailureEmails(failuresToEmail);
+			editedRows = all ? WriteBuffer.flush() : WriteBuffer.flushIfDue();
+
+			// Rows edited before they were written are updated by the
+			// next pass
+			for(String tab : editedRows.keySet()) {
+				passComplete = false;
+				StatusShadow.forget(tab);
+			}
 		} catch(Exception e) {
 			e.printStackTrace();
+			passComplete = false;
+			StatusShadow.forget();
+			try {
+				DictionaryAccessor.writeStatusUpdate("SD2 Dictionary ("
+						+ DictionaryMaintainerApp.VERSION
+						+ ") Failed to write updates: " + e.getMessage());
+			} catch(Exception e2) {
+				e2.printStackTrace();
+			}
 		}
 
-		log.info("Completed certification of dictionary");
+		if(WriteBuffer.isEmpty()) {
+			// The edited rows of entries already committed to SynBioHub
+			// are kept by the next pass
+			for(String tab : editedRows.keySet()) {
+				Map<Integer, URI> committedURIs = pendingCommits.get(tab);
+				if(committedURIs == null) {
+					continue;
+				}
+				for(int row : editedRows.get(tab)) {
+					URI uri = committedURIs.get(row);
+					if(uri != null) {
+						ConflictStore.add(uri);
+					}
+				}
+			}
+			pendingCommits.clear();
+		}
+		return editedRows;
 	}
 }
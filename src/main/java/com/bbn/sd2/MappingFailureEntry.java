@@ -18,6 +18,7 @@ public class MappingFailureEntry {
     private Date lastNotificationTime;
     private SimpleDateFormat dateFormatter;
     private int row;
+    private final int snapshotRow;
     private final String statusDatePrefix = "Notification sent at ";
     private boolean notified;
     private boolean valid;
@@ -34,6 +35,7 @@ public class MappingFailureEntry {
         this.lastNotificationTime = null;
         this.dateFormatter = new SimpleDateFormat("MM/dd/yyyy HH:mm:ss z");
         this.row = row + 1; // Index from 1 instead of 0
+        this.snapshotRow = this.row;
         this.notified = false;
 
         itemType = rowEntries.get(itemTypeColumnTag);
@@ -140,6 +142,14 @@ public class MappingFailureEntry {
         return row;
     }
 
+    /**
+     * @return the row of the entry when the tab was read, before any rows
+     * above it were deleted
+     */
+    public int getSnapshotRow() {
+        return snapshotRow;
+    }
+
     public void decrementRow(int delta) {
         row -= delta;
     }
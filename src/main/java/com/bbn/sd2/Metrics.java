@@ -0,0 +1,311 @@
+package com.bbn.sd2;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+
+import org.apache.commons.cli.CommandLine;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Counters, gauges and latency histograms for the phases of each pass
+ * and for every request made to Google and SynBioHub.  They are served
+ * in the Prometheus text format on a local HTTP port, so the time spent
+ * in each part of a cycle can be scraped and graphed.
+ */
+public final class Metrics {
+    private static Logger log = Logger.getGlobal();
+
+    /** Upper bounds of the histogram buckets, in seconds */
+    private static final double[] buckets = { 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5,
+                                              1, 2.5, 5, 10, 30, 60, 120, 300, 600 };
+
+    public static final String PHASE_SECONDS = "dictionary_phase_seconds";
+    public static final String CYCLE_SECONDS = "dictionary_cycle_seconds";
+    public static final String CYCLE_FAILURES = "dictionary_cycle_failures_total";
+    public static final String SKIPPED_CYCLES = "dictionary_skipped_cycles_total";
+    public static final String LAST_CYCLE_END = "dictionary_last_cycle_end_timestamp_seconds";
+    public static final String NEXT_CYCLE = "dictionary_next_cycle_timestamp_seconds";
+    public static final String GOOGLE_SECONDS = "google_request_seconds";
+    public static final String GOOGLE_ERRORS = "google_request_errors_total";
+    public static final String GOOGLE_THROTTLES = "google_throttles_total";
+    public static final String GOOGLE_QUOTA_WAIT = "google_quota_wait_seconds_total";
+    public static final String GOOGLE_REQUESTS_SAVED = "google_requests_saved_total";
+    public static final String SYNBIOHUB_SECONDS = "synbiohub_request_seconds";
+    public static final String SYNBIOHUB_ERRORS = "synbiohub_request_errors_total";
+
+    private enum Type { counter, gauge, histogram }
+
+    private static class Family {
+        final Type type;
+        final String help;
+        /** Series of the family, indexed by their rendered labels */
+        final Map<String, double[]> series = new TreeMap<>();
+
+        Family(Type type, String help) {
+            this.type = type;
+            this.help = help;
+        }
+    }
+
+    private static final Map<String, Family> families = new TreeMap<>();
+
+    static {
+        define(PHASE_SECONDS, Type.histogram, "Time spent in each phase of a dictionary pass");
+        define(CYCLE_SECONDS, Type.histogram, "Time taken by each dictionary pass");
+        define(CYCLE_FAILURES, Type.counter, "Dictionary passes that ended with an exception");
+        define(SKIPPED_CYCLES, Type.counter, "Dictionary passes skipped because nothing changed");
+        define(LAST_CYCLE_END, Type.gauge, "Time the last dictionary pass ended");
+        define(NEXT_CYCLE, Type.gauge, "Time the next dictionary pass is scheduled to start");
+        define(GOOGLE_SECONDS, Type.histogram, "Latency of Google requests, including retries");
+        define(GOOGLE_ERRORS, Type.counter, "Google requests that failed");
+        define(GOOGLE_THROTTLES, Type.counter, "Google requests rejected for exceeding a quota");
+        define(GOOGLE_QUOTA_WAIT, Type.counter, "Time spent waiting for Google quota");
+        define(GOOGLE_REQUESTS_SAVED, Type.counter, "Requests to Google saved by merging them");
+        define(SYNBIOHUB_SECONDS, Type.histogram, "Latency of SynBioHub requests");
+        define(SYNBIOHUB_ERRORS, Type.counter, "SynBioHub requests that failed");
+    }
+
+    private static HttpServer server = null;
+
+    private Metrics() {} // static-only class
+
+    private static void define(String name, Type type, String help) {
+        families.put(name, new Family(type, help));
+    }
+
+    /**
+     * Measures the time from its creation until it is closed, and adds
+     * it to a histogram
+     */
+    public static class Timer implements AutoCloseable {
+        private final String name;
+        private final String[] labels;
+        private final long startNS = System.nanoTime();
+        private boolean stopped = false;
+
+        private Timer(String name, String[] labels) {
+            this.name = name;
+            this.labels = labels;
+        }
+
+        /** Record the elapsed time.  Only the first call has an effect */
+        public void stop() {
+            if(stopped) {
+                return;
+            }
+            stopped = true;
+            observe(name, (System.nanoTime() - startNS) / 1e9, labels);
+        }
+
+        @Override
+        public void close() {
+            stop();
+        }
+    }
+
+    /** Start timing a phase of the pass */
+    public static Timer phase(String phase) {
+        return new Timer(PHASE_SECONDS, new String[] { "phase", phase });
+    }
+
+    /** Start timing a phase of the processing of a tab */
+    public static Timer phase(String phase, String tab) {
+        return new Timer(PHASE_SECONDS, new String[] { "phase", phase, "tab", tab });
+    }
+
+    /**
+     * Start timing
+     * @param name name of the histogram
+     * @param labels label names and values, alternating
+     */
+    public static Timer time(String name, String... labels) {
+        return new Timer(name, labels);
+    }
+
+    /**
+     * Add one to a counter
+     * @param name name of the counter
+     * @param labels label names and values, alternating
+     */
+    public static void increment(String name, String... labels) {
+        add(name, 1.0, labels);
+    }
+
+    /** Add an amount to a counter */
+    public static synchronized void add(String name, double amount, String... labels) {
+        series(name, labels)[0] += amount;
+    }
+
+    /** Set the value of a gauge */
+    public static synchronized void set(String name, double value, String... labels) {
+        series(name, labels)[0] = value;
+    }
+
+    /**
+     * Add an observation to a histogram
+     * @param name name of the histogram
+     * @param value the observation, in seconds
+     * @param labels label names and values, alternating
+     */
+    public static synchronized void observe(String name, double value, String... labels) {
+        // Bucket counts, then the count and the sum
+        double[] histogram = series(name, labels);
+        for(int i=0; i<buckets.length; ++i) {
+            if(value <= buckets[i]) {
+                histogram[i] += 1;
+            }
+        }
+        histogram[buckets.length] += 1;
+        histogram[buckets.length + 1] += value;
+    }
+
+    private static double[] series(String name, String[] labels) {
+        Family family = families.get(name);
+        if(family == null) {
+            throw new IllegalArgumentException("Unknown metric " + name);
+        }
+
+        String key = renderLabels(labels);
+        double[] values = family.series.get(key);
+        if(values == null) {
+            values = new double[(family.type == Type.histogram) ? buckets.length + 2 : 1];
+            family.series.put(key, values);
+        }
+        return values;
+    }
+
+    private static String renderLabels(String[] labels) {
+        if(labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels must be name and value pairs");
+        }
+
+        StringBuilder rendered = new StringBuilder();
+        for(int i=0; i<labels.length; i+=2) {
+            if(rendered.length() > 0) {
+                rendered.append(',');
+            }
+            String value = (labels[i+1] == null) ? "" : labels[i+1];
+            rendered.append(labels[i]).append("=\"")
+                .append(value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"))
+                .append('"');
+        }
+        return rendered.toString();
+    }
+
+    private static String withLabels(String name, String labels, String extraLabel) {
+        String all = labels;
+        if(extraLabel != null) {
+            all = labels.isEmpty() ? extraLabel : labels + "," + extraLabel;
+        }
+        return all.isEmpty() ? name : name + "{" + all + "}";
+    }
+
+    private static String formatValue(double value) {
+        if(value == Math.rint(value) && !Double.isInfinite(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long)value);
+        }
+        return Double.toString(value);
+    }
+
+    /**
+     * @return all the metrics, in the Prometheus text exposition format
+     */
+    public static synchronized String render() {
+        StringBuilder out = new StringBuilder();
+
+        for(String name : families.keySet()) {
+            Family family = families.get(name);
+            out.append("# HELP ").append(name).append(' ').append(family.help).append('\n');
+            out.append("# TYPE ").append(name).append(' ').append(family.type).append('\n');
+
+            for(String labels : family.series.keySet()) {
+                double[] values = family.series.get(labels);
+                if(family.type != Type.histogram) {
+                    out.append(withLabels(name, labels, null)).append(' ')
+                        .append(formatValue(values[0])).append('\n');
+                    continue;
+                }
+
+                for(int i=0; i<buckets.length; ++i) {
+                    out.append(withLabels(name + "_bucket", labels, "le=\"" + buckets[i] + "\""))
+                        .append(' ').append(formatValue(values[i])).append('\n');
+                }
+                out.append(withLabels(name + "_bucket", labels, "le=\"+Inf\""))
+                    .append(' ').append(formatValue(values[buckets.length])).append('\n');
+                out.append(withLabels(name + "_count", labels, null)).append(' ')
+                    .append(formatValue(values[buckets.length])).append('\n');
+                out.append(withLabels(name + "_sum", labels, null)).append(' ')
+                    .append(formatValue(values[buckets.length + 1])).append('\n');
+            }
+        }
+
+        return out.toString();
+    }
+
+    /** Drop all recorded values */
+    public static synchronized void clear() {
+        for(Family family : families.values()) {
+            family.series.clear();
+        }
+    }
+
+    /**
+     * Start serving the metrics if a port was given on the command line
+     */
+    public static synchronized void configure(CommandLine cmd) throws IOException {
+        stop();
+
+        if(!cmd.hasOption("metrics_port")) {
+            return;
+        }
+
+        // Either a port, served on the loopback interface, or host:port
+        String address = cmd.getOptionValue("metrics_port");
+        String host = "localhost";
+        int split = address.lastIndexOf(':');
+        if(split >= 0) {
+            host = address.substring(0, split);
+            address = address.substring(split + 1);
+        }
+
+        start(new InetSocketAddress(host, Integer.parseInt(address)));
+    }
+
+    /**
+     * Serve the metrics at /metrics
+     * @param address address to listen on.  Port zero picks a free port
+     * @return the port the metrics are served on
+     */
+    public static synchronized int start(InetSocketAddress address) throws IOException {
+        stop();
+
+        server = HttpServer.create(address, 0);
+        server.createContext("/metrics", exchange -> {
+            byte[] bytes = render().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, bytes.length);
+            try(OutputStream os = exchange.getResponseBody()) {
+                os.write(bytes);
+            }
+            exchange.close();
+        });
+        server.start();
+
+        int port = server.getAddress().getPort();
+        log.info("Serving metrics on port " + port);
+        return port;
+    }
+
+    public static synchronized void stop() {
+        if(server != null) {
+            server.stop(0);
+            server = null;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.bbn.sd2;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.logging.Logger;
+
+import org.json.JSONObject;
+import org.synbiohub.frontend.SynBioHubException;
+
+/**
+ * Resolves entry names to SynBioHub URIs without a search per entry.
+ * The first lookup in each pass builds an index of the titles of every
+ * member of the target collection, using a single query.  Names in the
+ * index are resolved from it.  Other names, and every name if the index
+ * cannot be built, are searched for in all of SynBioHub as before, so that
+ * a name of an object outside the collection is still found and reported.
+ * The results of the searches are remembered until the index is rebuilt.
+ */
+public final class NameIndex {
+    private static Logger log = Logger.getGlobal();
+
+    private static final List<String> indexedProperties = Arrays.asList(
+        "http://purl.org/dc/terms/title");
+
+    /** Maps sanitized titles to the URIs of the objects they may refer to */
+    private static Map<String, Set<String>> urisByName = new HashMap<>();
+
+    /** Sanitized names that a search did not find */
+    private static Set<String> absentNames = new HashSet<>();
+
+    /** True once the current pass has tried to build the index */
+    private static boolean buildAttempted = false;
+
+    private static long hitCount = 0;
+    private static long negativeHitCount = 0;
+    private static long searchCount = 0;
+
+    private NameIndex() {} // static-only class
+
+    /**
+     * Start a pass through the dictionary.  The index is rebuilt the next
+     * time a name is looked up.
+     */
+    public static synchronized void beginPass() {
+        buildAttempted = false;
+        urisByName = new HashMap<>();
+        absentNames = new HashSet<>();
+    }
+
+    /**
+     * Find the URI of the object with a name
+     * @param name Name of the object
+     * @return URI of the object, or null if there is not exactly one match
+     * @throws SynBioHubException
+     */
+    public static URI lookup(String name) throws SynBioHubException {
+        String key = SynBioHubAccessor.sanitizeNameToDisplayID(name);
+
+        synchronized(NameIndex.class) {
+            if(!buildAttempted) {
+                buildAttempted = true;
+                build();
+            }
+
+            if(absentNames.contains(key)) {
+                ++negativeHitCount;
+                return null;
+            }
+
+            Set<String> uris = urisByName.get(key);
+            if(uris != null) {
+                ++hitCount;
+                if(uris.size() > 1) {
+                    log.severe("Cannot resolve: multiple URIs match name "+name);
+                    return null;
+                }
+
+                return URI.create(uris.iterator().next());
+            }
+
+            ++searchCount;
+        }
+
+        // The name is not in the collection, or the index could not be
+        // built, so ask SynBioHub
+        URI uri = SynBioHubAccessor.searchByName(name);
+
+        synchronized(NameIndex.class) {
+            if(uri == null) {
+                absentNames.add(key);
+            } else {
+                urisByName.put(key, new TreeSet<>(Arrays.asList(uri.toString())));
+            }
+        }
+
+        return uri;
+    }
+
+    private static void build() {
+        Map<String, Set<String>> index = new HashMap<>();
+
+        try {
+            for(JSONObject binding : SynBioHubAccessor.getMemberProperties(indexedProperties, null)) {
+                String member = binding.getJSONObject("member").getString("value");
+                String value = binding.getJSONObject("value").getString("value");
+
+                // Titles are stored in sanitized form, which is how
+                // names are matched
+                String key = SynBioHubAccessor.sanitizeNameToDisplayID(value);
+                Set<String> uris = index.get(key);
+                if(uris == null) {
+                    uris = new TreeSet<>();
+                    index.put(key, uris);
+                }
+                uris.add(member);
+            }
+        } catch(Exception e) {
+            log.warning("Failed to build name index, searching SynBioHub instead: "
+                        + e.getMessage());
+            return;
+        }
+
+        urisByName = index;
+        absentNames = new HashSet<>();
+
+        log.info("Indexed " + index.size() + " titles in the collection");
+    }
+
+    public static synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public static synchronized long getNegativeHitCount() {
+        return negativeHitCount;
+    }
+
+    public static synchronized long getSearchCount() {
+        return searchCount;
+    }
+}
@@ -0,0 +1,213 @@
+package com.bbn.sd2;
+
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.logging.Logger;
+
+/**
+ * Token bucket that keeps requests within a per-minute quota, such as
+ * the Google Sheets read and write quotas.  The bucket refills
+ * continuously, so callers only block when the budget has actually been
+ * used up.  When the server still reports that the quota was exceeded,
+ * the refill rate is cut in half and the bucket stops refilling for the
+ * time given by the server.  Each successful request then moves the rate
+ * back toward the configured rate.
+ */
+public class RateLimiter {
+    private static Logger log = Logger.getGlobal();
+
+    /** Time to hold off when the server does not say how long to wait */
+    private static final long defaultThrottleMS = 60000;
+
+    private final String name;
+
+    /** Maximum number of tokens the bucket holds */
+    private double capacity;
+    /** Configured refill rate, in tokens per millisecond */
+    private double maxRate;
+    /** Current refill rate, in tokens per millisecond */
+    private double rate;
+    /** Number of tokens in the bucket.  Goes negative when callers are waiting */
+    private double tokens;
+    /** Time the bucket was last refilled.  Is in the future while throttled */
+    private long lastRefillMS;
+
+    private long tokenCount = 0;
+    private long waitCount = 0;
+    private long waitMS = 0;
+    private long throttleCount = 0;
+
+    /**
+     * @param name name of the quota, used in log messages
+     * @param requestsPerMinute the quota
+     */
+    public RateLimiter(String name, int requestsPerMinute) {
+        this.name = name;
+        setRequestsPerMinute(requestsPerMinute);
+        tokens = capacity;
+        lastRefillMS = currentTimeMS();
+    }
+
+    /**
+     * Change the quota.  The bucket holds one minute's worth of requests.
+     */
+    public synchronized void setRequestsPerMinute(int requestsPerMinute) {
+        if(requestsPerMinute < 1) {
+            throw new IllegalArgumentException("Quota for " + name
+                                               + " must be at least one request per minute");
+        }
+
+        capacity = requestsPerMinute;
+        maxRate = requestsPerMinute / 60000.0;
+        rate = maxRate;
+        tokens = Math.min(tokens, capacity);
+    }
+
+    /**
+     * Take a token from the bucket, waiting for one to become
+     * available if necessary.
+     */
+    public void acquire() throws InterruptedException {
+        long delayMS = reserve();
+        if(delayMS > 0) {
+            Thread.sleep(delayMS);
+        }
+    }
+
+    /**
+     * Take a token from the bucket
+     * @return the number of milliseconds until the token may be used
+     */
+    private synchronized long reserve() {
+        long now = currentTimeMS();
+        refill(now);
+
+        tokens -= 1.0;
+        ++tokenCount;
+
+        long delayMS = Math.max(0, lastRefillMS - now);
+        if(tokens < 0.0) {
+            delayMS += (long)Math.ceil(-tokens / rate);
+        }
+
+        if(delayMS > 0) {
+            ++waitCount;
+            waitMS += delayMS;
+        }
+
+        return delayMS;
+    }
+
+    private void refill(long now) {
+        if(now <= lastRefillMS) {
+            return;
+        }
+
+        tokens = Math.min(capacity, tokens + (now - lastRefillMS) * rate);
+        lastRefillMS = now;
+    }
+
+    /**
+     * Record a request that completed without exceeding the quota
+     */
+    public synchronized void succeeded() {
+        // Additive increase.  It takes about a bucket's worth of
+        // requests to recover from one throttle
+        rate = Math.min(maxRate, rate + maxRate / capacity);
+    }
+
+    /**
+     * Record a request that was rejected because the quota was exceeded
+     * @param retryAfter the Retry-After header from the response, or null
+     */
+    public synchronized void throttled(String retryAfter) {
+        long now = currentTimeMS();
+        refill(now);
+
+        ++throttleCount;
+
+        // Multiplicative decrease, but never less than one request
+        // per minute
+        rate = Math.max(maxRate / capacity, rate / 2.0);
+
+        long holdMS = parseRetryAfter(retryAfter);
+        if(holdMS < 0) {
+            holdMS = defaultThrottleMS;
+        }
+
+        // Whatever is left in the bucket is not really available
+        tokens = Math.min(tokens, 0.0);
+        lastRefillMS = Math.max(lastRefillMS, now + holdMS);
+
+        log.warning("Too many " + name + " requests.  Holding off for "
+                    + (holdMS / 1000L) + " seconds, then allowing "
+                    + String.format("%.1f", rate * 60000.0) + " requests per minute");
+    }
+
+    /**
+     * @return the number of milliseconds to wait, or -1 if the header
+     * is missing or cannot be parsed
+     */
+    private static long parseRetryAfter(String retryAfter) {
+        if(retryAfter == null) {
+            return -1;
+        }
+
+        retryAfter = retryAfter.trim();
+        try {
+            return 1000L * Long.parseLong(retryAfter);
+        } catch(NumberFormatException e) {
+        }
+
+        try {
+            Instant when = ZonedDateTime.parse(retryAfter, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+            return Math.max(0, when.toEpochMilli() - System.currentTimeMillis());
+        } catch(Exception e) {
+            return -1;
+        }
+    }
+
+    private static long currentTimeMS() {
+        return System.nanoTime() / 1000000L;
+    }
+
+    /** @return the number of tokens taken from the bucket */
+    public synchronized long getTokenCount() {
+        return tokenCount;
+    }
+
+    /** @return the number of requests that had to wait for a token */
+    public synchronized long getWaitCount() {
+        return waitCount;
+    }
+
+    /** @return the total time requests spent waiting for tokens */
+    public synchronized long getWaitMillis() {
+        return waitMS;
+    }
+
+    /** @return the number of requests rejected for exceeding the quota */
+    public synchronized long getThrottleCount() {
+        return throttleCount;
+    }
+
+    /** @return the current refill rate */
+    public synchronized double getRequestsPerMinute() {
+        return rate * 60000.0;
+    }
+
+    /** @return the number of tokens currently in the bucket */
+    public synchronized double getAvailableTokens() {
+        refill(currentTimeMS());
+        return tokens;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return name + ": " + tokenCount + " requests, " + waitCount + " waited "
+            + String.format("%.1f", waitMS / 1000.0) + " s, "
+            + throttleCount + " throttled, "
+            + String.format("%.1f", rate * 60000.0) + " requests per minute";
+    }
+}
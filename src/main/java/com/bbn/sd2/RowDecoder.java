@@ -0,0 +1,292 @@
+package com.bbn.sd2;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.text.ParsePosition;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.bbn.sd2.DictionaryEntry.StubStatus;
+
+/**
+ * Turns spreadsheet rows into dictionary entries for one tab layout.  The
+ * column of each field is looked up once, when the decoder is compiled
+ * from the tab headers, rather than once per row.  A decoder does not
+ * change after it is compiled, so the rows of a tab may be decoded from
+ * several threads at once.
+ */
+public final class RowDecoder {
+    private static Logger log = Logger.getGlobal();
+
+    /** Format of the "Last Updated" column, shared by all threads */
+    static final DateTimeFormatter LAST_UPDATED_FORMAT =
+        DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ssX");
+
+    private final String tab;
+    private final Map<String, Integer> headerMap;
+
+    // Columns of the fields, or -1 if the tab has no such column
+    private final int nameColumn;
+    private final int typeColumn;
+    private final int statusColumn;
+    private final int lastUpdatedColumn;
+    private final int uriColumn;
+    private final int definitionColumn;
+    private final int aliasColumn;
+    private final int importColumn;
+    private final int stubColumn;
+
+    /** Lab UID keys, and the columns they are read from */
+    private final String[] labKeys;
+    private final int[] labColumns;
+
+    private RowDecoder(String tab, Map<String, Integer> headerMap) {
+        this.tab = tab;
+        this.headerMap = headerMap;
+
+        nameColumn = column("Common Name");
+        typeColumn = column("Type");
+        statusColumn = column("Status");
+        lastUpdatedColumn = column("Last Updated");
+        uriColumn = column("SynBioHub URI");
+        int definition = column("Definition URI / CHEBI ID");
+        definitionColumn = (definition >= 0) ? definition : column("Definition URI");
+        aliasColumn = column("Alias Names");
+        importColumn = column("Definition Import");
+        stubColumn = column("Stub Object?");
+
+        List<String> keys = new ArrayList<>();
+        List<Integer> columns = new ArrayList<>();
+        Map<String, String> labUIDMap = DictionaryMaintainerApp.labUIDMap;
+        for(String uidLabel : labUIDMap.keySet()) {
+            Integer labColumn = headerMap.get(uidLabel);
+            if(labColumn != null) {
+                keys.add(labUIDMap.get(uidLabel));
+                columns.add(labColumn);
+            }
+        }
+        labKeys = keys.toArray(new String[keys.size()]);
+        labColumns = new int[columns.size()];
+        for(int i=0; i<labColumns.length; ++i) {
+            labColumns[i] = columns.get(i);
+        }
+    }
+
+    /**
+     * Compile a decoder for the current headers of a tab and the
+     * configured lab UID columns
+     * @param tab name of the tab
+     * @param headerMap maps the tab headers to their columns
+     * @return the decoder
+     */
+    public static RowDecoder compile(String tab, Map<String, Integer> headerMap) {
+        return new RowDecoder(tab, headerMap);
+    }
+
+    private int column(String header) {
+        Integer column = headerMap.get(header);
+        return (column == null) ? -1 : column;
+    }
+
+    /**
+     * Create the dictionary entry for a spreadsheet row
+     * @param rowNumber number of the row, counting from one
+     * @param row values of the row
+     * @return the entry
+     */
+    public DictionaryEntry decode(int rowNumber, List<Object> row) {
+        return new DictionaryEntry(this, rowNumber, row);
+    }
+
+    /**
+     * Set the fields of an entry from a spreadsheet row
+     */
+    void decode(DictionaryEntry e, int rowNumber, List<Object> row) {
+        e.tab = tab;
+        e.row_index = rowNumber;
+        e.header_map = headerMap;
+
+        e.name = cell(row, nameColumn);
+        if(e.name == null) {
+            e.statusCode = StatusCode.MISSING_NAME;
+        }
+        if(log.isLoggable(Level.INFO)) {
+            log.info("Scanning entry " + e.name);
+        }
+
+        e.type = cell(row, typeColumn);
+        if(e.type != null) {
+            // if type is restricted, watch out for it
+            if(!MaintainDictionary.validType(tab, e.type)) {
+                e.statusCode = StatusCode.INVALID_TYPE;
+            }
+        } else {
+            e.statusCode = StatusCode.MISSING_TYPE;
+        }
+
+        e.statusLog = cell(row, statusColumn);
+        if(e.statusLog != null) {
+            Date lastNotifyTime = DictionaryEntry.parseLastNotifyTime(e.statusLog);
+            if(lastNotifyTime != null) {
+                e.lastNotifyTime = lastNotifyTime;
+            }
+        }
+
+        e.lastUpdated = cell(row, lastUpdatedColumn);
+        if(e.lastUpdated != null) {
+            e.modifiedDate = parseLastUpdated(e.lastUpdated);
+        }
+
+        if("Attribute".equals(e.type)) {
+            e.attribute = true; // check if it's an attribute
+        }
+
+        String uri = cell(row, uriColumn);
+        if(uri != null) {
+            e.uri = URI.create(uri);
+        }
+
+        e.definitionURIColumn = (definitionColumn >= 0) ? definitionColumn : null;
+        e.attributeDefinition = parseURI(cell(row, definitionColumn));
+
+        String aliases = cell(row, aliasColumn);
+        if(aliases != null) {
+            splitAliases(aliases, e.aliasNames);
+        }
+
+        URI definitionImport = parseURI(cell(row, importColumn));
+        if(definitionImport != null) {
+            e.definitionImport = definitionImport.toString();
+        }
+
+        for(int i=0; i<labKeys.length; ++i) {
+            String uids = cell(row, labColumns[i]);
+            if(uids != null) {
+                e.labUIDs.put(labKeys[i], new TreeSet<>(splitUIDs(uids)));
+            } else {
+                e.labUIDs.put(labKeys[i], null);
+            }
+        }
+
+        String stub = cell(row, stubColumn);
+        if("YES".equals(stub)) {
+            e.stub = StubStatus.YES;
+        } else if("NO".equals(stub)) {
+            e.stub = StubStatus.NO;
+        }
+    }
+
+    /**
+     * @return the contents of a cell, or null if the cell is empty or
+     * the tab has no such column
+     */
+    private static String cell(List<Object> row, int column) {
+        if((column < 0) || (column >= row.size())) {
+            return null;
+        }
+
+        String value = row.get(column).toString();
+        return value.isEmpty() ? null : value;
+    }
+
+    /**
+     * @return the URI in a cell, or null if the cell is empty or does
+     * not hold a URI
+     */
+    private static URI parseURI(String value) {
+        if(value == null) {
+            return null;
+        }
+
+        try {
+            return new URI(value);
+        } catch(URISyntaxException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the date in a "Last Updated" cell, or null if the cell does
+     * not start with a date
+     */
+    static Date parseLastUpdated(String value) {
+        try {
+            return Date.from(Instant.from(LAST_UPDATED_FORMAT.parse(value, new ParsePosition(0))));
+        } catch(DateTimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Add the names in an "Alias Names" cell, which are separated by
+     * semicolons, to a set
+     */
+    static void splitAliases(String value, Set<String> aliases) {
+        int start = 0;
+        while(start <= value.length()) {
+            int end = value.indexOf(';', start);
+            if(end < 0) {
+                end = value.length();
+            }
+
+            String alias = value.substring(start, end).trim();
+            if(!alias.isEmpty()) {
+                aliases.add(alias);
+            }
+            start = end + 1;
+        }
+    }
+
+    /**
+     * Split a lab UID cell at its commas, together with any white space
+     * around them.  The result is the same as that of
+     * value.split("\\s*,\\s*"), without compiling a pattern.
+     */
+    static List<String> splitUIDs(String value) {
+        int comma = value.indexOf(',');
+        if(comma < 0) {
+            return Collections.singletonList(value);
+        }
+
+        List<String> uids = new ArrayList<>();
+        int start = 0;
+        while(comma >= 0) {
+            int end = comma;
+            while((end > start) && isSpace(value.charAt(end - 1))) {
+                --end;
+            }
+            uids.add(value.substring(start, end));
+
+            start = comma + 1;
+            while((start < value.length()) && isSpace(value.charAt(start))) {
+                ++start;
+            }
+            comma = value.indexOf(',', start);
+        }
+        uids.add(value.substring(start));
+
+        // Like String.split, leave out trailing empty strings
+        int size = uids.size();
+        while((size > 0) && uids.get(size - 1).isEmpty()) {
+            uids.remove(--size);
+        }
+
+        return uids;
+    }
+
+    /** @return true for the characters matched by \s */
+    private static boolean isSpace(char c) {
+        return (c == ' ') || (c == '\t') || (c == '\n') || (c == '\u000B')
+            || (c == '\f') || (c == '\r');
+    }
+}
@@ -0,0 +1,81 @@
+package com.bbn.sd2;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Contents of whole tabs of the spreadsheet, read with a single
+ * values.batchGet at the start of a pass.  The later phases of the pass
+ * read the tab headers, the dictionary entries and the Mapping Failures
+ * tab from the snapshot instead of making requests of their own.  The
+ * snapshot cannot be modified, so it may be shared between threads.
+ */
+public final class SpreadsheetSnapshot {
+    /** Row of the tab headers, counting from one */
+    public static final int HEADER_ROW = 2;
+
+    /** Values of each tab, by row then column, starting with the first row */
+    private final Map<String, List<List<Object>>> tabValues;
+
+    /**
+     * @param tabValues values of each tab, by row then column.  The
+     * values are copied, and null stands for an empty tab
+     */
+    SpreadsheetSnapshot(Map<String, List<List<Object>>> tabValues) {
+        Map<String, List<List<Object>>> copy = new LinkedHashMap<>();
+        for(String tab : tabValues.keySet()) {
+            List<List<Object>> rows = new ArrayList<>();
+            if(tabValues.get(tab) != null) {
+                for(List<Object> row : tabValues.get(tab)) {
+                    rows.add(Collections.unmodifiableList(new ArrayList<>(row)));
+                }
+            }
+            copy.put(tab, Collections.unmodifiableList(rows));
+        }
+        this.tabValues = Collections.unmodifiableMap(copy);
+    }
+
+    /** @return the tabs in the snapshot */
+    public Set<String> getTabs() {
+        return tabValues.keySet();
+    }
+
+    /**
+     * @return the values of a tab, by row then column, starting with
+     * the first row.  Trailing empty rows and cells are left out.
+     * @throws IllegalArgumentException if the tab is not in the snapshot
+     */
+    public List<List<Object>> getValues(String tab) {
+        List<List<Object>> values = tabValues.get(tab);
+        if(values == null) {
+            throw new IllegalArgumentException("Tab \"" + tab + "\" is not in the snapshot");
+        }
+        return values;
+    }
+
+    /**
+     * @return the header row of a tab, or null if the tab has none
+     */
+    public List<Object> getHeaderRow(String tab) {
+        List<List<Object>> values = getValues(tab);
+        if(values.size() < HEADER_ROW) {
+            return null;
+        }
+        return values.get(HEADER_ROW - 1);
+    }
+
+    /**
+     * @return the rows below the headers, starting at row HEADER_ROW + 1
+     */
+    public List<List<Object>> getDataRows(String tab) {
+        List<List<Object>> values = getValues(tab);
+        if(values.size() <= HEADER_ROW) {
+            return Collections.emptyList();
+        }
+        return values.subList(HEADER_ROW, values.size());
+    }
+}
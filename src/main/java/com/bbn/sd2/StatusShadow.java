@@ -0,0 +1,179 @@
+package com.bbn.sd2;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+import com.google.api.services.drive.model.File;
+import com.google.api.services.sheets.v4.model.CellFormat;
+import com.google.api.services.sheets.v4.model.Color;
+
+/**
+ * Remembers the text and text color of the Status cell of every row, as
+ * the dictionary last wrote or read them, so that the formatting of the
+ * whole Status column need not be fetched on every pass.  The records are
+ * trusted only if the spreadsheet has not changed at all since the end of
+ * the pass that made them, which is checked with the Drive revision of the
+ * spreadsheet.  A row whose Status text differs from the record is also
+ * treated as unknown, and the formatting of its tab is fetched again.
+ */
+public final class StatusShadow {
+    private static Logger log = Logger.getGlobal();
+
+    /** Status cell of one row */
+    static final class Status {
+        final Color color;
+        final String text;
+
+        Status(Color color, String text) {
+            this.color = (color == null) ? null : color.clone();
+            this.text = text;
+        }
+    }
+
+    /** Records by tab, then by row */
+    private static Map<String, Map<Integer, Status>> statuses = new ConcurrentHashMap<>();
+
+    /** Revision of the spreadsheet at the end of the last pass, or null */
+    private static String revision = null;
+
+    /** True if the records can be used during the current pass */
+    private static boolean trusted = false;
+
+    private StatusShadow() {} // static-only class
+
+    /**
+     * Start a pass through the dictionary, checking whether the
+     * spreadsheet has changed since the end of the last pass
+     */
+    public static synchronized void beginPass() {
+        trusted = false;
+        if(revision != null) {
+            try {
+                trusted = revision.equals(probeSpreadsheet());
+            } catch(Exception e) {
+                log.warning("Failed to check the spreadsheet revision: " + e.getMessage());
+            }
+        }
+        revision = null;
+
+        if(!trusted) {
+            statuses.clear();
+        }
+        log.info(trusted ? "Using recorded Status formatting"
+                 : "Status formatting will be read from the spreadsheet");
+    }
+
+    /**
+     * Finish a pass through the dictionary, after its last write, by
+     * recording the revision of the spreadsheet
+     */
+    public static synchronized void endPass() {
+        try {
+            revision = probeSpreadsheet();
+        } catch(Exception e) {
+            log.warning("Failed to record the spreadsheet revision: " + e.getMessage());
+            revision = null;
+        }
+    }
+
+    /** Forget every record, so that the formatting is read on the next pass */
+    public static synchronized void forget() {
+        revision = null;
+        trusted = false;
+        statuses.clear();
+    }
+
+    /**
+     * Look up the Status text colors of some rows
+     * @param tab name of the tab
+     * @param entries entries of the rows
+     * @return the colors, indexed by row, or null if any of the rows has
+     * no record that can be used
+     */
+    public static synchronized Map<Integer, Color> getColors(String tab, List<DictionaryEntry> entries) {
+        Map<Integer, Color> colors = new HashMap<>();
+        if(entries.isEmpty()) {
+            // Records of the rows written in this pass can still be kept
+            statuses.putIfAbsent(tab, new ConcurrentHashMap<>());
+            return colors;
+        }
+
+        Map<Integer, Status> tabStatuses = statuses.get(tab);
+        if(!trusted || (tabStatuses == null)) {
+            return null;
+        }
+
+        for(DictionaryEntry e : entries) {
+            Status status = tabStatuses.get(e.row_index);
+            if((status == null) || !equal(status.text, e.statusLog)) {
+                return null;
+            }
+            colors.put(e.row_index, status.color);
+        }
+
+        return colors;
+    }
+
+    /**
+     * Record the Status formatting read from the spreadsheet
+     * @param tab name of the tab
+     * @param formats formats of the Status column, starting with the first row
+     * @param entries entries of the tab
+     * @return the Status text colors of the entries, indexed by row
+     */
+    public static synchronized Map<Integer, Color> load(String tab, List<CellFormat> formats,
+                                                        List<DictionaryEntry> entries) {
+        Map<Integer, Status> tabStatuses = new ConcurrentHashMap<>();
+        Map<Integer, Color> colors = new HashMap<>();
+
+        for(DictionaryEntry e : entries) {
+            Color color = null;
+            if(formats.size() >= e.row_index) {
+                CellFormat format = formats.get(e.row_index - 1);
+                if((format != null) && (format.getTextFormat() != null)) {
+                    color = format.getTextFormat().getForegroundColor();
+                }
+            }
+
+            tabStatuses.put(e.row_index, new Status(color, e.statusLog));
+            colors.put(e.row_index, color);
+        }
+
+        statuses.put(tab, tabStatuses);
+        return colors;
+    }
+
+    /**
+     * Record the Status cells written to a tab
+     * @param tab name of the tab
+     * @param written the text and color written, indexed by row
+     */
+    public static synchronized void recordWrites(String tab, Map<Integer, Status> written) {
+        Map<Integer, Status> tabStatuses = statuses.get(tab);
+        if(tabStatuses != null) {
+            tabStatuses.putAll(written);
+        }
+    }
+
+    /** Forget the records of a tab, for instance after a failed write */
+    public static synchronized void forget(String tab) {
+        statuses.remove(tab);
+    }
+
+    /**
+     * @return the revision of the spreadsheet, which changes with every
+     * edit made by anyone
+     */
+    private static String probeSpreadsheet() throws Exception {
+        File file = DictionaryAccessor.getSpreadsheetRevision();
+        return DictionaryAccessor.getSpreadsheetId() + " " + file.getVersion() + " "
+            + file.getModifiedTime();
+    }
+
+    private static boolean equal(Object o1, Object o2) {
+        return (o1 == null) ? (o2 == null) : o1.equals(o2);
+    }
+}
@@ -5,15 +5,26 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
 
+import javax.xml.namespace.QName;
+
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.DefaultParser;
 import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
+import org.json.JSONArray;
+import org.json.JSONObject;
 import org.sbolstandard.core2.SBOLDocument;
 import org.sbolstandard.core2.SBOLValidationException;
+import org.sbolstandard.core2.TopLevel;
 import org.synbiohub.frontend.IdentifiedMetadata;
 import org.synbiohub.frontend.SearchCriteria;
 import org.synbiohub.frontend.SearchQuery;
@@ -34,7 +45,16 @@ public final class SynBioHubAccessor {
     private static String synbiohubServer = null;
     private static String spoofingPrefix = null;
     
-    private static SynBioHubFrontend repository = null;
+    /** Logged-in connections that are not currently in use by any thread */
+    private static BlockingQueue<SynBioHubFrontend> idleConnections = null;
+    /** Number of logged-in connections, whether idle or in use */
+    private static int openConnections = 0;
+    /** Maximum number of connections, one for each worker thread */
+    private static int maxConnections = 1;
+    /** Time a thread waits for a busy connection before checking the pool again */
+    private static final long connectionWaitMillis = 1000;
+    /** Number of results requested in each page of a SPARQL query */
+    private static final int sparqlPageSize = 10000;
     private static final int defaultConnectionTimeoutSeconds = 600;
     private static int connectionTimeoutSeconds = defaultConnectionTimeoutSeconds;
     
@@ -44,23 +64,40 @@ public final class SynBioHubAccessor {
         return collectionPrefix.substring(collectionPrefix.substring(0, collectionPrefix.length()-1).lastIndexOf('/') + 1,collectionPrefix.length() - 1);
     }
     
-    public static void logout() {
-        if(repository == null) {
+    public static synchronized void logout() {
+        if(idleConnections == null) {
                 return;
         }
 
-        repository.logout();
-        repository = null;
+        // Connections that are still checked out are logged out when
+        // they are released
+        for(SynBioHubFrontend repository : idleConnections) {
+            repository.logout();
+        }
+        idleConnections = null;
+        openConnections = 0;
         spoofingPrefix = null;
         connectionTimeoutSeconds = defaultConnectionTimeoutSeconds;
     }
 
-    /** Configure from command-line arguments */
+    /** Configure from command-line arguments, with a single connection */
     public static void configure(CommandLine cmd) {
+        configure(cmd, 1);
+    }
+
+    /**
+     * Configure from command-line arguments
+     * @param cmd the arguments
+     * @param workerCount number of worker threads, each of which may hold
+     * a connection of its own
+     */
+    public static void configure(CommandLine cmd, int workerCount) {
         // get server to connect to
         synbiohubServer = cmd.getOptionValue("server","https://hub-staging.sd2e.org/");
         if(!synbiohubServer.endsWith("/")) synbiohubServer = synbiohubServer+"/";
 
+        maxConnections = Math.max(1, workerCount);
+
         if(cmd.hasOption("timeout")) {
             String timeoutStr = cmd.getOptionValue("timeout");
             try {
@@ -93,15 +130,113 @@ public final class SynBioHubAccessor {
 
     /** Make a clean boot, tearing down old instance if needed */
     public static void restart() {
-        repository = null;
-        ensureSynBioHubConnection();
+        BlockingQueue<SynBioHubFrontend> pool = new LinkedBlockingQueue<>();
+        synchronized(SynBioHubAccessor.class) {
+            idleConnections = pool;
+            openConnections = 1; // Held for the login below
+        }
+
+        SynBioHubFrontend repository = connect();
+
+        synchronized(SynBioHubAccessor.class) {
+            if(idleConnections != pool) {
+                // The pool was shut down during the login
+                if(repository != null) {
+                    repository.logout();
+                }
+            } else if(repository == null) {
+                --openConnections;
+            } else {
+                pool.add(repository);
+            }
+        }
     }
 
-    /** Boot up link with SynBioHub repository, if possible 
-     * @throws SynBioHubException */
-    private static void ensureSynBioHubConnection() {
-        if(repository != null) return;
-        
+    /**
+     * Take a connection out of the pool, logging in a new one if all the
+     * connections are busy and the pool has not reached its maximum size.
+     * Every connection that is acquired must be given back with
+     * releaseConnection.
+     * @return a logged-in connection that is only used by the calling thread
+     */
+    private static SynBioHubFrontend acquireConnection() {
+        BlockingQueue<SynBioHubFrontend> pool = null;
+
+        while(true) {
+            boolean login = false;
+
+            synchronized(SynBioHubAccessor.class) {
+                if((pool != null) && (pool != idleConnections)) {
+                    throw new IllegalStateException("Logged out of SynBioHub while waiting for a connection");
+                }
+                if(idleConnections == null) {
+                    idleConnections = new LinkedBlockingQueue<>();
+                    openConnections = 0;
+                }
+                pool = idleConnections;
+
+                SynBioHubFrontend repository = pool.poll();
+                if(repository != null) {
+                    return repository;
+                }
+
+                // Hold a place in the pool, and log in without the lock,
+                // so that other threads can go on using the pool
+                if(openConnections < maxConnections) {
+                    ++openConnections;
+                    login = true;
+                }
+            }
+
+            if(login) {
+                SynBioHubFrontend repository = connect();
+
+                synchronized(SynBioHubAccessor.class) {
+                    if(idleConnections != pool) {
+                        if(repository != null) {
+                            repository.logout();
+                        }
+                        throw new IllegalStateException("Logged out of SynBioHub while logging in");
+                    }
+
+                    if(repository != null) {
+                        return repository;
+                    }
+
+                    --openConnections;
+                    if(openConnections == 0) {
+                        throw new IllegalStateException("Not logged into SynBioHub");
+                    }
+                }
+            }
+
+            // Wait for another thread to release its connection, checking
+            // now and then that the pool has not been shut down
+            try {
+                SynBioHubFrontend repository = pool.poll(connectionWaitMillis, TimeUnit.MILLISECONDS);
+                if(repository != null) {
+                    return repository;
+                }
+            } catch(InterruptedException e) {
+                throw new IllegalStateException("Interrupted while waiting for a SynBioHub connection");
+            }
+        }
+    }
+
+    /** Return a connection obtained from acquireConnection to the pool */
+    private static synchronized void releaseConnection(SynBioHubFrontend repository) {
+        if(idleConnections == null) {
+            // The pool was shut down while the connection was in use
+            repository.logout();
+            return;
+        }
+
+        idleConnections.add(repository);
+    }
+
+    /** Log into the SynBioHub repository
+     * @return a new connection, or null if the login failed */
+    private static SynBioHubFrontend connect() {
         try {
             log.info("Attempting to log into "+synbiohubServer);
             SynBioHubFrontend sbh;
@@ -118,13 +253,20 @@ public final class SynBioHubAccessor {
                     sbh = new SynBioHubFrontend(synbiohubServer, spoofingPrefix);
                 }
             }
-            sbh.login(login, password);
-            repository = sbh;
+            try(Metrics.Timer timer = Metrics.time(Metrics.SYNBIOHUB_SECONDS, "kind", "login")) {
+                sbh.login(login, password);
+            } catch(SynBioHubException e) {
+                Metrics.increment(Metrics.SYNBIOHUB_ERRORS, "kind", "login");
+                throw e;
+            }
             log.info("Successfully logged into SD2 SynBioHub");
+            return sbh;
         } catch(Exception e) {
             e.printStackTrace();
             log.severe("SD2 SynBioHub login failed");
         }
+
+        return null;
     }
 
     /**
@@ -133,11 +275,22 @@ public final class SynBioHubAccessor {
      * @throws SynBioHubException
      */
     public static boolean collectionExists() throws SynBioHubException {
-        if(repository == null) {
-            return false;
+        synchronized(SynBioHubAccessor.class) {
+            if((idleConnections == null) || (openConnections == 0)) {
+                return false;
+            }
         }
 
-        ArrayList<IdentifiedMetadata> metaDataList = repository.getRootCollectionMetadata();
+        ArrayList<IdentifiedMetadata> metaDataList;
+        SynBioHubFrontend repository = acquireConnection();
+        try(Metrics.Timer timer = Metrics.time(Metrics.SYNBIOHUB_SECONDS, "kind", "rootCollections")) {
+            metaDataList = repository.getRootCollectionMetadata();
+        } catch(SynBioHubException e) {
+            Metrics.increment(Metrics.SYNBIOHUB_ERRORS, "kind", "rootCollections");
+            throw e;
+        } finally {
+            releaseConnection(repository);
+        }
         boolean foundCollectionPrefix = false;
         for(IdentifiedMetadata md : metaDataList) {
             if(md.getUri().equals(collectionID.toString())) {
@@ -156,8 +309,6 @@ public final class SynBioHubAccessor {
      * @throws SynBioHubException if the connection fails
      */
     public static URI nameToURI(String name) throws SynBioHubException {
-        ensureSynBioHubConnection();
-        
         // If the name is itself a URI, just return it directly
 		try {
 			URI name_as_uri = new URL(name).toURI();
@@ -165,13 +316,31 @@ public final class SynBioHubAccessor {
 		} catch(URISyntaxException e) { /* Bad URL: ignore and leave as null */
 		} catch(MalformedURLException e) { /* Bad URL: ignore and leave as null */ }
 
-        // Search by name
+        return NameIndex.lookup(name);
+    }
+
+    /**
+     * Search SynBioHub for an object by name
+     * @param name Name to search for
+     * @return URI of the object, or null if there is not exactly one match
+     * @throws SynBioHubException
+     */
+    static URI searchByName(String name) throws SynBioHubException {
         SearchQuery query = new SearchQuery();
         SearchCriteria criterion = new SearchCriteria();
         criterion.setKey("dcterms:title");
         criterion.setValue(sanitizeNameToDisplayID(name));
         query.addCriteria(criterion);
-        ArrayList<IdentifiedMetadata> response = repository.search(query);
+        ArrayList<IdentifiedMetadata> response;
+        SynBioHubFrontend repository = acquireConnection();
+        try(Metrics.Timer timer = Metrics.time(Metrics.SYNBIOHUB_SECONDS, "kind", "search")) {
+            response = repository.search(query);
+        } catch(SynBioHubException e) {
+            Metrics.increment(Metrics.SYNBIOHUB_ERRORS, "kind", "search");
+            throw e;
+        } finally {
+            releaseConnection(repository);
+        }
         // If anything comes back, return it; else null
         if(response.isEmpty()) {
             return null;
@@ -226,11 +395,34 @@ public final class SynBioHubAccessor {
      * @throws SBOLValidationException
      */
     public static SBOLDocument retrieve(URI uri, boolean recursive) throws SynBioHubException, SBOLValidationException {
-        ensureSynBioHubConnection();
-        SBOLDocument document = repository.getSBOL(uri, recursive);
+        // Only the object itself is revalidated, so recursive
+        // retrievals are not cached
+        if(!recursive) {
+            SBOLDocument cached = DocumentCache.get(uri);
+            if(cached != null) {
+                return cached;
+            }
+        }
+
+        SBOLDocument document;
+        SynBioHubFrontend repository = acquireConnection();
+        try(Metrics.Timer timer = Metrics.time(Metrics.SYNBIOHUB_SECONDS, "kind", "getSBOL")) {
+            document = repository.getSBOL(uri, recursive);
+        } catch(SynBioHubException e) {
+            Metrics.increment(Metrics.SYNBIOHUB_ERRORS, "kind", "getSBOL");
+            throw e;
+        } finally {
+            releaseConnection(repository);
+        }
 
         // convert to our own namespace:
-        return document.changeURIPrefixVersion(localNamespace, null, "1");
+        document = document.changeURIPrefixVersion(localNamespace, null, "1");
+
+        if(!recursive) {
+            DocumentCache.put(uri, translateURI(uri), document);
+        }
+
+        return document;
     }
 
     /**
@@ -239,11 +431,180 @@ public final class SynBioHubAccessor {
      * @throws SynBioHubException 
      */
     public static void update(SBOLDocument document) throws SynBioHubException {
-        ensureSynBioHubConnection();
-        repository.addToCollection(collectionID, true, document);
+        // Cached copies of these objects are out of date
+        for(TopLevel topLevel : document.getTopLevels()) {
+            DocumentCache.invalidate(translateLocalURI(topLevel.getIdentity()));
+        }
+
+        SynBioHubFrontend repository = acquireConnection();
+        try(Metrics.Timer timer = Metrics.time(Metrics.SYNBIOHUB_SECONDS, "kind", "submit")) {
+            repository.addToCollection(collectionID, true, document);
+        } catch(SynBioHubException e) {
+            Metrics.increment(Metrics.SYNBIOHUB_ERRORS, "kind", "submit");
+            throw e;
+        } finally {
+            releaseConnection(repository);
+        }
+    }
+
+    /**
+     * Push several documents to SynBioHub in a single submission
+     * @param documents Objects to be updated
+     * @throws SynBioHubException
+     * @throws SBOLValidationException if the documents cannot be merged,
+     * such as when two of them contain the same object
+     */
+    public static void update(List<SBOLDocument> documents) throws SynBioHubException, SBOLValidationException {
+        SBOLDocument batch = newBlankDocument();
+
+        for(SBOLDocument document : documents) {
+            for(QName namespace : document.getNamespaces()) {
+                if(batch.getNamespace(URI.create(namespace.getNamespaceURI())) == null) {
+                    batch.addNamespace(namespace);
+                }
+            }
+
+            batch.createCopy(document);
+        }
+
+        update(batch);
     }
     
     
+    /**
+     * Look up the dcterms:modified date of every member of the target
+     * collection with a SPARQL query, rather than retrieving each document
+     * @return maps the SynBioHub URI of each member to its modified date
+     * @throws SynBioHubException
+     */
+    public static Map<String, String> getModifiedDates() throws SynBioHubException {
+        String query =
+            "PREFIX sbol: <http://sbols.org/v2#>\n" +
+            "PREFIX dcterms: <http://purl.org/dc/terms/>\n" +
+            "SELECT ?member ?modified WHERE {\n" +
+            "  <" + collectionID + "> sbol:member ?member .\n" +
+            "  ?member dcterms:modified ?modified .\n" +
+            "}";
+
+        Map<String, String> modifiedDates = new TreeMap<>();
+        for(JSONObject binding : sparqlSelect(query, "?member")) {
+            String member = binding.getJSONObject("member").getString("value");
+            String modified = binding.getJSONObject("modified").getString("value");
+            modifiedDates.put(member, modified);
+        }
+
+        return modifiedDates;
+    }
+
+    /**
+     * Summarize the target collection with a single SPARQL query: the
+     * number of members and the latest modified date among them.  Adding,
+     * removing or updating a member changes the summary.
+     * @return the summary, which is only meant to be compared with others
+     * @throws SynBioHubException
+     */
+    public static String getCollectionRevision() throws SynBioHubException {
+        String query =
+            "PREFIX sbol: <http://sbols.org/v2#>\n" +
+            "PREFIX dcterms: <http://purl.org/dc/terms/>\n" +
+            "SELECT (COUNT(?member) AS ?count) (MAX(?modified) AS ?latest) WHERE {\n" +
+            "  <" + collectionID + "> sbol:member ?member .\n" +
+            "  OPTIONAL { ?member dcterms:modified ?modified }\n" +
+            "}";
+
+        JSONArray results = sparqlBindings(query);
+        if(results.length() == 0) {
+            return "0";
+        }
+
+        JSONObject binding = results.getJSONObject(0);
+        String count = binding.has("count") ? binding.getJSONObject("count").getString("value") : "0";
+        String latest = binding.has("latest") ? binding.getJSONObject("latest").getString("value") : "";
+        return count + " " + latest;
+    }
+
+    /**
+     * Look up properties of every member of the target collection with a
+     * SPARQL query, rather than retrieving each document
+     * @param predicates the properties to look up
+     * @param annotationNamespace annotations in this namespace are also
+     * looked up, unless it is null
+     * @return bindings of the member, predicate and value variables
+     * @throws SynBioHubException
+     */
+    public static List<JSONObject> getMemberProperties(List<String> predicates,
+                                                       String annotationNamespace) throws SynBioHubException {
+        String predicateList = "";
+        for(String predicate : predicates) {
+            if(predicateList.length() > 0) {
+                predicateList += ", ";
+            }
+            predicateList += "<" + predicate + ">";
+        }
+
+        String filter = "?predicate IN (" + predicateList + ")";
+        if(annotationNamespace != null) {
+            filter += " ||\n         STRSTARTS(STR(?predicate), \"" + annotationNamespace + "\")";
+        }
+
+        String query =
+            "PREFIX sbol: <http://sbols.org/v2#>\n" +
+            "SELECT ?member ?predicate ?value WHERE {\n" +
+            "  <" + collectionID + "> sbol:member ?member .\n" +
+            "  ?member ?predicate ?value .\n" +
+            "  FILTER(" + filter + ")\n" +
+            "}";
+
+        return sparqlSelect(query, "?member ?predicate ?value");
+    }
+
+    /**
+     * Run a SPARQL SELECT query, a page at a time
+     * @param query the query, without ORDER BY, LIMIT or OFFSET clauses
+     * @param orderBy variables that give the results a stable order across pages
+     * @return the bindings of all the results
+     * @throws SynBioHubException
+     */
+    private static List<JSONObject> sparqlSelect(String query, String orderBy) throws SynBioHubException {
+        List<JSONObject> bindings = new ArrayList<>();
+
+        for(int offset = 0; ; offset += sparqlPageSize) {
+            String page = query + "\nORDER BY " + orderBy
+                + "\nLIMIT " + sparqlPageSize + "\nOFFSET " + offset;
+
+            JSONArray results = sparqlBindings(page);
+            for(int i=0; i<results.length(); ++i) {
+                bindings.add(results.getJSONObject(i));
+            }
+
+            if(results.length() < sparqlPageSize) {
+                break;
+            }
+        }
+
+        return bindings;
+    }
+
+    /**
+     * Run a single SPARQL SELECT query
+     * @return the bindings of the results
+     * @throws SynBioHubException
+     */
+    private static JSONArray sparqlBindings(String query) throws SynBioHubException {
+        String response;
+        SynBioHubFrontend repository = acquireConnection();
+        try(Metrics.Timer timer = Metrics.time(Metrics.SYNBIOHUB_SECONDS, "kind", "sparql")) {
+            response = repository.sparqlQuery(query);
+        } catch(SynBioHubException e) {
+            Metrics.increment(Metrics.SYNBIOHUB_ERRORS, "kind", "sparql");
+            throw e;
+        } finally {
+            releaseConnection(repository);
+        }
+
+        return new JSONObject(response).getJSONObject("results").getJSONArray("bindings");
+    }
+
     /**
      * Create a document in the local namespace
      * @return new blank document
@@ -277,9 +638,12 @@ public final class SynBioHubAccessor {
      * @throws URISyntaxException */
     public static void clean() throws SynBioHubException, URISyntaxException {
     	// Using removeSBOL method successfully deletes the object but throws SynBioHubException anyway. See SBH issue #671
+    	SynBioHubFrontend repository = acquireConnection();
     	try {
     		repository.removeSBOL(new URI("https://hub.sd2e.org/user/sd2e/scratch_test/scratch_test_collection/1"));
     	} catch (SynBioHubException e) {
+    	} finally {
+    		releaseConnection(repository);
     	}
     }
    
@@ -287,7 +651,9 @@ public final class SynBioHubAccessor {
      * Creates a collection using the configured collection prefix on the server
      */
     public static void createCollection() {
+        SynBioHubFrontend repository = null;
         try {
+            repository = acquireConnection();
             repository.createCollection(collectionToCollectionName(collectionPrefix), "1", "SD Dictionary Collection",
                                                                    "A test Collection targeted by SD2 Dictionary Maintainer",
                                                                    "", false);
@@ -296,6 +662,10 @@ public final class SynBioHubAccessor {
         } catch (Exception e) {
             System.err.println("Repository collection creation failed.");
             e.printStackTrace();
+        } finally {
+            if(repository != null) {
+                releaseConnection(repository);
+            }
         }
     }
     
@@ -314,7 +684,7 @@ public final class SynBioHubAccessor {
         options.addOption("t", "timeout", true, "connection timeout in seconds");
         
         configure(new DefaultParser().parse(options, args));
-        ensureSynBioHubConnection();
+        restart();
         createCollection();
     }
 
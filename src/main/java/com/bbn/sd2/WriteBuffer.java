@@ -0,0 +1,402 @@
+package com.bbn.sd2;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.logging.Logger;
+
+import com.google.api.client.json.JsonFactory;
+import com.google.api.client.json.jackson2.JacksonFactory;
+import com.google.api.services.sheets.v4.model.GridRange;
+import com.google.api.services.sheets.v4.model.Request;
+import com.google.api.services.sheets.v4.model.ValueRange;
+
+/**
+ * Collects the spreadsheet writes of every tab, and of the Mapping
+ * Failures tab, so that they are sent together in as few requests as
+ * possible: the values in size-capped values.batchUpdate requests, then
+ * the formatting in size-capped batchUpdate requests.  A tab stays
+ * protected until its writes are sent, since the request that removes its
+ * protection is sent in the same batchUpdate as the formatting, after it,
+ * so the writes of a protected tab are flushed as soon as it is finished.
+ * Other writes are sent at the end of the pass, or sooner if the flush
+ * policy calls for it.
+ * <p>
+ * Writes can instead be made conditional on the rows they go to being
+ * unchanged, for tabs that are not protected.  Such tabs are not flushed
+ * as they finish, so their rows are read again with a single request just
+ * before the writes are sent, and the writes to rows that were edited are
+ * dropped, so that the edits are picked up by the next pass.
+ */
+public final class WriteBuffer {
+    private static Logger log = Logger.getGlobal();
+
+    private static final JsonFactory JSON_FACTORY = JacksonFactory.getDefaultInstance();
+
+    /** When the collected writes are sent */
+    public enum FlushPolicy {
+        /** At the end of each pass */
+        cycle,
+        /** Once they are estimated to take flushBytes */
+        size,
+        /** Once the oldest has waited flushAgeMillis */
+        age
+    }
+
+    public static FlushPolicy flushPolicy = FlushPolicy.cycle;
+
+    /** Size of the writes that triggers a flush under the size policy */
+    public static long flushBytes = 1000000;
+
+    /** Age of the oldest write that triggers a flush under the age policy */
+    public static long flushAgeMillis = 60000;
+
+    /** Largest estimated size of a single request to Google */
+    public static long maxRequestBytes = 2000000;
+
+    private static List<ValueRange> values = new ArrayList<>();
+    private static List<Request> requests = new ArrayList<>();
+    /** Protected ranges to be removed once the writes are sent */
+    private static List<Integer> rangeIds = new ArrayList<>();
+    /** Called once the writes are sent */
+    private static List<Runnable> callbacks = new ArrayList<>();
+    /** Rows that must be unchanged when the writes are sent, by tab then row */
+    private static Map<String, Map<Integer, List<Object>>> expectedRows = new LinkedHashMap<>();
+
+    /** Estimated size of the collected writes */
+    private static long bytes = 0;
+
+    /** Time the oldest collected write was added, or 0 */
+    private static long oldestMillis = 0;
+
+    private WriteBuffer() {} // static-only class
+
+    /**
+     * Collect writes to be sent later
+     * @param tabValues values to be written
+     * @param tabRequests formatting requests
+     * @param rangeId ID of a protected range to be removed once the writes
+     * are sent, or -1
+     * @param written called once the writes have been sent, or null
+     */
+    public static synchronized void add(List<ValueRange> tabValues, List<Request> tabRequests,
+                                        int rangeId, Runnable written) {
+        if(tabValues.isEmpty() && tabRequests.isEmpty() && (rangeId < 0) && (written == null)) {
+            return;
+        }
+
+        if(oldestMillis == 0) {
+            oldestMillis = System.currentTimeMillis();
+        }
+
+        for(ValueRange valueRange : tabValues) {
+            values.add(valueRange);
+            bytes += estimateBytes(valueRange);
+        }
+        for(Request request : tabRequests) {
+            requests.add(request);
+            bytes += estimateBytes(request);
+        }
+        if(rangeId >= 0) {
+            rangeIds.add(rangeId);
+        }
+        if(written != null) {
+            callbacks.add(written);
+        }
+    }
+
+    /**
+     * Make the writes to the rows of a tab conditional on the rows still
+     * holding the values they were last read with.  If the header row of
+     * the tab is among them and has changed, all the writes to the rows
+     * are dropped.
+     * @param tab name of the tab
+     * @param rows values of the rows, by row then column
+     */
+    public static synchronized void expect(String tab, Map<Integer, List<Object>> rows) {
+        if(rows.isEmpty()) {
+            return;
+        }
+
+        if(oldestMillis == 0) {
+            oldestMillis = System.currentTimeMillis();
+        }
+
+        Map<Integer, List<Object>> tabRows = expectedRows.get(tab);
+        if(tabRows == null) {
+            tabRows = new TreeMap<>();
+            expectedRows.put(tab, tabRows);
+        }
+        tabRows.putAll(rows);
+    }
+
+    /** @return true if there are no writes waiting to be sent */
+    public static synchronized boolean isEmpty() {
+        return oldestMillis == 0;
+    }
+
+    /**
+     * Send the collected writes if the flush policy calls for it
+     * @return the rows that were edited, whose writes were dropped, by tab
+     * @throws IOException if the writes could not be sent.  The protected
+     * ranges are removed even then
+     */
+    public static synchronized Map<String, Set<Integer>> flushIfDue() throws IOException {
+        if(isEmpty()) {
+            return new TreeMap<>();
+        }
+
+        switch(flushPolicy) {
+        case size:
+            if(bytes >= flushBytes) {
+                return flush();
+            }
+            break;
+        case age:
+            if(System.currentTimeMillis() - oldestMillis >= flushAgeMillis) {
+                return flush();
+            }
+            break;
+        default:
+            break;
+        }
+        return new TreeMap<>();
+    }
+
+    /**
+     * Send the collected writes
+     * @return the rows that were edited, whose writes were dropped, by tab
+     * @throws IOException if the writes could not be sent.  The protected
+     * ranges are removed even then
+     */
+    public static synchronized Map<String, Set<Integer>> flush() throws IOException {
+        Map<String, Set<Integer>> editedRows = new TreeMap<>();
+        if(isEmpty()) {
+            return editedRows;
+        }
+
+        List<ValueRange> flushValues = values;
+        List<Request> flushRequests = requests;
+        List<Integer> flushRangeIds = rangeIds;
+        List<Runnable> flushCallbacks = callbacks;
+        Map<String, Map<Integer, List<Object>>> flushExpectedRows = expectedRows;
+
+        values = new ArrayList<>();
+        requests = new ArrayList<>();
+        rangeIds = new ArrayList<>();
+        callbacks = new ArrayList<>();
+        expectedRows = new LinkedHashMap<>();
+        bytes = 0;
+        oldestMillis = 0;
+
+        try(Metrics.Timer timer = Metrics.phase("flush_writes")) {
+            int callCount = 0;
+            int valuesSaved = 0;
+            int requestsSaved = 0;
+            try {
+                if(!flushExpectedRows.isEmpty()) {
+                    editedRows = findEditedRows(flushExpectedRows);
+                    ++callCount;
+                    if(!editedRows.isEmpty()) {
+                        flushValues = dropEditedValues(flushValues, editedRows);
+                        flushRequests = dropEditedRequests(flushRequests, editedRows);
+                        log.warning("Rows were edited before they could be written, on "
+                                    + editedRows.keySet() + ".  They will be updated by the next pass");
+                    }
+                }
+
+                int valueCount = flushValues.size();
+                flushValues = WritePlanner.merge(flushValues);
+                valuesSaved = valueCount - flushValues.size();
+                int requestCount = flushRequests.size();
+                flushRequests = FormattingPlanner.coalesce(flushRequests);
+                requestsSaved = requestCount - flushRequests.size();
+                Metrics.add(Metrics.GOOGLE_REQUESTS_SAVED, valuesSaved, "kind", "values");
+                Metrics.add(Metrics.GOOGLE_REQUESTS_SAVED, requestsSaved, "kind", "format");
+
+                for(List<ValueRange> batch : split(flushValues)) {
+                    DictionaryAccessor.batchUpdateValues(batch);
+                    ++callCount;
+                }
+
+                // The protection of each tab is removed after its
+                // formatting, and only if the batch containing both
+                // succeeds
+                for(Integer rangeId : flushRangeIds) {
+                    flushRequests.add(DictionaryAccessor.unprotectRangeRequest(rangeId));
+                }
+                for(List<Request> batch : split(flushRequests)) {
+                    DictionaryAccessor.batchUpdateRequests(batch);
+                    ++callCount;
+                    for(Request request : batch) {
+                        if(request.getDeleteProtectedRange() != null) {
+                            flushRangeIds.remove(request.getDeleteProtectedRange()
+                                                 .getProtectedRangeId());
+                        }
+                    }
+                }
+            } finally {
+                unprotect(flushRangeIds);
+            }
+
+            log.info("Wrote " + flushValues.size() + " value ranges and "
+                     + flushRequests.size() + " requests in " + callCount
+                     + " calls.  Merging saved " + valuesSaved + " value ranges and "
+                     + requestsSaved + " formatting requests");
+        }
+
+        for(Runnable written : flushCallbacks) {
+            written.run();
+        }
+
+        return editedRows;
+    }
+
+    /**
+     * Read rows again, with a single request for all the tabs
+     * @param rows expected values of the rows, by tab then row
+     * @return the rows that have changed, by tab.  Every row of a tab is
+     * included if its header row has changed
+     */
+    private static Map<String, Set<Integer>> findEditedRows(Map<String, Map<Integer, List<Object>>> rows)
+        throws IOException {
+        List<String> ranges = new ArrayList<>();
+        List<String> rangeTabs = new ArrayList<>();
+        List<Integer> rangeStarts = new ArrayList<>();
+        for(String tab : rows.keySet()) {
+            for(int[] span : MaintainDictionary.rowSpans(rows.get(tab).keySet())) {
+                ranges.add(tab + "!" + span[0] + ":" + span[1]);
+                rangeTabs.add(tab);
+                rangeStarts.add(span[0]);
+            }
+        }
+
+        List<ValueRange> valueRanges = DictionaryAccessor.batchGet(ranges);
+
+        Map<String, Set<Integer>> edited = new TreeMap<>();
+        for(int i=0; i<ranges.size(); ++i) {
+            String tab = rangeTabs.get(i);
+            Map<Integer, List<Object>> tabRows = rows.get(tab);
+            List<List<Object>> values = valueRanges.get(i).getValues();
+
+            for(int row=rangeStarts.get(i); tabRows.containsKey(row); ++row) {
+                int offset = row - rangeStarts.get(i);
+                List<Object> current = ((values == null) || (offset >= values.size()))
+                    ? new ArrayList<>() : values.get(offset);
+                if(current.equals(tabRows.get(row))) {
+                    continue;
+                }
+
+                Set<Integer> editedRows = edited.get(tab);
+                if(editedRows == null) {
+                    editedRows = new TreeSet<>();
+                    edited.put(tab, editedRows);
+                }
+                if(row == SpreadsheetSnapshot.HEADER_ROW) {
+                    // The columns may have moved
+                    editedRows.addAll(tabRows.keySet());
+                } else {
+                    editedRows.add(row);
+                }
+            }
+        }
+
+        return edited;
+    }
+
+    private static List<ValueRange> dropEditedValues(List<ValueRange> values,
+                                                     Map<String, Set<Integer>> editedRows) {
+        List<ValueRange> kept = new ArrayList<>();
+        for(ValueRange valueRange : values) {
+            WritePlanner.Cell cell = WritePlanner.parseCell(valueRange);
+            if((cell != null) && editedRows.containsKey(cell.tab)
+               && editedRows.get(cell.tab).contains(cell.row)) {
+                continue;
+            }
+            kept.add(valueRange);
+        }
+        return kept;
+    }
+
+    private static List<Request> dropEditedRequests(List<Request> requests,
+                                                    Map<String, Set<Integer>> editedRows) {
+        // Rows of the sheets, which Google indexes from zero
+        Map<Integer, Set<Integer>> sheetRows = new TreeMap<>();
+        for(String tab : editedRows.keySet()) {
+            Set<Integer> rows = new HashSet<>();
+            for(int row : editedRows.get(tab)) {
+                rows.add(row - 1);
+            }
+            sheetRows.put(DictionaryAccessor.getCachedSheetProperties(tab)
+                          .getProperties().getSheetId(), rows);
+        }
+
+        List<Request> kept = new ArrayList<>();
+        for(Request request : requests) {
+            if((request.getRepeatCell() != null) && (request.getRepeatCell().getRange() != null)) {
+                GridRange range = request.getRepeatCell().getRange();
+                Set<Integer> rows = sheetRows.get(range.getSheetId());
+                if((rows != null) && rows.contains(range.getStartRowIndex())) {
+                    continue;
+                }
+            }
+            kept.add(request);
+        }
+        return kept;
+    }
+
+    /**
+     * Remove the protection of tabs whose writes failed, so that they are
+     * not left locked
+     */
+    private static void unprotect(List<Integer> rangeIds) {
+        for(Integer rangeId : rangeIds) {
+            try {
+                DictionaryAccessor.unprotectRange(rangeId);
+            } catch(Exception e) {
+                log.warning("Failed to unprotect range " + rangeId + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Split writes into batches whose estimated size is below
+     * maxRequestBytes.  A batch always holds at least one write.
+     */
+    static <T> List<List<T>> split(List<T> writes) {
+        List<List<T>> batches = new ArrayList<>();
+        List<T> batch = new ArrayList<>();
+        long batchBytes = 0;
+
+        for(T write : writes) {
+            long writeBytes = estimateBytes(write);
+            if(!batch.isEmpty() && (batchBytes + writeBytes > maxRequestBytes)) {
+                batches.add(batch);
+                batch = new ArrayList<>();
+                batchBytes = 0;
+            }
+            batch.add(write);
+            batchBytes += writeBytes;
+        }
+        if(!batch.isEmpty()) {
+            batches.add(batch);
+        }
+
+        return batches;
+    }
+
+    /** @return the size of a write, as JSON */
+    private static long estimateBytes(Object write) {
+        try {
+            return JSON_FACTORY.toString(write).length();
+        } catch(IOException e) {
+            return write.toString().length();
+        }
+    }
+}
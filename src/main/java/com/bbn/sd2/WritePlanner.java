@@ -0,0 +1,277 @@
+package com.bbn.sd2;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.google.api.services.sheets.v4.model.ValueRange;
+
+/**
+ * Merges the single cell writes queued during a pass, such as the URI,
+ * Status and Last Updated cells of each row, into one range per run of
+ * adjacent cells.  Cells are first merged down each column, since rows
+ * written in the same pass tend to be adjacent, and the cells left over
+ * are then merged along each row.  Only cells that are being written are
+ * merged: the cells between them are not filled in, since a value read
+ * earlier in the pass could overwrite an edit made since.  Writes of
+ * cells that already hold the value being written can also be dropped.
+ */
+public final class WritePlanner {
+    /** A single cell, such as Reagent!C12 */
+    private static final Pattern cellPattern = Pattern.compile("(.+)!([A-Z]+)([1-9][0-9]*)");
+
+    private WritePlanner() {} // static-only class
+
+    /** One cell write */
+    static final class Cell {
+        final String tab;
+        final int column;
+        final int row;
+        final Object value;
+
+        Cell(String tab, int column, int row, Object value) {
+            this.tab = tab;
+            this.column = column;
+            this.row = row;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Merge the writes of adjacent cells.  The result has the same effect
+     * as the writes applied in order: where two writes are to the same
+     * cell, the later one wins, and writes of more than one cell keep
+     * their place relative to the ones around them.
+     * @param values the writes
+     * @return the merged writes
+     */
+    public static List<ValueRange> merge(List<ValueRange> values) {
+        List<ValueRange> planned = new ArrayList<>();
+        List<Cell> segment = new ArrayList<>();
+
+        for(ValueRange valueRange : values) {
+            Cell cell = parseCell(valueRange);
+            if(cell != null) {
+                segment.add(cell);
+            } else {
+                planned.addAll(mergeCells(segment));
+                segment.clear();
+                planned.add(valueRange);
+            }
+        }
+        planned.addAll(mergeCells(segment));
+
+        return planned;
+    }
+
+    /**
+     * Drop the writes of cells that already hold the value being written.
+     * Only the single cell writes before the first write of a larger
+     * range are checked, since the cells of that range are not known, and
+     * a cell is only dropped if the last value written to it is the one it
+     * holds, so the writes left have the same effect.
+     * @param values the writes
+     * @param tab name of the tab the rows are from
+     * @param rows values of the rows of the tab, by row then column.  Rows
+     * that are not in the map are always written
+     * @return the writes that change a cell
+     */
+    public static List<ValueRange> dropUnchanged(List<ValueRange> values, String tab,
+                                                 Map<Integer, List<Object>> rows) {
+        List<Cell> cells = new ArrayList<>();
+        for(ValueRange valueRange : values) {
+            Cell cell = parseCell(valueRange);
+            if(cell == null) {
+                break;
+            }
+            cells.add(cell);
+        }
+
+        // The last value written to each cell, by row then column
+        Map<Integer, Map<Integer, Object>> lastValues = new HashMap<>();
+        for(Cell cell : cells) {
+            Map<Integer, Object> columns = lastValues.get(cell.row);
+            if(columns == null) {
+                columns = new HashMap<>();
+                lastValues.put(cell.row, columns);
+            }
+            columns.put(cell.column, cell.value);
+        }
+
+        List<ValueRange> changed = new ArrayList<>();
+        for(int i=0; i<values.size(); ++i) {
+            if(i < cells.size()) {
+                Cell cell = cells.get(i);
+                if(cell.tab.equals(tab) && rows.containsKey(cell.row)
+                   && sameText(lastValues.get(cell.row).get(cell.column),
+                               cellValue(rows.get(cell.row), cell.column))) {
+                    continue;
+                }
+            }
+            changed.add(values.get(i));
+        }
+
+        return changed;
+    }
+
+    private static Object cellValue(List<Object> row, int column) {
+        if((row == null) || (column >= row.size())) {
+            return null;
+        }
+        return row.get(column);
+    }
+
+    /** @return true if two cells show the same text, treating null as empty */
+    private static boolean sameText(Object v1, Object v2) {
+        String s1 = (v1 == null) ? "" : v1.toString();
+        String s2 = (v2 == null) ? "" : v2.toString();
+        return s1.equals(s2);
+    }
+
+    /**
+     * @return the write of a single cell, or null if the write is to a
+     * larger range
+     */
+    static Cell parseCell(ValueRange valueRange) {
+        List<List<Object>> values = valueRange.getValues();
+        if((valueRange.getRange() == null) || (values == null) || (values.size() != 1)
+           || (values.get(0) == null) || (values.get(0).size() != 1)) {
+            return null;
+        }
+
+        Matcher matcher = cellPattern.matcher(valueRange.getRange());
+        if(!matcher.matches()) {
+            return null;
+        }
+
+        return new Cell(matcher.group(1), columnIndex(matcher.group(2)),
+                        Integer.parseInt(matcher.group(3)), values.get(0).get(0));
+    }
+
+    private static List<ValueRange> mergeCells(List<Cell> cells) {
+        // The last write of each cell, by tab, column, then row
+        Map<String, Map<Integer, Map<Integer, Cell>>> tabs = new LinkedHashMap<>();
+        for(Cell cell : cells) {
+            Map<Integer, Map<Integer, Cell>> columns = tabs.get(cell.tab);
+            if(columns == null) {
+                columns = new TreeMap<>();
+                tabs.put(cell.tab, columns);
+            }
+
+            Map<Integer, Cell> rows = columns.get(cell.column);
+            if(rows == null) {
+                rows = new TreeMap<>();
+                columns.put(cell.column, rows);
+            }
+            rows.put(cell.row, cell);
+        }
+
+        List<ValueRange> merged = new ArrayList<>();
+        for(String tab : tabs.keySet()) {
+            // Runs down each column, and the single cells left over
+            Map<Integer, Map<Integer, Cell>> singleCells = new TreeMap<>();
+
+            for(Map<Integer, Cell> rows : tabs.get(tab).values()) {
+                List<Cell> run = new ArrayList<>();
+                for(Cell cell : rows.values()) {
+                    if(!run.isEmpty() && (cell.row != run.get(run.size() - 1).row + 1)) {
+                        addColumnRun(run, merged, singleCells);
+                        run = new ArrayList<>();
+                    }
+                    run.add(cell);
+                }
+                addColumnRun(run, merged, singleCells);
+            }
+
+            // Runs along each row, of the cells that were not merged
+            // down a column
+            for(Map<Integer, Cell> columns : singleCells.values()) {
+                List<Cell> run = new ArrayList<>();
+                for(Cell cell : columns.values()) {
+                    if(!run.isEmpty() && (cell.column != run.get(run.size() - 1).column + 1)) {
+                        merged.add(rowRange(run));
+                        run = new ArrayList<>();
+                    }
+                    run.add(cell);
+                }
+                if(!run.isEmpty()) {
+                    merged.add(rowRange(run));
+                }
+            }
+        }
+
+        return merged;
+    }
+
+    private static void addColumnRun(List<Cell> run, List<ValueRange> merged,
+                                     Map<Integer, Map<Integer, Cell>> singleCells) {
+        if(run.isEmpty()) {
+            return;
+        }
+
+        if(run.size() == 1) {
+            Cell cell = run.get(0);
+            Map<Integer, Cell> columns = singleCells.get(cell.row);
+            if(columns == null) {
+                columns = new TreeMap<>();
+                singleCells.put(cell.row, columns);
+            }
+            columns.put(cell.column, cell);
+            return;
+        }
+
+        Cell first = run.get(0);
+        Cell last = run.get(run.size() - 1);
+        List<List<Object>> values = new ArrayList<>();
+        for(Cell cell : run) {
+            List<Object> row = new ArrayList<>();
+            row.add(cell.value);
+            values.add(row);
+        }
+
+        merged.add(new ValueRange().setRange(first.tab + "!" + columnName(first.column) + first.row
+                                             + ":" + columnName(last.column) + last.row)
+                   .setValues(values));
+    }
+
+    private static ValueRange rowRange(List<Cell> run) {
+        Cell first = run.get(0);
+        Cell last = run.get(run.size() - 1);
+
+        List<Object> row = new ArrayList<>();
+        for(Cell cell : run) {
+            row.add(cell.value);
+        }
+        List<List<Object>> values = new ArrayList<>();
+        values.add(row);
+
+        String range = first.tab + "!" + columnName(first.column) + first.row;
+        if(run.size() > 1) {
+            range += ":" + columnName(last.column) + last.row;
+        }
+        return new ValueRange().setRange(range).setValues(values);
+    }
+
+    /** @return the index of a column, counting from zero for A */
+    static int columnIndex(String name) {
+        int index = 0;
+        for(int i=0; i<name.length(); ++i) {
+            index = index * 26 + (name.charAt(i) - 'A' + 1);
+        }
+        return index - 1;
+    }
+
+    /** @return the name of a column, such as A or AB */
+    static String columnName(int index) {
+        StringBuilder name = new StringBuilder();
+        for(int i=index + 1; i>0; i=(i - 1) / 26) {
+            name.insert(0, (char)('A' + (i - 1) % 26));
+        }
+        return name.toString();
+    }
+}
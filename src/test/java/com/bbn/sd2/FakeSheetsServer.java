@@ -0,0 +1,983 @@
+package com.bbn.sd2;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+import com.google.api.client.json.GenericJson;
+import com.google.api.client.json.JsonFactory;
+import com.google.api.client.json.jackson2.JacksonFactory;
+import com.google.api.client.util.DateTime;
+import com.google.api.services.drive.model.File;
+import com.google.api.services.drive.model.User;
+import com.google.api.services.sheets.v4.model.AddProtectedRangeResponse;
+import com.google.api.services.sheets.v4.model.AddSheetResponse;
+import com.google.api.services.sheets.v4.model.BatchGetValuesResponse;
+import com.google.api.services.sheets.v4.model.BatchUpdateSpreadsheetRequest;
+import com.google.api.services.sheets.v4.model.BatchUpdateSpreadsheetResponse;
+import com.google.api.services.sheets.v4.model.BatchUpdateValuesRequest;
+import com.google.api.services.sheets.v4.model.BatchUpdateValuesResponse;
+import com.google.api.services.sheets.v4.model.CellData;
+import com.google.api.services.sheets.v4.model.CellFormat;
+import com.google.api.services.sheets.v4.model.CopySheetToAnotherSpreadsheetRequest;
+import com.google.api.services.sheets.v4.model.GridData;
+import com.google.api.services.sheets.v4.model.GridProperties;
+import com.google.api.services.sheets.v4.model.GridRange;
+import com.google.api.services.sheets.v4.model.ProtectedRange;
+import com.google.api.services.sheets.v4.model.RepeatCellRequest;
+import com.google.api.services.sheets.v4.model.Request;
+import com.google.api.services.sheets.v4.model.Response;
+import com.google.api.services.sheets.v4.model.RowData;
+import com.google.api.services.sheets.v4.model.Sheet;
+import com.google.api.services.sheets.v4.model.SheetProperties;
+import com.google.api.services.sheets.v4.model.Spreadsheet;
+import com.google.api.services.sheets.v4.model.UpdateValuesResponse;
+import com.google.api.services.sheets.v4.model.ValueRange;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Stand-in for the parts of the Google Sheets v4 API that the dictionary
+ * uses, served on localhost: values get, batchGet, update and
+ * batchUpdate, spreadsheets get (with field masks), create and
+ * batchUpdate, and sheet copyTo.  Spreadsheets are kept in memory.
+ * The Drive v3 files get request is answered with the version, modified
+ * time and last modifying user of a spreadsheet.
+ *
+ * The server can add latency to every request and enforce per-minute
+ * read and write quotas, answering 429 when they are exceeded, so that
+ * full passes of the dictionary can be timed without Google.  Point
+ * DictionaryAccessor at it with the sheets_url option.
+ */
+public class FakeSheetsServer {
+    private static final JsonFactory JSON_FACTORY = JacksonFactory.getDefaultInstance();
+
+    private static final Pattern CELL = Pattern.compile("([A-Z]*)([0-9]*)");
+
+    /** Milliseconds added to every request */
+    public volatile long latencyMillis = 0;
+    /** Read requests allowed per minute, or zero for no quota */
+    public volatile int readRequestsPerMinute = 0;
+    /** Write requests allowed per minute, or zero for no quota */
+    public volatile int writeRequestsPerMinute = 0;
+    /** Period over which the quotas are counted */
+    public volatile long quotaWindowMillis = 60000;
+    /** Retry-After header sent with 429 responses, or negative to send none, as Google does */
+    public volatile int retryAfterSeconds = -1;
+
+    private final AtomicLong readCount = new AtomicLong();
+    private final AtomicLong writeCount = new AtomicLong();
+    private final AtomicLong throttledCount = new AtomicLong();
+
+    /** Times of the requests made in the current quota window */
+    private final Deque<Long> recentReads = new ArrayDeque<>();
+    private final Deque<Long> recentWrites = new ArrayDeque<>();
+
+    private final Map<String, FakeSpreadsheet> spreadsheets = new HashMap<>();
+    private int nextSpreadsheetId = 1;
+    private int nextSheetId = 1000;
+    private int nextProtectedRangeId = 1;
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    private static class FakeSheet {
+        SheetProperties properties;
+
+        /** Cell values, by row then column */
+        List<List<String>> values = new ArrayList<>();
+
+        /** Cell formats, by row then column */
+        Map<Integer, Map<Integer, CellFormat>> formats = new TreeMap<>();
+
+        List<ProtectedRange> protectedRanges = new ArrayList<>();
+    }
+
+    private static class FakeSpreadsheet {
+        String id;
+        List<FakeSheet> sheets = new ArrayList<>();
+
+        /** Drive metadata, changed by every write */
+        long version = 1;
+        long modifiedMillis = System.currentTimeMillis();
+        boolean modifiedThroughApi = false;
+
+        void touch(boolean throughApi) {
+            ++version;
+            modifiedMillis = System.currentTimeMillis();
+            modifiedThroughApi = throughApi;
+        }
+    }
+
+    /** A range of cells.  The end row and column are exclusive */
+    private static class CellRange {
+        FakeSheet sheet;
+        int startRow = 0;
+        int endRow = Integer.MAX_VALUE;
+        int startColumn = 0;
+        int endColumn = Integer.MAX_VALUE;
+    }
+
+    /** Error reported to the client in the format Google uses */
+    private static class SheetsError extends Exception {
+        static final long serialVersionUID = 0;
+        final int code;
+
+        SheetsError(int code, String message) {
+            super(message);
+            this.code = code;
+        }
+    }
+
+    /**
+     * Start serving on an ephemeral port
+     */
+    public void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> handle(exchange));
+
+        // Requests are served concurrently, as they are by Google
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /** @return the root URL to pass to the sheets_url option */
+    public String getRootUrl() {
+        return "http://localhost:" + server.getAddress().getPort() + "/";
+    }
+
+    public long getReadCount() {
+        return readCount.get();
+    }
+
+    public long getWriteCount() {
+        return writeCount.get();
+    }
+
+    public long getThrottledCount() {
+        return throttledCount.get();
+    }
+
+    /**
+     * Create an empty spreadsheet
+     * @param tabs titles of the tabs in the spreadsheet
+     * @return the ID of the spreadsheet
+     */
+    public synchronized String createSpreadsheet(String... tabs) {
+        FakeSpreadsheet spreadsheet = new FakeSpreadsheet();
+        spreadsheet.id = "fake-spreadsheet-" + nextSpreadsheetId++;
+        spreadsheets.put(spreadsheet.id, spreadsheet);
+
+        for(String tab : tabs) {
+            addSheet(spreadsheet, new SheetProperties().setTitle(tab));
+        }
+
+        return spreadsheet.id;
+    }
+
+    /**
+     * Write values to a spreadsheet without going through the API, as
+     * an editor of the spreadsheet would
+     * @param spreadsheetId ID of the spreadsheet
+     * @param range A1 notation of the top left cell, with the tab
+     * @param values the values, by row then column
+     */
+    public synchronized void setValues(String spreadsheetId, String range,
+                                       List<List<Object>> values) {
+        try {
+            FakeSpreadsheet spreadsheet = getSpreadsheet(spreadsheetId);
+            writeValues(parseRange(spreadsheet, range), values);
+            spreadsheet.touch(false);
+        } catch(SheetsError e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    /**
+     * Fill a tab in the layout of the dictionary: a status row, a
+     * header row, then one row per entry
+     * @param spreadsheetId ID of the spreadsheet
+     * @param tab title of the tab, which must already exist
+     * @param headers the column headers
+     * @param rows the entries, which may number in the tens of thousands
+     */
+    public synchronized void setDictionaryTab(String spreadsheetId, String tab,
+                                              List<String> headers, List<List<Object>> rows) {
+        List<List<Object>> values = new ArrayList<>();
+        values.add(new ArrayList<>(Arrays.asList("")));
+        values.add(new ArrayList<>(headers));
+        values.addAll(rows);
+        setValues(spreadsheetId, tab + "!A1", values);
+    }
+
+    /**
+     * Read values from a spreadsheet without going through the API
+     * @param spreadsheetId ID of the spreadsheet
+     * @param range A1 notation of the range, with the tab
+     * @return the values, by row then column
+     */
+    public synchronized List<List<Object>> getValues(String spreadsheetId, String range) {
+        try {
+            List<List<Object>> values = readValues(parseRange(getSpreadsheet(spreadsheetId), range));
+            return (values == null) ? new ArrayList<>() : values;
+        } catch(SheetsError e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    /**
+     * @return the format of a cell, or null if it has none
+     */
+    public synchronized CellFormat getFormat(String spreadsheetId, String tab, int row, int column) {
+        try {
+            Map<Integer, CellFormat> rowFormats = findSheet(getSpreadsheet(spreadsheetId), tab).formats.get(row);
+            return (rowFormats == null) ? null : rowFormats.get(column);
+        } catch(SheetsError e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    /**
+     * @return the protected ranges of a tab
+     */
+    public synchronized List<ProtectedRange> getProtectedRanges(String spreadsheetId, String tab) {
+        try {
+            return new ArrayList<>(findSheet(getSpreadsheet(spreadsheetId), tab).protectedRanges);
+        } catch(SheetsError e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            boolean read = exchange.getRequestMethod().equals("GET");
+            if(!admit(read)) {
+                throttledCount.incrementAndGet();
+                if(retryAfterSeconds >= 0) {
+                    exchange.getResponseHeaders().set("Retry-After", Integer.toString(retryAfterSeconds));
+                }
+                sendError(exchange, new SheetsError(429, "Quota exceeded for quota metric '"
+                                                    + (read ? "Read" : "Write") + " requests'"));
+                return;
+            }
+
+            if(latencyMillis > 0) {
+                Thread.sleep(latencyMillis);
+            }
+
+            GenericJson response;
+            synchronized(this) {
+                response = dispatch(exchange);
+            }
+
+            byte[] bytes = JSON_FACTORY.toByteArray(response);
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+            exchange.sendResponseHeaders(200, bytes.length);
+            try(OutputStream os = exchange.getResponseBody()) {
+                os.write(bytes);
+            }
+        } catch(SheetsError e) {
+            sendError(exchange, e);
+        } catch(Exception e) {
+            sendError(exchange, new SheetsError(500, String.valueOf(e.getMessage())));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Count a request against its quota
+     * @return false if the request exceeds the quota
+     */
+    private boolean admit(boolean read) {
+        int quota = read ? readRequestsPerMinute : writeRequestsPerMinute;
+        Deque<Long> recent = read ? recentReads : recentWrites;
+        (read ? readCount : writeCount).incrementAndGet();
+
+        synchronized(recent) {
+            long now = System.currentTimeMillis();
+            while(!recent.isEmpty() && (recent.peekFirst() <= now - quotaWindowMillis)) {
+                recent.removeFirst();
+            }
+
+            if((quota > 0) && (recent.size() >= quota)) {
+                return false;
+            }
+
+            recent.addLast(now);
+            return true;
+        }
+    }
+
+    private static void sendError(HttpExchange exchange, SheetsError e) throws IOException {
+        GenericJson error = new GenericJson();
+        error.set("code", e.code);
+        error.set("message", e.getMessage());
+        error.set("status", (e.code == 429) ? "RESOURCE_EXHAUSTED" : "INVALID_ARGUMENT");
+        GenericJson body = new GenericJson();
+        body.set("error", error);
+
+        byte[] bytes = JSON_FACTORY.toByteArray(body);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+        exchange.sendResponseHeaders(e.code, bytes.length);
+        try(OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+
+    private GenericJson dispatch(HttpExchange exchange) throws Exception {
+        String method = exchange.getRequestMethod();
+        String path = exchange.getRequestURI().getPath();
+        Map<String, List<String>> query = parseQuery(exchange.getRequestURI().getRawQuery());
+
+        String drivePrefix = "/drive/v3/files/";
+        if(path.startsWith(drivePrefix) && method.equals("GET")) {
+            return driveMetadata(getSpreadsheet(path.substring(drivePrefix.length())));
+        }
+
+        String prefix = "/v4/spreadsheets";
+        if(!path.startsWith(prefix)) {
+            throw new SheetsError(404, "Unknown path " + path);
+        }
+        path = path.substring(prefix.length());
+
+        if(path.isEmpty() && method.equals("POST")) {
+            return createSpreadsheet(parseBody(exchange, Spreadsheet.class));
+        }
+
+        Matcher matcher = Pattern.compile("/([^/:]+)(.*)").matcher(path);
+        if(!matcher.matches()) {
+            throw new SheetsError(404, "Unknown path " + path);
+        }
+        FakeSpreadsheet spreadsheet = getSpreadsheet(matcher.group(1));
+        String rest = matcher.group(2);
+        if(!method.equals("GET")) {
+            spreadsheet.touch(true);
+        }
+
+        if(rest.isEmpty() && method.equals("GET")) {
+            return getSpreadsheet(spreadsheet, query.get("ranges"), first(query.get("fields")));
+        }
+
+        if(rest.equals(":batchUpdate") && method.equals("POST")) {
+            return batchUpdate(spreadsheet, parseBody(exchange, BatchUpdateSpreadsheetRequest.class));
+        }
+
+        if(rest.equals("/values:batchGet") && method.equals("GET")) {
+            List<ValueRange> valueRanges = new ArrayList<>();
+            List<String> ranges = query.get("ranges");
+            if(ranges != null) {
+                for(String range : ranges) {
+                    valueRanges.add(getValues(spreadsheet, range));
+                }
+            }
+            return new BatchGetValuesResponse().setSpreadsheetId(spreadsheet.id)
+                .setValueRanges(valueRanges);
+        }
+
+        if(rest.equals("/values:batchUpdate") && method.equals("POST")) {
+            BatchUpdateValuesRequest request = parseBody(exchange, BatchUpdateValuesRequest.class);
+            int cellCount = 0;
+            if(request.getData() != null) {
+                for(ValueRange valueRange : request.getData()) {
+                    cellCount += writeValues(parseRange(spreadsheet, valueRange.getRange()),
+                                             valueRange.getValues());
+                }
+            }
+            return new BatchUpdateValuesResponse().setSpreadsheetId(spreadsheet.id)
+                .setTotalUpdatedCells(cellCount);
+        }
+
+        if(rest.startsWith("/values/")) {
+            String range = rest.substring("/values/".length());
+            if(method.equals("GET")) {
+                return getValues(spreadsheet, range);
+            }
+            if(method.equals("PUT")) {
+                ValueRange valueRange = parseBody(exchange, ValueRange.class);
+                int cellCount = writeValues(parseRange(spreadsheet, range), valueRange.getValues());
+                return new UpdateValuesResponse().setSpreadsheetId(spreadsheet.id)
+                    .setUpdatedRange(range).setUpdatedCells(cellCount);
+            }
+        }
+
+        matcher = Pattern.compile("/sheets/([0-9]+):copyTo").matcher(rest);
+        if(matcher.matches() && method.equals("POST")) {
+            CopySheetToAnotherSpreadsheetRequest request =
+                parseBody(exchange, CopySheetToAnotherSpreadsheetRequest.class);
+            FakeSpreadsheet destination = getSpreadsheet(request.getDestinationSpreadsheetId());
+            destination.touch(true);
+            return copySheet(findSheet(spreadsheet, Integer.parseInt(matcher.group(1))), destination);
+        }
+
+        throw new SheetsError(404, "Unsupported request " + method + " " + path);
+    }
+
+    /**
+     * Answer Drive files get.  Changes made through the API are made by
+     * the caller, and those made by setValues are made by someone else.
+     */
+    private static File driveMetadata(FakeSpreadsheet spreadsheet) {
+        return new File().setId(spreadsheet.id).setVersion(spreadsheet.version)
+            .setModifiedTime(new DateTime(spreadsheet.modifiedMillis))
+            .setLastModifyingUser(new User().setMe(spreadsheet.modifiedThroughApi));
+    }
+
+    private FakeSpreadsheet getSpreadsheet(String id) throws SheetsError {
+        FakeSpreadsheet spreadsheet = spreadsheets.get(id);
+        if(spreadsheet == null) {
+            throw new SheetsError(404, "Requested entity was not found.");
+        }
+        return spreadsheet;
+    }
+
+    private static FakeSheet findSheet(FakeSpreadsheet spreadsheet, String title) throws SheetsError {
+        for(FakeSheet sheet : spreadsheet.sheets) {
+            if(sheet.properties.getTitle().equals(title)) {
+                return sheet;
+            }
+        }
+        throw new SheetsError(400, "Unable to parse range: " + title);
+    }
+
+    private static FakeSheet findSheet(FakeSpreadsheet spreadsheet, Integer sheetId) throws SheetsError {
+        for(FakeSheet sheet : spreadsheet.sheets) {
+            if(sheet.properties.getSheetId().equals(sheetId)) {
+                return sheet;
+            }
+        }
+        throw new SheetsError(400, "No grid with id: " + sheetId);
+    }
+
+    private FakeSheet addSheet(FakeSpreadsheet spreadsheet, SheetProperties properties) {
+        FakeSheet sheet = new FakeSheet();
+        sheet.properties = properties.clone();
+        if(sheet.properties.getSheetId() == null) {
+            sheet.properties.setSheetId(nextSheetId++);
+        }
+        if(sheet.properties.getTitle() == null) {
+            sheet.properties.setTitle("Sheet" + (spreadsheet.sheets.size() + 1));
+        }
+        sheet.properties.setIndex(spreadsheet.sheets.size());
+        sheet.properties.setSheetType("GRID");
+        sheet.properties.setGridProperties(new GridProperties().setRowCount(1000).setColumnCount(26));
+        spreadsheet.sheets.add(sheet);
+        return sheet;
+    }
+
+    private Spreadsheet createSpreadsheet(Spreadsheet request) {
+        FakeSpreadsheet spreadsheet = getSpreadsheetUnchecked(createSpreadsheet());
+        if((request != null) && (request.getSheets() != null)) {
+            for(Sheet sheet : request.getSheets()) {
+                addSheet(spreadsheet, (sheet.getProperties() != null) ?
+                         sheet.getProperties() : new SheetProperties());
+            }
+        }
+        if(spreadsheet.sheets.isEmpty()) {
+            addSheet(spreadsheet, new SheetProperties().setTitle("Sheet1"));
+        }
+        return getSpreadsheet(spreadsheet, null, null);
+    }
+
+    private FakeSpreadsheet getSpreadsheetUnchecked(String id) {
+        return spreadsheets.get(id);
+    }
+
+    /**
+     * Answer spreadsheets.get.  Only the field masks the dictionary uses
+     * are understood: sheet properties, protected ranges and cell formats.
+     */
+    private Spreadsheet getSpreadsheet(FakeSpreadsheet spreadsheet, List<String> ranges, String fields) {
+        boolean includeProperties = (fields == null) || fields.contains("sheets.properties");
+        boolean includeProtections = (fields == null) || fields.contains("sheets.protectedRanges");
+        boolean includeData = (fields != null) && fields.contains("sheets.data");
+
+        // Sheets in the ranges, with the ranges in each sheet
+        Map<FakeSheet, List<CellRange>> selected = new LinkedHashMap<>();
+        if(ranges == null) {
+            for(FakeSheet sheet : spreadsheet.sheets) {
+                CellRange range = new CellRange();
+                range.sheet = sheet;
+                selected.put(sheet, new ArrayList<>(Arrays.asList(range)));
+            }
+        } else {
+            for(String rangeString : ranges) {
+                CellRange range;
+                try {
+                    range = parseRange(spreadsheet, rangeString);
+                } catch(SheetsError e) {
+                    continue;
+                }
+                if(!selected.containsKey(range.sheet)) {
+                    selected.put(range.sheet, new ArrayList<>());
+                }
+                selected.get(range.sheet).add(range);
+            }
+        }
+
+        List<Sheet> sheets = new ArrayList<>();
+        for(FakeSheet fakeSheet : selected.keySet()) {
+            Sheet sheet = new Sheet();
+            if(includeProperties) {
+                sheet.setProperties(fakeSheet.properties.clone());
+            }
+            if(includeProtections && !fakeSheet.protectedRanges.isEmpty()) {
+                List<ProtectedRange> protectedRanges = new ArrayList<>();
+                for(ProtectedRange protectedRange : fakeSheet.protectedRanges) {
+                    protectedRanges.add(protectedRange.clone());
+                }
+                sheet.setProtectedRanges(protectedRanges);
+            }
+            if(includeData) {
+                List<GridData> data = new ArrayList<>();
+                for(CellRange range : selected.get(fakeSheet)) {
+                    data.add(gridData(range));
+                }
+                sheet.setData(data);
+            }
+            sheets.add(sheet);
+        }
+
+        return new Spreadsheet().setSpreadsheetId(spreadsheet.id).setSheets(sheets);
+    }
+
+    /** Cell formats in a range, up to the last row that has one */
+    private static GridData gridData(CellRange range) {
+        FakeSheet sheet = range.sheet;
+        int lastRow = -1;
+        for(Integer row : sheet.formats.keySet()) {
+            if((row >= range.startRow) && (row < range.endRow)) {
+                for(Integer column : sheet.formats.get(row).keySet()) {
+                    if((column >= range.startColumn) && (column < range.endColumn)) {
+                        lastRow = Math.max(lastRow, row);
+                    }
+                }
+            }
+        }
+
+        GridData gridData = new GridData().setStartRow(range.startRow).setStartColumn(range.startColumn);
+        if(lastRow < 0) {
+            return gridData;
+        }
+
+        List<RowData> rowDataList = new ArrayList<>();
+        for(int row=range.startRow; row<=lastRow; ++row) {
+            RowData rowData = new RowData();
+            Map<Integer, CellFormat> rowFormats = sheet.formats.get(row);
+            if(rowFormats != null) {
+                int lastColumn = -1;
+                for(Integer column : rowFormats.keySet()) {
+                    if((column >= range.startColumn) && (column < range.endColumn)) {
+                        lastColumn = Math.max(lastColumn, column);
+                    }
+                }
+                if(lastColumn >= 0) {
+                    List<CellData> cells = new ArrayList<>();
+                    for(int column=range.startColumn; column<=lastColumn; ++column) {
+                        CellData cell = new CellData();
+                        CellFormat format = rowFormats.get(column);
+                        if(format != null) {
+                            cell.setUserEnteredFormat(format.clone());
+                        }
+                        cells.add(cell);
+                    }
+                    rowData.setValues(cells);
+                }
+            }
+            rowDataList.add(rowData);
+        }
+
+        return gridData.setRowData(rowDataList);
+    }
+
+    private BatchUpdateSpreadsheetResponse batchUpdate(FakeSpreadsheet spreadsheet,
+                                                       BatchUpdateSpreadsheetRequest batch) throws SheetsError {
+        List<Response> replies = new ArrayList<>();
+
+        for(Request request : batch.getRequests()) {
+            Response reply = new Response();
+
+            if(request.getAddProtectedRange() != null) {
+                ProtectedRange protectedRange = request.getAddProtectedRange().getProtectedRange().clone();
+                FakeSheet sheet = findSheet(spreadsheet, sheetId(protectedRange.getRange()));
+                protectedRange.setProtectedRangeId(nextProtectedRangeId++);
+                sheet.protectedRanges.add(protectedRange);
+                reply.setAddProtectedRange(new AddProtectedRangeResponse()
+                                           .setProtectedRange(protectedRange.clone()));
+
+            } else if(request.getDeleteProtectedRange() != null) {
+                Integer id = request.getDeleteProtectedRange().getProtectedRangeId();
+                boolean found = false;
+                for(FakeSheet sheet : spreadsheet.sheets) {
+                    found |= sheet.protectedRanges.removeIf(r -> r.getProtectedRangeId().equals(id));
+                }
+                if(!found) {
+                    throw new SheetsError(400, "No protected range with id: " + id);
+                }
+
+            } else if(request.getRepeatCell() != null) {
+                repeatCell(spreadsheet, request.getRepeatCell());
+
+            } else if(request.getDeleteRange() != null) {
+                GridRange range = request.getDeleteRange().getRange();
+                if(!"ROWS".equals(request.getDeleteRange().getShiftDimension())) {
+                    throw new SheetsError(400, "Only ROWS shifts are supported");
+                }
+                deleteRows(findSheet(spreadsheet, sheetId(range)), range);
+
+            } else if(request.getAddSheet() != null) {
+                SheetProperties properties = request.getAddSheet().getProperties();
+                FakeSheet sheet = addSheet(spreadsheet, (properties != null) ? properties : new SheetProperties());
+                reply.setAddSheet(new AddSheetResponse().setProperties(sheet.properties.clone()));
+
+            } else if(request.getDeleteSheet() != null) {
+                spreadsheet.sheets.remove(findSheet(spreadsheet, request.getDeleteSheet().getSheetId()));
+
+            } else if(request.getUpdateSheetProperties() != null) {
+                SheetProperties properties = request.getUpdateSheetProperties().getProperties();
+                FakeSheet sheet = findSheet(spreadsheet, properties.getSheetId());
+                if(properties.getTitle() != null) {
+                    sheet.properties.setTitle(properties.getTitle());
+                }
+
+            } else {
+                throw new SheetsError(400, "Unsupported request " + request.keySet());
+            }
+
+            replies.add(reply);
+        }
+
+        return new BatchUpdateSpreadsheetResponse().setSpreadsheetId(spreadsheet.id).setReplies(replies);
+    }
+
+    private static Integer sheetId(GridRange range) {
+        return (range.getSheetId() == null) ? 0 : range.getSheetId();
+    }
+
+    private static void repeatCell(FakeSpreadsheet spreadsheet, RepeatCellRequest request) throws SheetsError {
+        GridRange range = request.getRange();
+        FakeSheet sheet = findSheet(spreadsheet, sheetId(range));
+        GridProperties grid = sheet.properties.getGridProperties();
+
+        int startRow = (range.getStartRowIndex() == null) ? 0 : range.getStartRowIndex();
+        int endRow = (range.getEndRowIndex() == null) ? grid.getRowCount() : range.getEndRowIndex();
+        int startColumn = (range.getStartColumnIndex() == null) ? 0 : range.getStartColumnIndex();
+        int endColumn = (range.getEndColumnIndex() == null) ? grid.getColumnCount() : range.getEndColumnIndex();
+
+        CellFormat newFormat = request.getCell().getUserEnteredFormat();
+        String fields = (request.getFields() == null) ? "" : request.getFields();
+
+        for(int row=startRow; row<endRow; ++row) {
+            Map<Integer, CellFormat> rowFormats = sheet.formats.get(row);
+            if(rowFormats == null) {
+                rowFormats = new TreeMap<>();
+                sheet.formats.put(row, rowFormats);
+            }
+
+            for(int column=startColumn; column<endColumn; ++column) {
+                CellFormat format = rowFormats.get(column);
+                if((format == null) || !fields.startsWith("userEnteredFormat(")) {
+                    format = new CellFormat();
+                }
+
+                if(newFormat != null) {
+                    if(fields.equals("userEnteredFormat(textFormat)")) {
+                        format.setTextFormat(newFormat.getTextFormat());
+                    } else {
+                        format = newFormat.clone();
+                    }
+                }
+
+                rowFormats.put(column, format);
+            }
+        }
+    }
+
+    private static void deleteRows(FakeSheet sheet, GridRange range) {
+        int startRow = (range.getStartRowIndex() == null) ? 0 : range.getStartRowIndex();
+        int endRow = (range.getEndRowIndex() == null) ? sheet.values.size() : range.getEndRowIndex();
+
+        if((range.getStartColumnIndex() == null) && (range.getEndColumnIndex() == null)) {
+            // Whole rows are removed, along with their formats
+            for(int row=Math.min(endRow, sheet.values.size()) - 1; row>=startRow; --row) {
+                sheet.values.remove(row);
+            }
+
+            Map<Integer, Map<Integer, CellFormat>> formats = new TreeMap<>();
+            for(Integer row : sheet.formats.keySet()) {
+                if(row < startRow) {
+                    formats.put(row, sheet.formats.get(row));
+                } else if(row >= endRow) {
+                    formats.put(row - (endRow - startRow), sheet.formats.get(row));
+                }
+            }
+            sheet.formats = formats;
+            return;
+        }
+
+        // Cells below the range move up within its columns
+        int startColumn = (range.getStartColumnIndex() == null) ? 0 : range.getStartColumnIndex();
+        int endColumn = (range.getEndColumnIndex() == null) ? Integer.MAX_VALUE : range.getEndColumnIndex();
+        int shift = endRow - startRow;
+        for(int row=startRow; row<sheet.values.size(); ++row) {
+            List<String> rowValues = sheet.values.get(row);
+            List<String> sourceValues = (row + shift < sheet.values.size()) ?
+                sheet.values.get(row + shift) : new ArrayList<>();
+
+            for(int column=startColumn; column<Math.min(endColumn, Math.max(rowValues.size(), sourceValues.size())); ++column) {
+                String value = (column < sourceValues.size()) ? sourceValues.get(column) : "";
+                setCell(sheet, row, column, value);
+            }
+        }
+    }
+
+    private SheetProperties copySheet(FakeSheet source, FakeSpreadsheet destination) {
+        String title = "Copy of " + source.properties.getTitle();
+        for(int i=2; hasSheet(destination, title); ++i) {
+            title = "Copy of " + source.properties.getTitle() + " " + i;
+        }
+
+        FakeSheet copy = addSheet(destination, new SheetProperties().setTitle(title));
+        for(List<String> row : source.values) {
+            copy.values.add(new ArrayList<>(row));
+        }
+        for(Integer row : source.formats.keySet()) {
+            Map<Integer, CellFormat> rowFormats = new TreeMap<>();
+            for(Integer column : source.formats.get(row).keySet()) {
+                rowFormats.put(column, source.formats.get(row).get(column).clone());
+            }
+            copy.formats.put(row, rowFormats);
+        }
+
+        return copy.properties.clone();
+    }
+
+    private static boolean hasSheet(FakeSpreadsheet spreadsheet, String title) {
+        for(FakeSheet sheet : spreadsheet.sheets) {
+            if(sheet.properties.getTitle().equals(title)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static ValueRange getValues(FakeSpreadsheet spreadsheet, String rangeString) throws SheetsError {
+        CellRange range = parseRange(spreadsheet, rangeString);
+        GridProperties grid = range.sheet.properties.getGridProperties();
+
+        // Google reports the range clipped to the grid, with the
+        // columns of whole-row ranges filled in
+        int endRow = Math.min(range.endRow, grid.getRowCount());
+        int endColumn = Math.min(range.endColumn, grid.getColumnCount());
+        String a1 = quoteTitle(range.sheet.properties.getTitle()) + "!"
+            + columnName(range.startColumn) + (range.startRow + 1) + ":"
+            + columnName(endColumn - 1) + endRow;
+
+        return new ValueRange().setRange(a1).setMajorDimension("ROWS").setValues(readValues(range));
+    }
+
+    private static List<List<Object>> readValues(CellRange range) {
+        List<List<Object>> values = new ArrayList<>();
+        List<List<String>> sheetValues = range.sheet.values;
+
+        for(int row=range.startRow; row<Math.min(range.endRow, sheetValues.size()); ++row) {
+            List<String> rowValues = sheetValues.get(row);
+            List<Object> cells = new ArrayList<>();
+            for(int column=range.startColumn; column<Math.min(range.endColumn, rowValues.size()); ++column) {
+                cells.add(rowValues.get(column));
+            }
+
+            // Trailing empty cells are left out
+            while(!cells.isEmpty() && ((String)cells.get(cells.size() - 1)).isEmpty()) {
+                cells.remove(cells.size() - 1);
+            }
+            values.add(cells);
+        }
+
+        // Trailing empty rows are left out
+        while(!values.isEmpty() && values.get(values.size() - 1).isEmpty()) {
+            values.remove(values.size() - 1);
+        }
+
+        return values.isEmpty() ? null : values;
+    }
+
+    /**
+     * @return the number of cells written
+     */
+    private static int writeValues(CellRange range, List<List<Object>> values) {
+        if(values == null) {
+            return 0;
+        }
+
+        int cellCount = 0;
+        for(int i=0; i<values.size(); ++i) {
+            List<Object> rowValues = values.get(i);
+            for(int j=0; j<rowValues.size(); ++j) {
+                Object value = rowValues.get(j);
+                if(value == null) {
+                    // Null leaves the cell as it is
+                    continue;
+                }
+                setCell(range.sheet, range.startRow + i, range.startColumn + j, value.toString());
+                ++cellCount;
+            }
+        }
+        return cellCount;
+    }
+
+    private static void setCell(FakeSheet sheet, int row, int column, String value) {
+        while(sheet.values.size() <= row) {
+            sheet.values.add(new ArrayList<>());
+        }
+        List<String> rowValues = sheet.values.get(row);
+        while(rowValues.size() <= column) {
+            rowValues.add("");
+        }
+        rowValues.set(column, value);
+
+        // The grid grows to hold the data
+        GridProperties grid = sheet.properties.getGridProperties();
+        grid.setRowCount(Math.max(grid.getRowCount(), row + 1));
+        grid.setColumnCount(Math.max(grid.getColumnCount(), column + 1));
+    }
+
+    /**
+     * Parse a range in A1 notation, such as Tab, Tab!A3:L, Tab!2:2,
+     * Tab!C:C or Tab!C7
+     */
+    private static CellRange parseRange(FakeSpreadsheet spreadsheet, String a1) throws SheetsError {
+        CellRange range = new CellRange();
+
+        int split = a1.lastIndexOf('!');
+        String title = (split < 0) ? a1 : a1.substring(0, split);
+        if(title.startsWith("'") && title.endsWith("'") && (title.length() > 1)) {
+            title = title.substring(1, title.length() - 1).replace("''", "'");
+        }
+        range.sheet = findSheet(spreadsheet, title);
+
+        if(split < 0) {
+            return range;
+        }
+
+        String[] cells = a1.substring(split + 1).split(":");
+        Matcher start = CELL.matcher(cells[0]);
+        if((cells.length > 2) || !start.matches()) {
+            throw new SheetsError(400, "Unable to parse range: " + a1);
+        }
+
+        Matcher end = start;
+        if(cells.length == 2) {
+            end = CELL.matcher(cells[1]);
+            if(!end.matches()) {
+                throw new SheetsError(400, "Unable to parse range: " + a1);
+            }
+        }
+
+        if(!start.group(1).isEmpty()) {
+            range.startColumn = columnIndex(start.group(1));
+        }
+        if(!start.group(2).isEmpty()) {
+            range.startRow = Integer.parseInt(start.group(2)) - 1;
+        }
+        if(!end.group(1).isEmpty()) {
+            range.endColumn = columnIndex(end.group(1)) + 1;
+        }
+        if(!end.group(2).isEmpty()) {
+            range.endRow = Integer.parseInt(end.group(2));
+        }
+
+        return range;
+    }
+
+    private static int columnIndex(String letters) {
+        int index = 0;
+        for(char c : letters.toCharArray()) {
+            index = index * 26 + (c - 'A' + 1);
+        }
+        return index - 1;
+    }
+
+    private static String columnName(int index) {
+        String name = "";
+        for(++index; index > 0; index = (index - 1) / 26) {
+            name = (char)('A' + (index - 1) % 26) + name;
+        }
+        return name;
+    }
+
+    private static String quoteTitle(String title) {
+        if(title.matches("[A-Za-z0-9_]+")) {
+            return title;
+        }
+        return "'" + title.replace("'", "''") + "'";
+    }
+
+    private static <T> T parseBody(HttpExchange exchange, Class<T> type) throws IOException {
+        InputStream in = exchange.getRequestBody();
+        if("gzip".equals(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+            in = new GZIPInputStream(in);
+        }
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        for(int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+            body.write(buffer, 0, n);
+        }
+
+        if(body.size() == 0) {
+            return null;
+        }
+        return JSON_FACTORY.fromString(new String(body.toByteArray(), StandardCharsets.UTF_8), type);
+    }
+
+    private static Map<String, List<String>> parseQuery(String rawQuery) throws IOException {
+        Map<String, List<String>> query = new HashMap<>();
+        if(rawQuery == null) {
+            return query;
+        }
+
+        for(String parameter : rawQuery.split("&")) {
+            int split = parameter.indexOf('=');
+            if(split < 0) {
+                continue;
+            }
+            String key = URLDecoder.decode(parameter.substring(0, split), "UTF-8");
+            String value = URLDecoder.decode(parameter.substring(split + 1), "UTF-8");
+            if(!query.containsKey(key)) {
+                query.put(key, new ArrayList<>());
+            }
+            query.get(key).add(value);
+        }
+        return query;
+    }
+
+    private static String first(List<String> values) {
+        return ((values == null) || values.isEmpty()) ? null : values.get(0);
+    }
+}
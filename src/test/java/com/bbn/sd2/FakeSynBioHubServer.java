@@ -0,0 +1,734 @@
+package com.bbn.sd2;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.xml.namespace.QName;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.sbolstandard.core2.Annotation;
+import org.sbolstandard.core2.Collection;
+import org.sbolstandard.core2.ComponentDefinition;
+import org.sbolstandard.core2.GenericTopLevel;
+import org.sbolstandard.core2.ModuleDefinition;
+import org.sbolstandard.core2.SBOLDocument;
+import org.sbolstandard.core2.SBOLReader;
+import org.sbolstandard.core2.SBOLWriter;
+import org.sbolstandard.core2.TopLevel;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Stand-in for the parts of SynBioHub that the dictionary uses, served on
+ * localhost: login, getSBOL, addToCollection and createCollection
+ * submissions, search, root collections, removeSBOL, and the SPARQL
+ * queries SynBioHubAccessor makes for modified dates and member
+ * properties.  Objects are kept in memory, one document per object.
+ *
+ * The server can add latency to every request and fail a fraction of
+ * them, so that the throughput and retries of SynBioHubAccessor can be
+ * measured without a shared server.  Point SynBioHubAccessor at it with
+ * the server and collection options.
+ */
+public class FakeSynBioHubServer {
+    private static final String SBOL_NS = CollectionSnapshot.SBOL_NS;
+    private static final String DCTERMS_NS = CollectionSnapshot.DCTERMS_NS;
+    private static final String PROV_NS = CollectionSnapshot.PROV_NS;
+
+    /** Milliseconds added to every request */
+    public volatile long latencyMillis = 0;
+    /** Fraction of requests, other than logins, that fail with a server error */
+    public volatile double errorRate = 0.0;
+    /** User that collections created through the API belong to */
+    public volatile String user = "sd2e";
+    /** Called before each submission is stored, or null */
+    public volatile Runnable beforeSubmit = null;
+
+    private final Random random = new Random(0);
+
+    private final Map<String, AtomicLong> requestCounts = new TreeMap<>();
+    private final AtomicLong errorCount = new AtomicLong();
+
+    /** Maps the URI of each object to a document holding only that object */
+    private final Map<String, SBOLDocument> objects = new HashMap<>();
+
+    /** Maps the URI of each root collection to the URIs of its members */
+    private final Map<String, TreeSet<String>> collections = new LinkedHashMap<>();
+    private final Map<String, String> collectionNames = new HashMap<>();
+
+    private int nextToken = 1;
+    private final Set<String> tokens = new HashSet<>();
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    /** Error reported to the client as a status code and a plain text message */
+    private static class SynBioHubError extends Exception {
+        static final long serialVersionUID = 0;
+        final int code;
+
+        SynBioHubError(int code, String message) {
+            super(message);
+            this.code = code;
+        }
+    }
+
+    /**
+     * Start serving on an ephemeral port
+     */
+    public void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> handle(exchange));
+
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /** @return the URL to pass to the server option */
+    public String getServerUrl() {
+        return "http://localhost:" + server.getAddress().getPort() + "/";
+    }
+
+    /**
+     * Create an empty root collection
+     * @param id display ID of the collection
+     * @return the URL stem shared by the collection members, to pass to
+     * the collection option
+     */
+    public synchronized String createCollection(String id) {
+        String prefix = getServerUrl() + "user/" + user + "/" + id + "/";
+        String uri = prefix + id + "_collection/1";
+        if(!collections.containsKey(uri)) {
+            collections.put(uri, new TreeSet<>());
+            collectionNames.put(uri, id);
+        }
+        return prefix;
+    }
+
+    /**
+     * @return the number of requests of a kind, such as "getSBOL",
+     * "submit", "search" or "sparql"
+     */
+    public long getRequestCount(String operation) {
+        synchronized(requestCounts) {
+            AtomicLong count = requestCounts.get(operation);
+            return (count == null) ? 0 : count.get();
+        }
+    }
+
+    /** @return the number of requests failed by error injection */
+    public long getErrorCount() {
+        return errorCount.get();
+    }
+
+    /** @return the number of objects stored, not counting root collections */
+    public synchronized int getObjectCount() {
+        return objects.size();
+    }
+
+    /**
+     * @return a copy of the document holding an object, or null if there
+     * is no such object
+     */
+    public synchronized SBOLDocument getObject(String uri) {
+        SBOLDocument document = objects.get(uri);
+        return (document == null) ? null : copy(document);
+    }
+
+    /**
+     * @return the URIs of the members of a root collection
+     */
+    public synchronized List<String> getMembers(String collectionUri) {
+        TreeSet<String> members = collections.get(collectionUri);
+        return (members == null) ? new ArrayList<>() : new ArrayList<>(members);
+    }
+
+    private void count(String operation) {
+        synchronized(requestCounts) {
+            AtomicLong count = requestCounts.get(operation);
+            if(count == null) {
+                count = new AtomicLong();
+                requestCounts.put(operation, count);
+            }
+            count.incrementAndGet();
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            // The frontend joins the server URL and the endpoint with a
+            // second slash
+            String path = exchange.getRequestURI().getRawPath().replaceAll("^/+", "/");
+            String operation = operation(path);
+            count(operation);
+
+            if(latencyMillis > 0) {
+                Thread.sleep(latencyMillis);
+            }
+
+            boolean fail;
+            synchronized(random) {
+                fail = !operation.equals("login") && (random.nextDouble() < errorRate);
+            }
+            if(fail) {
+                errorCount.incrementAndGet();
+                throw new SynBioHubError(500, "Injected server error");
+            }
+
+            byte[] body = readBody(exchange);
+            String contentType = "text/plain";
+            String response;
+            synchronized(this) {
+                response = dispatch(exchange, operation, path, body);
+            }
+            if(operation.equals("search") || operation.equals("rootCollections")
+               || operation.equals("sparql")) {
+                contentType = "application/json";
+            } else if(operation.equals("getSBOL")) {
+                contentType = "application/rdf+xml";
+            }
+
+            send(exchange, 200, contentType, response);
+        } catch(SynBioHubError e) {
+            send(exchange, e.code, "text/plain", e.getMessage());
+        } catch(Exception e) {
+            send(exchange, 500, "text/plain", String.valueOf(e.getMessage()));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static void send(HttpExchange exchange, int code, String contentType,
+                             String response) throws IOException {
+        byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(code, bytes.length);
+        try(OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+
+    private static String operation(String path) {
+        if(path.equals("/login")) {
+            return "login";
+        } else if(path.equals("/submit")) {
+            return "submit";
+        } else if(path.equals("/rootCollections")) {
+            return "rootCollections";
+        } else if(path.equals("/sparql")) {
+            return "sparql";
+        } else if(path.startsWith("/search/")) {
+            return "search";
+        } else if(path.endsWith("/sbol") || path.endsWith("/sbolnr")) {
+            return "getSBOL";
+        } else if(path.endsWith("/remove")) {
+            return "remove";
+        }
+        return "unknown";
+    }
+
+    private String dispatch(HttpExchange exchange, String operation, String path,
+                            byte[] body) throws Exception {
+        if(operation.equals("login")) {
+            String token = "fake-token-" + nextToken++;
+            tokens.add(token);
+            return token;
+        }
+
+        String token = exchange.getRequestHeaders().getFirst("X-authorization");
+        boolean loggedIn = (token != null) && tokens.contains(token);
+
+        switch(operation) {
+        case "submit":
+            if(!loggedIn) {
+                throw new SynBioHubError(401, "Not logged in");
+            }
+            Runnable hook = beforeSubmit;
+            if(hook != null) {
+                hook.run();
+            }
+            submit(exchange, body);
+            return "Successfully uploaded";
+
+        case "rootCollections":
+            return rootCollections().toString();
+
+        case "search":
+            return search(URLDecoder.decode(path.substring("/search/".length()), "UTF-8")).toString();
+
+        case "sparql":
+            String query = exchange.getRequestURI().getRawQuery();
+            if((query == null) || !query.startsWith("query=")) {
+                throw new SynBioHubError(400, "Missing query");
+            }
+            return sparql(URLDecoder.decode(query.substring("query=".length()), "UTF-8")).toString();
+
+        case "getSBOL":
+            String uri = objectUri(path.substring(0, path.lastIndexOf('/')));
+            return serialize(getSBOL(uri));
+
+        case "remove":
+            if(!loggedIn) {
+                throw new SynBioHubError(401, "Not logged in");
+            }
+            remove(objectUri(path.substring(0, path.lastIndexOf('/'))));
+            return "Success";
+
+        default:
+            throw new SynBioHubError(404, "Not found");
+        }
+    }
+
+    private String objectUri(String path) {
+        return getServerUrl() + path.substring(1);
+    }
+
+    private SBOLDocument getSBOL(String uri) throws Exception {
+        SBOLDocument document = objects.get(uri);
+        if(document != null) {
+            return document;
+        }
+
+        TreeSet<String> members = collections.get(uri);
+        if(members == null) {
+            throw new SynBioHubError(404, "Not found");
+        }
+
+        // Root collections are built from their member lists
+        URI identity = URI.create(uri);
+        document = new SBOLDocument();
+        document.setDefaultURIprefix(getServerUrl());
+        Collection collection = document.createCollection(prefixOf(uri), collectionNames.get(uri) + "_collection", "1");
+        if(!collection.getIdentity().equals(identity)) {
+            throw new SynBioHubError(500, "Unexpected collection URI " + collection.getIdentity());
+        }
+        collection.setName(collectionNames.get(uri));
+        for(String member : members) {
+            collection.addMember(URI.create(member));
+        }
+        return document;
+    }
+
+    private void remove(String uri) throws SynBioHubError {
+        if(collections.containsKey(uri)) {
+            for(String member : collections.remove(uri)) {
+                objects.remove(member);
+            }
+            return;
+        }
+
+        if(objects.remove(uri) == null) {
+            throw new SynBioHubError(404, "Not found");
+        }
+        for(TreeSet<String> members : collections.values()) {
+            members.remove(uri);
+        }
+    }
+
+    /**
+     * Add the objects in a submission to a root collection, or create a
+     * new root collection
+     */
+    private void submit(HttpExchange exchange, byte[] body) throws Exception {
+        Map<String, byte[]> parts = parseMultipart(exchange.getRequestHeaders().getFirst("Content-Type"), body);
+        String collectionUri = text(parts.get("rootCollections"));
+        String overwriteMerge = text(parts.get("overwrite_merge"));
+
+        if(collectionUri == null) {
+            String id = text(parts.get("id"));
+            if((id == null) || id.isEmpty()) {
+                throw new SynBioHubError(400, "Missing collection id");
+            }
+            String prefix = getServerUrl() + "user/" + user + "/" + id + "/";
+            collectionUri = prefix + id + "_collection/" + text(parts.get("version"));
+            if(collections.containsKey(collectionUri) && !"1".equals(overwriteMerge)) {
+                throw new SynBioHubError(400, "Submission id and version already in use");
+            }
+            collections.put(collectionUri, new TreeSet<>());
+            collectionNames.put(collectionUri, id);
+        }
+
+        TreeSet<String> members = collections.get(collectionUri);
+        if(members == null) {
+            throw new SynBioHubError(400, "Collection " + collectionUri + " does not exist");
+        }
+
+        byte[] file = parts.get("file");
+        if((file == null) || (file.length == 0)) {
+            return;
+        }
+
+        // Objects are moved into the namespace of the collection
+        SBOLDocument submission = SBOLReader.read(new ByteArrayInputStream(file));
+        submission = submission.changeURIPrefixVersion(prefixOf(collectionUri), null, "1");
+
+        boolean overwrite = "3".equals(overwriteMerge) || "1".equals(overwriteMerge);
+        if(!overwrite) {
+            for(TopLevel topLevel : submission.getTopLevels()) {
+                if(objects.containsKey(topLevel.getIdentity().toString())) {
+                    throw new SynBioHubError(400, topLevel.getIdentity() + " already exists");
+                }
+            }
+        }
+
+        for(TopLevel topLevel : submission.getTopLevels()) {
+            SBOLDocument document = new SBOLDocument();
+            for(QName namespace : submission.getNamespaces()) {
+                if(document.getNamespace(URI.create(namespace.getNamespaceURI())) == null) {
+                    document.addNamespace(namespace);
+                }
+            }
+            document.createCopy(topLevel);
+
+            String uri = topLevel.getIdentity().toString();
+            objects.put(uri, document);
+            members.add(uri);
+        }
+    }
+
+    /** @return the URL stem shared by the members of a root collection */
+    private static String prefixOf(String collectionUri) {
+        String withoutVersion = collectionUri.substring(0, collectionUri.lastIndexOf('/'));
+        return withoutVersion.substring(0, withoutVersion.lastIndexOf('/') + 1);
+    }
+
+    private JSONArray rootCollections() {
+        JSONArray results = new JSONArray();
+        for(String uri : collections.keySet()) {
+            JSONObject metadata = new JSONObject();
+            metadata.put("uri", uri);
+            metadata.put("name", collectionNames.get(uri));
+            metadata.put("displayId", collectionNames.get(uri) + "_collection");
+            metadata.put("version", "1");
+            metadata.put("description", "");
+            results.put(metadata);
+        }
+        return results;
+    }
+
+    /**
+     * Answer a search.  Criteria are joined with '&', and each compares a
+     * property with a quoted literal or a URI in angle brackets.  A
+     * trailing term without '=' is a free text search of names.
+     */
+    private JSONArray search(String criteria) throws SynBioHubError {
+        // Paging parameters follow the criteria as a path segment
+        int paging = criteria.indexOf("/?");
+        if(paging >= 0) {
+            criteria = criteria.substring(0, paging);
+        }
+
+        Map<String, String> properties = new LinkedHashMap<>();
+        String text = "";
+        for(String criterion : criteria.split("&")) {
+            int split = criterion.indexOf('=');
+            if(split < 0) {
+                text = criterion;
+                continue;
+            }
+            String key = criterion.substring(0, split);
+            String value = criterion.substring(split + 1);
+            if((value.startsWith("'") && value.endsWith("'")) || (value.startsWith("<") && value.endsWith(">"))) {
+                value = value.substring(1, value.length() - 1);
+            }
+            properties.put(key, value);
+        }
+
+        JSONArray results = new JSONArray();
+        for(SBOLDocument document : objects.values()) {
+            TopLevel topLevel = document.getTopLevels().iterator().next();
+            boolean match = true;
+
+            for(String key : properties.keySet()) {
+                String value = properties.get(key);
+                if(key.equals("objectType")) {
+                    match &= topLevel.getClass().getSimpleName().equals(value);
+                } else if(key.equals("dcterms:title")) {
+                    match &= value.equals(topLevel.getName());
+                } else if(key.equals("sbol:displayId")) {
+                    match &= value.equals(topLevel.getDisplayId());
+                } else {
+                    throw new SynBioHubError(400, "Unsupported search key " + key);
+                }
+            }
+
+            if(!text.isEmpty()) {
+                String name = (topLevel.getName() == null) ? "" : topLevel.getName();
+                match &= name.contains(text) || topLevel.getDisplayId().contains(text);
+            }
+
+            if(match) {
+                JSONObject metadata = new JSONObject();
+                metadata.put("uri", topLevel.getIdentity().toString());
+                metadata.put("name", (topLevel.getName() == null) ? "" : topLevel.getName());
+                metadata.put("displayId", topLevel.getDisplayId());
+                metadata.put("version", topLevel.getVersion());
+                metadata.put("description", (topLevel.getDescription() == null) ? "" : topLevel.getDescription());
+                metadata.put("type", topLevel.getClass().getSimpleName());
+                results.put(metadata);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Answer the SPARQL queries that SynBioHubAccessor makes: the modified
+     * date of every member of a collection, a filtered set of properties
+     * of every member, and the member count and latest modified date of a
+     * collection.  Other queries are rejected.
+     */
+    private JSONObject sparql(String query) throws SynBioHubError {
+        Matcher collectionMatcher = Pattern.compile("<([^>]+)> sbol:member \\?member").matcher(query);
+        if(!collectionMatcher.find()) {
+            throw new SynBioHubError(400, "Unsupported query");
+        }
+        TreeSet<String> members = collections.get(collectionMatcher.group(1));
+        if(members == null) {
+            members = new TreeSet<>();
+        }
+
+        List<String[]> rows = new ArrayList<>();
+        String[] variables;
+
+        if(query.contains("(COUNT(?member) AS ?count) (MAX(?modified) AS ?latest)")) {
+            String latest = null;
+            for(String member : members) {
+                for(String[] triple : triples(member)) {
+                    if(triple[0].equals(DCTERMS_NS + "modified") &&
+                       ((latest == null) || (triple[1].compareTo(latest) > 0))) {
+                        latest = triple[1];
+                    }
+                }
+            }
+
+            JSONObject binding = new JSONObject();
+            binding.put("count", term(Integer.toString(members.size()), "literal"));
+            if(latest != null) {
+                binding.put("latest", term(latest, "literal"));
+            }
+
+            JSONObject head = new JSONObject().put("vars", new JSONArray(new String[] { "count", "latest" }));
+            return new JSONObject().put("head", head)
+                .put("results", new JSONObject().put("bindings", new JSONArray().put(binding)));
+        } else if(query.contains("?member dcterms:modified ?modified")) {
+            variables = new String[] { "member", "modified" };
+            for(String member : members) {
+                for(String[] triple : triples(member)) {
+                    if(triple[0].equals(DCTERMS_NS + "modified")) {
+                        rows.add(new String[] { member, triple[1], triple[2] });
+                    }
+                }
+            }
+        } else if(query.contains("?member ?predicate ?value")) {
+            variables = new String[] { "member", "predicate", "value" };
+
+            Set<String> predicates = new HashSet<>();
+            Matcher in = Pattern.compile("\\?predicate IN \\(([^)]*)\\)").matcher(query);
+            if(in.find()) {
+                Matcher predicate = Pattern.compile("<([^>]+)>").matcher(in.group(1));
+                while(predicate.find()) {
+                    predicates.add(predicate.group(1));
+                }
+            }
+            Matcher startsWith = Pattern.compile("STRSTARTS\\(STR\\(\\?predicate\\), \"([^\"]*)\"\\)").matcher(query);
+            String namespace = startsWith.find() ? startsWith.group(1) : null;
+
+            for(String member : members) {
+                for(String[] triple : triples(member)) {
+                    if(predicates.contains(triple[0]) ||
+                       ((namespace != null) && triple[0].startsWith(namespace))) {
+                        rows.add(new String[] { member, triple[0], triple[1], triple[2] });
+                    }
+                }
+            }
+        } else {
+            throw new SynBioHubError(400, "Unsupported query");
+        }
+
+        // Results are in a stable order, so they can be paged
+        rows.sort((a, b) -> String.join("\n", a).compareTo(String.join("\n", b)));
+
+        int offset = intClause(query, "OFFSET", 0);
+        int limit = intClause(query, "LIMIT", Integer.MAX_VALUE);
+
+        JSONArray bindings = new JSONArray();
+        for(int i=offset; i<Math.min(rows.size(), offset + (long)limit); ++i) {
+            String[] row = rows.get(i);
+            JSONObject binding = new JSONObject();
+            binding.put("member", new JSONObject().put("type", "uri").put("value", row[0]));
+            if(variables.length == 2) {
+                binding.put(variables[1], term(row[1], row[2]));
+            } else {
+                binding.put("predicate", new JSONObject().put("type", "uri").put("value", row[1]));
+                binding.put("value", term(row[2], row[3]));
+            }
+            bindings.put(binding);
+        }
+
+        JSONObject head = new JSONObject().put("vars", new JSONArray(variables));
+        return new JSONObject().put("head", head)
+            .put("results", new JSONObject().put("bindings", bindings));
+    }
+
+    private static JSONObject term(String value, String type) {
+        return new JSONObject().put("type", type).put("value", value);
+    }
+
+    private static int intClause(String query, String clause, int defaultValue) {
+        Matcher matcher = Pattern.compile(clause + " ([0-9]+)").matcher(query);
+        return matcher.find() ? Integer.parseInt(matcher.group(1)) : defaultValue;
+    }
+
+    /**
+     * @return the properties of an object as predicate, value and value
+     * type ("uri" or "literal") triples
+     */
+    private List<String[]> triples(String uri) {
+        List<String[]> triples = new ArrayList<>();
+        SBOLDocument document = objects.get(uri);
+        if(document == null) {
+            return triples;
+        }
+        TopLevel topLevel = document.getTopLevels().iterator().next();
+
+        String rdfType;
+        if(topLevel instanceof GenericTopLevel) {
+            QName qName = ((GenericTopLevel)topLevel).getRDFType();
+            rdfType = qName.getNamespaceURI() + qName.getLocalPart();
+        } else {
+            rdfType = SBOL_NS + topLevel.getClass().getSimpleName();
+        }
+        triples.add(new String[] { CollectionSnapshot.RDF_TYPE, rdfType, "uri" });
+        triples.add(new String[] { SBOL_NS + "displayId", topLevel.getDisplayId(), "literal" });
+
+        if(topLevel.getName() != null) {
+            triples.add(new String[] { DCTERMS_NS + "title", topLevel.getName(), "literal" });
+        }
+        if(topLevel.getDescription() != null) {
+            triples.add(new String[] { DCTERMS_NS + "description", topLevel.getDescription(), "literal" });
+        }
+        for(URI derivation : topLevel.getWasDerivedFroms()) {
+            triples.add(new String[] { PROV_NS + "wasDerivedFrom", derivation.toString(), "uri" });
+        }
+
+        if(topLevel instanceof ComponentDefinition) {
+            ComponentDefinition cd = (ComponentDefinition)topLevel;
+            for(URI type : cd.getTypes()) {
+                triples.add(new String[] { SBOL_NS + "type", type.toString(), "uri" });
+            }
+            for(URI role : cd.getRoles()) {
+                triples.add(new String[] { SBOL_NS + "role", role.toString(), "uri" });
+            }
+        } else if(topLevel instanceof ModuleDefinition) {
+            for(URI role : ((ModuleDefinition)topLevel).getRoles()) {
+                triples.add(new String[] { SBOL_NS + "role", role.toString(), "uri" });
+            }
+        }
+
+        for(Annotation annotation : topLevel.getAnnotations()) {
+            QName qName = annotation.getQName();
+            String predicate = qName.getNamespaceURI() + qName.getLocalPart();
+            if(annotation.isURIValue()) {
+                triples.add(new String[] { predicate, annotation.getURIValue().toString(), "uri" });
+            } else if(annotation.isStringValue()) {
+                triples.add(new String[] { predicate, annotation.getStringValue(), "literal" });
+            }
+        }
+
+        return triples;
+    }
+
+    private static String serialize(SBOLDocument document) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        SBOLWriter.write(document, out);
+        return out.toString("UTF-8");
+    }
+
+    private static SBOLDocument copy(SBOLDocument document) {
+        try {
+            return SBOLReader.read(new ByteArrayInputStream(serialize(document).getBytes(StandardCharsets.UTF_8)));
+        } catch(Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String text(byte[] part) {
+        return (part == null) ? null : new String(part, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Split a multipart/form-data body into its parts
+     * @return maps the name of each part to its content
+     */
+    private static Map<String, byte[]> parseMultipart(String contentType, byte[] body) throws SynBioHubError {
+        Matcher boundaryMatcher = Pattern.compile("boundary=\"?([^\";]+)\"?").matcher(
+            (contentType == null) ? "" : contentType);
+        if(!boundaryMatcher.find()) {
+            throw new SynBioHubError(400, "Expected a multipart submission");
+        }
+
+        // Latin-1 keeps one character per byte, so binary parts survive
+        String text = new String(body, StandardCharsets.ISO_8859_1);
+        String delimiter = "--" + boundaryMatcher.group(1);
+
+        Map<String, byte[]> parts = new HashMap<>();
+        for(String part : text.split(Pattern.quote(delimiter))) {
+            int headerEnd = part.indexOf("\r\n\r\n");
+            if(headerEnd < 0) {
+                continue;
+            }
+
+            Matcher name = Pattern.compile("name=\"([^\"]*)\"").matcher(part.substring(0, headerEnd));
+            if(!name.find()) {
+                continue;
+            }
+
+            String content = part.substring(headerEnd + 4);
+            if(content.endsWith("\r\n")) {
+                content = content.substring(0, content.length() - 2);
+            }
+            parts.put(name.group(1), content.getBytes(StandardCharsets.ISO_8859_1));
+        }
+        return parts;
+    }
+
+    private static byte[] readBody(HttpExchange exchange) throws IOException {
+        InputStream in = exchange.getRequestBody();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        for(int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+            body.write(buffer, 0, n);
+        }
+        return body.toByteArray();
+    }
+}
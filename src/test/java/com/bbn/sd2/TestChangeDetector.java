@@ -0,0 +1,126 @@
+package com.bbn.sd2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.xml.namespace.QName;
+
+import org.apache.commons.cli.CommandLine;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.sbolstandard.core2.ComponentDefinition;
+import org.sbolstandard.core2.SBOLDocument;
+
+import com.google.api.services.sheets.v4.model.ValueRange;
+
+/**
+ * Checks that passes are only skipped while neither the spreadsheet nor
+ * the collection changes
+ */
+public class TestChangeDetector {
+    private static final QName MODIFIED = new QName(CollectionSnapshot.DCTERMS_NS, "modified", "dcterms");
+
+    private FakeSheetsServer sheets;
+    private FakeSynBioHubServer synBioHub;
+    private String spreadsheetId;
+
+    @Before
+    public void setUp() throws Exception {
+        sheets = new FakeSheetsServer();
+        sheets.start();
+        spreadsheetId = sheets.createSpreadsheet("Reagent");
+        sheets.setValues(spreadsheetId, "Reagent!A1", Arrays.asList(Arrays.asList((Object)"Status")));
+
+        synBioHub = new FakeSynBioHubServer();
+        synBioHub.start();
+        String collectionPrefix = synBioHub.createCollection("scratch_test");
+
+        CommandLine cmd = DictionaryMaintainerApp.parseArguments("-U",
+                "-G", sheets.getRootUrl(), "-g", spreadsheetId,
+                "-S", synBioHub.getServerUrl(), "-c", collectionPrefix, "-l", "tester", "-p", "secret");
+        DictionaryAccessor.configure(cmd);
+        DictionaryAccessor.restart();
+        SynBioHubAccessor.configure(cmd);
+        SynBioHubAccessor.restart();
+        ChangeDetector.configure(cmd);
+    }
+
+    @After
+    public void tearDown() {
+        ChangeDetector.maxSkipMillis = 3600000;
+        SynBioHubAccessor.logout();
+        synBioHub.stop();
+        sheets.stop();
+    }
+
+    /** Write to the spreadsheet as the dictionary does at the end of a pass */
+    private void writeStatus(String status) throws Exception {
+        List<ValueRange> updates = new ArrayList<>();
+        updates.add(new ValueRange().setRange("Reagent!A1")
+                    .setValues(Arrays.asList(Arrays.asList((Object)status))));
+        DictionaryAccessor.batchUpdateValues(updates);
+    }
+
+    private void completePass() throws Exception {
+        writeStatus("Updated");
+        ChangeDetector.endPass(true);
+    }
+
+    @Test
+    public void testSpreadsheetChanges() throws Exception {
+        // Nothing is known before the first pass
+        assertFalse(ChangeDetector.isUnchanged());
+
+        completePass();
+        long readCount = sheets.getReadCount();
+        assertTrue(ChangeDetector.isUnchanged());
+        assertEquals(readCount + 1, sheets.getReadCount());
+
+        // An editor changes the spreadsheet
+        sheets.setValues(spreadsheetId, "Reagent!A3", Arrays.asList(Arrays.asList((Object)"LacI")));
+        assertFalse(ChangeDetector.isUnchanged());
+
+        completePass();
+        assertTrue(ChangeDetector.isUnchanged());
+
+        // An edit made during a pass is picked up by the next pass,
+        // even though the dictionary wrote to the spreadsheet after it
+        sheets.setValues(spreadsheetId, "Reagent!A4", Arrays.asList(Arrays.asList((Object)"TetR")));
+        ChangeDetector.endPass(true);
+        assertFalse(ChangeDetector.isUnchanged());
+    }
+
+    @Test
+    public void testCollectionChanges() throws Exception {
+        completePass();
+        assertTrue(ChangeDetector.isUnchanged());
+
+        SBOLDocument document = SynBioHubAccessor.newBlankDocument();
+        ComponentDefinition cd = document.createComponentDefinition("LacI", "1", ComponentDefinition.PROTEIN);
+        cd.createAnnotation(MODIFIED, "2019-01-01T00:00:00.000Z");
+        SynBioHubAccessor.update(document);
+        assertFalse(ChangeDetector.isUnchanged());
+
+        completePass();
+        assertTrue(ChangeDetector.isUnchanged());
+    }
+
+    @Test
+    public void testFullPasses() throws Exception {
+        // Passes that leave work behind are followed by another pass
+        writeStatus("Failed");
+        ChangeDetector.endPass(false);
+        assertFalse(ChangeDetector.isUnchanged());
+
+        // So are passes that are too far apart
+        completePass();
+        ChangeDetector.maxSkipMillis = 0;
+        assertFalse(ChangeDetector.isUnchanged());
+    }
+}
@@ -0,0 +1,106 @@
+package com.bbn.sd2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URI;
+import java.util.Map;
+
+import javax.xml.namespace.QName;
+
+import org.apache.commons.cli.CommandLine;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.sbolstandard.core2.ComponentDefinition;
+import org.sbolstandard.core2.GenericTopLevel;
+import org.sbolstandard.core2.SBOLDocument;
+import org.sbolstandard.core2.TopLevel;
+
+/**
+ * Checks the bulk read mode against the local SynBioHub stand-in
+ */
+public class TestCollectionSnapshot {
+    private FakeSynBioHubServer synBioHub;
+    private String collectionPrefix;
+
+    @Before
+    public void setUp() throws Exception {
+        synBioHub = new FakeSynBioHubServer();
+        synBioHub.start();
+        collectionPrefix = synBioHub.createCollection("scratch_test");
+
+        CommandLine cmd = DictionaryMaintainerApp.parseArguments("-S", synBioHub.getServerUrl(),
+                "-c", collectionPrefix, "-l", "tester", "-p", "secret", "-B");
+        SynBioHubAccessor.configure(cmd);
+        SynBioHubAccessor.restart();
+        CollectionSnapshot.configure(cmd);
+    }
+
+    @After
+    public void tearDown() {
+        CollectionSnapshot.clear();
+        SynBioHubAccessor.logout();
+        synBioHub.stop();
+    }
+
+    @Test
+    public void testSnapshotDocuments() throws Exception {
+        SBOLDocument submission = SynBioHubAccessor.newBlankDocument();
+        ComponentDefinition cd = submission.createComponentDefinition("LacI", "1", ComponentDefinition.PROTEIN);
+        cd.setName("LacI");
+        cd.createAnnotation(new QName(CollectionSnapshot.DCTERMS_NS, "modified", "dcterms"), "2019-01-01T00:00:00Z");
+        cd.createAnnotation(new QName(CollectionSnapshot.DCTERMS_NS, "alternative", "dcterms"), "lacI protein");
+        cd.createAnnotation(new QName(CollectionSnapshot.SD2_NS, "stub_object", "sd2"), "true");
+        cd.createAnnotation(new QName(CollectionSnapshot.SD2_NS, "BioFAB_UID", "sd2"), "B123");
+        SynBioHubAccessor.update(submission);
+
+        submission = SynBioHubAccessor.newBlankDocument();
+        GenericTopLevel attribute = submission.createGenericTopLevel("Temperature", "1",
+                new QName("http://sd2e.org/types/#", "attribute", "sd2"));
+        attribute.setName("Temperature");
+        attribute.addWasDerivedFrom(URI.create("http://purl.obolibrary.org/obo/NCIT_C25206"));
+        SynBioHubAccessor.update(submission);
+
+        String lacI = collectionPrefix + "LacI/1";
+        String temperature = collectionPrefix + "Temperature/1";
+
+        CollectionSnapshot.load();
+
+        // One query covers the whole collection
+        assertEquals(1, synBioHub.getRequestCount("sparql"));
+        assertEquals(0, synBioHub.getRequestCount("getSBOL"));
+
+        Map<String, String> modifiedDates = CollectionSnapshot.getModifiedDates();
+        assertEquals(1, modifiedDates.size());
+        assertEquals("2019-01-01T00:00:00Z", modifiedDates.get(lacI));
+
+        SBOLDocument document = CollectionSnapshot.createDocument(URI.create(lacI));
+        assertNotNull(document);
+        TopLevel topLevel = document.getTopLevel(SynBioHubAccessor.translateURI(URI.create(lacI)));
+        assertTrue(topLevel instanceof ComponentDefinition);
+        assertEquals("LacI", topLevel.getName());
+        assertTrue(((ComponentDefinition)topLevel).getTypes().contains(ComponentDefinition.PROTEIN));
+        assertEquals("true", topLevel.getAnnotation(
+                new QName(CollectionSnapshot.SD2_NS, "stub_object", "sd2")).getStringValue());
+        assertEquals("B123", topLevel.getAnnotation(
+                new QName(CollectionSnapshot.SD2_NS, "BioFAB_UID", "sd2")).getStringValue());
+        assertEquals("lacI protein", topLevel.getAnnotation(
+                new QName(CollectionSnapshot.DCTERMS_NS, "alternative", "dcterms")).getStringValue());
+
+        document = CollectionSnapshot.createDocument(URI.create(temperature));
+        assertNotNull(document);
+        topLevel = document.getTopLevel(SynBioHubAccessor.translateURI(URI.create(temperature)));
+        assertTrue(topLevel instanceof GenericTopLevel);
+        assertEquals(new QName("http://sd2e.org/types/#", "attribute"),
+                     ((GenericTopLevel)topLevel).getRDFType());
+        assertTrue(topLevel.getWasDerivedFroms().contains(
+                URI.create("http://purl.obolibrary.org/obo/NCIT_C25206")));
+
+        // Objects that are not in the collection are retrieved in full
+        assertNull(CollectionSnapshot.createDocument(URI.create(collectionPrefix + "Missing/1")));
+        assertEquals(1, synBioHub.getRequestCount("sparql"));
+    }
+}
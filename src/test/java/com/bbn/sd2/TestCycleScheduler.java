@@ -0,0 +1,50 @@
+package com.bbn.sd2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Checks how the time between passes follows edits and idleness
+ */
+public class TestCycleScheduler {
+    @Test
+    public void testIntervals() {
+        CycleScheduler scheduler = new CycleScheduler(10000, 60000, 240000);
+        assertEquals(60000, scheduler.getIntervalMillis());
+
+        // Edits bring the next pass forward
+        assertEquals(10000, scheduler.passEnded(true));
+
+        // Idle passes back off until the maximum
+        assertEquals(20000, scheduler.passEnded(false));
+        assertEquals(40000, scheduler.passEnded(false));
+        assertEquals(80000, scheduler.passEnded(false));
+        assertEquals(160000, scheduler.passEnded(false));
+        assertEquals(240000, scheduler.passEnded(false));
+        assertEquals(240000, scheduler.passEnded(false));
+
+        long now = System.currentTimeMillis();
+        assertEquals(10000, scheduler.passEnded(true));
+        assertTrue(scheduler.getNextRunMillis() >= now + 10000);
+        assertTrue(scheduler.getNextRunMillis() <= System.currentTimeMillis() + 10000);
+    }
+
+    @Test
+    public void testAwaitNextRun() throws Exception {
+        CycleScheduler scheduler = new CycleScheduler(200, 200, 1000);
+
+        long start = System.currentTimeMillis();
+        scheduler.passEnded(true);
+        scheduler.awaitNextRun();
+        assertTrue(System.currentTimeMillis() - start >= 200);
+
+        // A pass that overran the interval does not wait at all
+        scheduler.passEnded(true);
+        Thread.sleep(300);
+        start = System.currentTimeMillis();
+        scheduler.awaitNextRun();
+        assertTrue(System.currentTimeMillis() - start < 100);
+    }
+}
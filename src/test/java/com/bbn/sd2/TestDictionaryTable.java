@@ -0,0 +1,128 @@
+package com.bbn.sd2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that the column-oriented copies of dictionary entries compare and
+ * map fields in the same way as the entries themselves
+ */
+public class TestDictionaryTable {
+    private static final List<String> HEADERS = Arrays.asList("Common Name", "Type",
+        "SynBioHub URI", "Stub Object?", "Definition URI", "Status",
+        "Last Updated", "Alias Names", "BioFAB UID", "Ginkgo UID");
+
+    private Map<String, Integer> headerMap;
+
+    @Before
+    public void setUp() {
+        Map<String, String> labUIDMap = DictionaryMaintainerApp.labUIDMap;
+        labUIDMap.clear();
+        labUIDMap.put("BioFAB UID", "BioFAB_UID");
+        labUIDMap.put("Ginkgo UID", "Ginkgo_UID");
+
+        DictionaryMaintainerApp.reverseLabUIDMap = new TreeMap<>();
+        for(String label : labUIDMap.keySet()) {
+            DictionaryMaintainerApp.reverseLabUIDMap.put(labUIDMap.get(label), label);
+        }
+
+        headerMap = new TreeMap<>();
+        for(int i=0; i<HEADERS.size(); ++i) {
+            headerMap.put(HEADERS.get(i), i);
+        }
+    }
+
+    private DictionaryEntry entry(int row, String name, String type, String aliases,
+                                  String bioFAB, String ginkgo) throws Exception {
+        List<Object> values = new ArrayList<>(Arrays.asList(name, type,
+            "https://hub.sd2e.org/user/sd2e/design/" + name.replace(' ', '_') + "/1",
+            "YES", "http://identifiers.org/chebi/CHEBI:" + row, "", "", aliases,
+            bioFAB, ginkgo));
+        return new DictionaryEntry("Reagent", headerMap, row, values);
+    }
+
+    @Test
+    public void testMatchesEntries() throws Exception {
+        List<DictionaryEntry> entries = new ArrayList<>();
+        entries.add(entry(3, "LB Broth", "Media", "lb; broth", "B1", "G1, G2"));
+        entries.add(entry(4, "Water", "Solution", "", "", "G3"));
+        entries.add(entry(5, "Beads", "Bead", "b", "B2", ""));
+
+        DictionaryTable table = DictionaryTable.of(entries);
+        assertEquals(3, table.size());
+
+        for(DictionaryEntry e : entries) {
+            DictionaryTable.Row row = table.find(e.row_index);
+            assertEquals(e.row_index, row.getRowIndex());
+            assertEquals(e.name, row.getName());
+            assertEquals(e.type, row.getType());
+            assertEquals("Reagent", row.getTab());
+            assertEquals(e.uri, row.getUri());
+            assertEquals(e.statusCode, row.getStatusCode());
+            assertEquals(e.stub, row.getStub());
+            assertEquals(e.aliasNames, row.getAliasNames());
+            assertEquals(e.labUIDs, row.getLabUIDs());
+            assertEquals(e.generateFieldMap(), row.generateFieldMap());
+            assertTrue(row.matches(e));
+            assertTrue(row.matches(new DictionaryEntry(e)));
+        }
+        assertNull(table.find(6));
+
+        // Each compared field of an edited row is noticed
+        DictionaryEntry e = new DictionaryEntry(entries.get(0));
+        DictionaryTable.Row row = table.get(0);
+        e.name = "LB Media";
+        assertFalse(row.matches(e));
+
+        e = new DictionaryEntry(entries.get(0));
+        e.aliasNames.add("lysogeny");
+        assertFalse(row.matches(e));
+
+        e = new DictionaryEntry(entries.get(0));
+        e.labUIDs.put("Ginkgo_UID", new TreeSet<>(Arrays.asList("G1")));
+        assertFalse(row.matches(e));
+
+        e = new DictionaryEntry(entries.get(0));
+        e.labUIDs.put("BioFAB_UID", null);
+        assertFalse(row.matches(e));
+
+        e = new DictionaryEntry(entries.get(0));
+        e.attributeDefinition = URI.create("http://identifiers.org/chebi/CHEBI:1");
+        assertFalse(row.matches(e));
+
+        // The table keeps the fields as they were when the entry was added
+        entries.get(1).uri = null;
+        entries.get(1).aliasNames.add("H2O");
+        assertFalse(table.get(1).matches(entries.get(1)));
+        assertEquals(new TreeSet<>(), table.get(1).getAliasNames());
+    }
+
+    @Test
+    public void testGrowthAndUnsortedRows() throws Exception {
+        DictionaryTable table = new DictionaryTable(1);
+        for(int row=200; row>=3; --row) {
+            table.add(entry(row, "Reagent " + row, (row % 2 == 0) ? "Media" : "Bead",
+                            "r" + row, "B" + row, ""));
+        }
+
+        assertEquals(198, table.size());
+        assertEquals(200, table.get(0).getRowIndex());
+        assertEquals("Reagent 57", table.find(57).getName());
+        assertEquals("Bead", table.find(57).getType());
+        assertEquals("Media", table.find(58).getType());
+        assertNull(table.find(2));
+    }
+}
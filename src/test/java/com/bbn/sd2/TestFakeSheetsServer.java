@@ -0,0 +1,177 @@
+package com.bbn.sd2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.cli.CommandLine;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.api.services.sheets.v4.model.CellFormat;
+import com.google.api.services.sheets.v4.model.Color;
+import com.google.api.services.sheets.v4.model.Request;
+import com.google.api.services.sheets.v4.model.ValueRange;
+
+/**
+ * Runs the dictionary's Google Sheets access against the local stand-in
+ */
+public class TestFakeSheetsServer {
+    private static final String TAB = "Reagent";
+    private static final List<String> HEADERS = Arrays.asList("Common Name", "Type",
+        "SynBioHub URI", "Stub Object?", "Definition URI / CHEBI ID", "Status",
+        "Definition Import", "Last Updated", "Alias Names");
+    private static final int ROW_COUNT = 50000;
+
+    private FakeSheetsServer sheets;
+    private String spreadsheetId;
+
+    @Before
+    public void setUp() throws Exception {
+        sheets = new FakeSheetsServer();
+        sheets.start();
+        spreadsheetId = sheets.createSpreadsheet(TAB, "Strain");
+
+        List<List<Object>> rows = new ArrayList<>();
+        for(int i=0; i<ROW_COUNT; ++i) {
+            rows.add(new ArrayList<>(Arrays.asList("Reagent " + i, "Protein",
+                "https://hub.sd2e.org/user/sd2e/design/Reagent_" + i + "/1", "YES",
+                "http://identifiers.org/chebi/CHEBI:" + (10000 + i))));
+        }
+        sheets.setDictionaryTab(spreadsheetId, TAB, HEADERS, rows);
+
+        DictionaryMaintainerApp.labUIDMap.clear();
+        CommandLine cmd = DictionaryMaintainerApp.parseArguments("-G", sheets.getRootUrl(),
+                                                                 "-g", spreadsheetId);
+        DictionaryAccessor.configure(cmd);
+        DictionaryAccessor.restart();
+        DictionaryAccessor.getReadRateLimiter().setRequestsPerMinute(6000);
+        DictionaryAccessor.getWriteRateLimiter().setRequestsPerMinute(6000);
+        DictionaryAccessor.cacheSheetProperties();
+    }
+
+    @After
+    public void tearDown() {
+        DictionaryAccessor.getReadRateLimiter().setRequestsPerMinute(60);
+        DictionaryAccessor.getWriteRateLimiter().setRequestsPerMinute(60);
+        sheets.stop();
+    }
+
+    @Test
+    public void testSnapshot() throws Exception {
+        assertNotNull(DictionaryAccessor.getCachedSheetProperties(TAB));
+        assertNotNull(DictionaryAccessor.getCachedSheetProperties("Strain"));
+
+        DictionaryAccessor.cacheTabHeaders(TAB);
+        Map<String, Integer> headerMap = DictionaryAccessor.getDictionaryHeaders(TAB);
+        assertEquals(Integer.valueOf(0), headerMap.get("Common Name"));
+        assertEquals(Integer.valueOf(2), headerMap.get("SynBioHub URI"));
+
+        List<DictionaryEntry> entries = DictionaryAccessor.snapshotCurrentDictionary(TAB);
+        assertEquals(ROW_COUNT, entries.size());
+        assertEquals("Reagent 0", entries.get(0).name);
+        assertEquals(3, entries.get(0).row_index);
+        assertEquals("Reagent " + (ROW_COUNT - 1), entries.get(ROW_COUNT - 1).name);
+    }
+
+    @Test
+    public void testSpreadsheetSnapshot() throws Exception {
+        // Columns beyond the dictionary columns are not part of the entries
+        sheets.setValues(spreadsheetId, TAB + "!K3", Arrays.asList(Arrays.asList((Object)"Notes")));
+        sheets.setValues(spreadsheetId, TAB + "!K" + (ROW_COUNT + 10),
+                         Arrays.asList(Arrays.asList((Object)"Notes")));
+        sheets.setValues(spreadsheetId, "Strain!A1", Arrays.asList(Arrays.asList((Object)"Status"),
+            new ArrayList<Object>(HEADERS), Arrays.asList((Object)"MG1655", "Strain")));
+
+        long readCount = sheets.getReadCount();
+        SpreadsheetSnapshot snapshot = DictionaryAccessor.snapshotSpreadsheet(Arrays.asList(TAB, "Strain"));
+        assertEquals(readCount + 1, sheets.getReadCount());
+
+        DictionaryAccessor.cacheTabHeaders(snapshot, TAB);
+        DictionaryAccessor.cacheTabHeaders(snapshot, "Strain");
+        assertEquals(readCount + 1, sheets.getReadCount());
+        assertEquals(Integer.valueOf(2), DictionaryAccessor.getDictionaryHeaders(TAB).get("SynBioHub URI"));
+
+        List<DictionaryEntry> entries = DictionaryAccessor.snapshotCurrentDictionary(snapshot, TAB);
+        assertEquals(ROW_COUNT, entries.size());
+        assertEquals("Reagent 0", entries.get(0).name);
+        assertEquals("Reagent " + (ROW_COUNT - 1), entries.get(ROW_COUNT - 1).name);
+        assertTrue(DictionaryAccessor.snapshotCurrentDictionary(TAB).get(5).equals(entries.get(5)));
+
+        entries = DictionaryAccessor.snapshotCurrentDictionary(snapshot, "Strain");
+        assertEquals(1, entries.size());
+        assertEquals("MG1655", entries.get(0).name);
+        assertEquals(Arrays.asList("Status"), snapshot.getValues("Strain").get(0));
+    }
+
+    @Test
+    public void testValues() throws Exception {
+        List<ValueRange> updates = new ArrayList<>();
+        updates.add(new ValueRange().setRange(TAB + "!F3")
+                    .setValues(Arrays.asList(Arrays.asList((Object)"Created"))));
+        updates.add(new ValueRange().setRange("Strain!A1:B2")
+                    .setValues(Arrays.asList(Arrays.asList((Object)"x", "y"),
+                                             Arrays.asList((Object)"z"))));
+        DictionaryAccessor.batchUpdateValues(updates);
+
+        List<ValueRange> read = DictionaryAccessor.batchGet(Arrays.asList(TAB + "!F3:F4", "Strain!A:B",
+                                                                          "Strain!C1:C5"));
+        assertEquals(3, read.size());
+        assertEquals(Arrays.asList(Arrays.asList("Created")), read.get(0).getValues());
+        assertEquals(Arrays.asList(Arrays.asList("x", "y"), Arrays.asList("z")),
+                     read.get(1).getValues());
+        assertEquals(null, read.get(2).getValues());
+
+        DictionaryAccessor.cacheTabHeaders(TAB);
+        DictionaryAccessor.writeStatusUpdate(TAB, "Updated");
+        assertEquals(Arrays.asList(Arrays.asList("Updated")), sheets.getValues(spreadsheetId, TAB + "!F1"));
+    }
+
+    @Test
+    public void testProtectionAndFormatting() throws Exception {
+        int rangeId = DictionaryAccessor.protectTab(TAB);
+        assertEquals(1, DictionaryAccessor.getProtectedRanges(TAB).size());
+        assertEquals(0, sheets.getProtectedRanges(spreadsheetId, "Strain").size());
+
+        DictionaryAccessor.unprotectRange(rangeId);
+        assertEquals(0, sheets.getProtectedRanges(spreadsheetId, TAB).size());
+
+        DictionaryAccessor.cacheTabHeaders(TAB);
+        Integer sheetId = DictionaryAccessor.getCachedSheetProperties(TAB).getProperties().getSheetId();
+        Color red = new Color().setRed(1.0f);
+        List<Request> requests = new ArrayList<>();
+        requests.add(DictionaryAccessor.setStatusColor(4, 'F', sheetId, red));
+        DictionaryAccessor.batchUpdateRequests(requests);
+
+        CellFormat format = sheets.getFormat(spreadsheetId, TAB, 4, 5);
+        assertEquals(Float.valueOf(1.0f), format.getTextFormat().getForegroundColor().getRed());
+
+        List<CellFormat> formats = DictionaryAccessor.getColumnFormatting(TAB, "Status");
+        assertEquals(5, formats.size());
+        assertEquals(null, formats.get(0));
+        assertEquals(Boolean.TRUE, formats.get(4).getTextFormat().getItalic());
+    }
+
+    @Test
+    public void testThrottling() throws Exception {
+        // Two reads a second, and a short hold off after each 429
+        sheets.readRequestsPerMinute = 2;
+        sheets.quotaWindowMillis = 1000;
+        sheets.retryAfterSeconds = 1;
+
+        long readCount = sheets.getReadCount();
+        for(int i=0; i<4; ++i) {
+            assertEquals(Arrays.asList(Arrays.asList("Reagent " + i)),
+                         DictionaryAccessor.batchGet(Arrays.asList(TAB + "!A" + (i + 3))).get(0).getValues());
+        }
+
+        assertTrue(sheets.getThrottledCount() > 0);
+        assertEquals(4 + sheets.getThrottledCount(), sheets.getReadCount() - readCount);
+    }
+}
@@ -0,0 +1,137 @@
+package com.bbn.sd2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.namespace.QName;
+
+import org.apache.commons.cli.CommandLine;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.sbolstandard.core2.ComponentDefinition;
+import org.sbolstandard.core2.SBOLDocument;
+import org.sbolstandard.core2.TopLevel;
+import org.synbiohub.frontend.SynBioHubException;
+import org.synbiohub.frontend.SynBioHubFrontend;
+
+/**
+ * Runs SynBioHubAccessor against the local SynBioHub stand-in
+ */
+public class TestFakeSynBioHubServer {
+    private static final QName MODIFIED = new QName(CollectionSnapshot.DCTERMS_NS, "modified", "dcterms");
+
+    private FakeSynBioHubServer synBioHub;
+    private String collectionPrefix;
+
+    @Before
+    public void setUp() throws Exception {
+        synBioHub = new FakeSynBioHubServer();
+        synBioHub.start();
+        collectionPrefix = synBioHub.createCollection("scratch_test");
+
+        CommandLine cmd = DictionaryMaintainerApp.parseArguments("-S", synBioHub.getServerUrl(),
+                "-c", collectionPrefix, "-l", "tester", "-p", "secret");
+        SynBioHubAccessor.configure(cmd, 4);
+        SynBioHubAccessor.restart();
+        NameIndex.beginPass();
+    }
+
+    @After
+    public void tearDown() {
+        SynBioHubAccessor.logout();
+        synBioHub.stop();
+    }
+
+    private static SBOLDocument protein(String name) throws Exception {
+        SBOLDocument document = SynBioHubAccessor.newBlankDocument();
+        ComponentDefinition cd = document.createComponentDefinition(
+            SynBioHubAccessor.sanitizeNameToDisplayID(name), "1", ComponentDefinition.PROTEIN);
+        cd.setName(name);
+        cd.createAnnotation(MODIFIED, "2019-01-01T00:00:00.000Z");
+        return document;
+    }
+
+    @Test
+    public void testUpdateAndRetrieve() throws Exception {
+        assertTrue(SynBioHubAccessor.collectionExists());
+
+        SynBioHubAccessor.update(protein("LacI"));
+        URI uri = URI.create(collectionPrefix + "LacI/1");
+        assertEquals(1, synBioHub.getObjectCount());
+        assertNotNull(synBioHub.getObject(uri.toString()));
+
+        SBOLDocument document = SynBioHubAccessor.retrieve(uri, false);
+        TopLevel topLevel = document.getTopLevel(SynBioHubAccessor.translateURI(uri));
+        assertEquals("LacI", topLevel.getName());
+        assertEquals("2019-01-01T00:00:00.000Z", topLevel.getAnnotation(MODIFIED).getStringValue());
+
+        Map<String, String> modifiedDates = SynBioHubAccessor.getModifiedDates();
+        assertEquals("2019-01-01T00:00:00.000Z", modifiedDates.get(uri.toString()));
+
+        // Names resolve from the SPARQL index, without searching, and
+        // names that are not in it are searched for once
+        assertEquals(uri, SynBioHubAccessor.nameToURI("LacI"));
+        assertEquals(0, synBioHub.getRequestCount("search"));
+        assertNull(SynBioHubAccessor.nameToURI("TetR"));
+        assertNull(SynBioHubAccessor.nameToURI("TetR"));
+        assertEquals(1, synBioHub.getRequestCount("search"));
+
+        assertEquals(uri, SynBioHubAccessor.searchByName("LacI"));
+        assertNull(SynBioHubAccessor.searchByName("TetR"));
+    }
+
+    @Test
+    public void testBatchUpdate() throws Exception {
+        List<SBOLDocument> documents = new ArrayList<>();
+        for(int i=0; i<10; ++i) {
+            documents.add(protein("Protein " + i));
+        }
+        SynBioHubAccessor.update(documents);
+
+        assertEquals(1, synBioHub.getRequestCount("submit"));
+        assertEquals(10, synBioHub.getMembers(SynBioHubAccessor.getCollectionID().toString()).size());
+
+        // Submissions overwrite existing objects
+        SBOLDocument document = protein("Protein 0");
+        document.getTopLevels().iterator().next().setDescription("Updated");
+        SynBioHubAccessor.update(document);
+        assertEquals(10, synBioHub.getObjectCount());
+
+        String uri = collectionPrefix + "Protein0x200/1";
+        assertEquals("Updated", synBioHub.getObject(uri).getTopLevel(URI.create(uri)).getDescription());
+
+        SynBioHubFrontend frontend = new SynBioHubFrontend(synBioHub.getServerUrl());
+        frontend.login("tester", "secret");
+        frontend.removeSBOL(URI.create(uri));
+        assertEquals(9, synBioHub.getObjectCount());
+    }
+
+    @Test
+    public void testInjectedErrors() throws Exception {
+        SynBioHubAccessor.update(protein("LacI"));
+        URI uri = URI.create(collectionPrefix + "LacI/1");
+
+        synBioHub.errorRate = 1.0;
+        try {
+            SynBioHubAccessor.retrieve(uri, false);
+            fail("Retrieve succeeded although every request fails");
+        } catch(SynBioHubException e) {
+        }
+        assertEquals(1, synBioHub.getErrorCount());
+
+        synBioHub.errorRate = 0.0;
+        synBioHub.latencyMillis = 200;
+        long start = System.currentTimeMillis();
+        assertNotNull(SynBioHubAccessor.retrieve(uri, false));
+        assertTrue(System.currentTimeMillis() - start >= 200);
+    }
+}
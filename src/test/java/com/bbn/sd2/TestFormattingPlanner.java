@@ -0,0 +1,90 @@
+package com.bbn.sd2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.api.services.sheets.v4.model.Color;
+import com.google.api.services.sheets.v4.model.DeleteDimensionRequest;
+import com.google.api.services.sheets.v4.model.GridRange;
+import com.google.api.services.sheets.v4.model.Request;
+
+/**
+ * Checks that the Status colors of adjacent rows are merged into as few
+ * requests as possible, without changing their effect
+ */
+public class TestFormattingPlanner {
+    private static final Color GREEN = new Color().setRed(0.0f).setGreen(1.0f).setBlue(0.0f);
+    private static final Color RED = new Color().setRed(1.0f).setGreen(0.0f).setBlue(0.0f);
+
+    private static Request color(int row, Color color) {
+        return DictionaryAccessor.setStatusColor(row, 'F', 7, color.clone());
+    }
+
+    private static void assertRun(Request request, int start, int end, Color color) {
+        GridRange range = request.getRepeatCell().getRange();
+        assertEquals(Integer.valueOf(start), range.getStartRowIndex());
+        assertEquals(Integer.valueOf(end), range.getEndRowIndex());
+        assertEquals(Integer.valueOf(5), range.getStartColumnIndex());
+        assertEquals(Integer.valueOf(6), range.getEndColumnIndex());
+        assertEquals(Integer.valueOf(7), range.getSheetId());
+        assertEquals(color, request.getRepeatCell().getCell().getUserEnteredFormat()
+                     .getTextFormat().getForegroundColor());
+    }
+
+    @Test
+    public void testMergeRuns() {
+        List<Request> requests = new ArrayList<>();
+        for(int row=2; row<500; ++row) {
+            requests.add(color(row, ((row == 100) || (row == 101)) ? RED : GREEN));
+        }
+        // A gap, and rows given out of order
+        requests.add(color(510, GREEN));
+        requests.add(color(502, GREEN));
+        requests.add(color(501, GREEN));
+
+        List<Request> planned = FormattingPlanner.coalesce(requests);
+        assertEquals(5, planned.size());
+        assertRun(planned.get(0), 2, 100, GREEN);
+        assertRun(planned.get(1), 100, 102, RED);
+        assertRun(planned.get(2), 102, 500, GREEN);
+        assertRun(planned.get(3), 501, 503, GREEN);
+        assertRun(planned.get(4), 510, 511, GREEN);
+
+        // The requests themselves are not changed
+        assertEquals(Integer.valueOf(4), requests.get(1).getRepeatCell().getRange().getEndRowIndex());
+    }
+
+    @Test
+    public void testOrderIsKept() {
+        Request delete = new Request().setDeleteDimension(new DeleteDimensionRequest());
+
+        List<Request> requests = new ArrayList<>();
+        requests.add(color(3, GREEN));
+        requests.add(color(4, RED));
+        // The later color of a row wins
+        requests.add(color(4, GREEN));
+        requests.add(delete);
+        requests.add(color(5, RED));
+        requests.add(color(6, RED));
+
+        List<Request> planned = FormattingPlanner.coalesce(requests);
+        assertEquals(3, planned.size());
+        assertRun(planned.get(0), 3, 5, GREEN);
+        assertSame(delete, planned.get(1));
+        assertRun(planned.get(2), 5, 7, RED);
+
+        // Requests for overlapping columns are left alone
+        requests.clear();
+        requests.add(color(3, GREEN));
+        Request wide = color(4, RED);
+        wide.getRepeatCell().getRange().setStartColumnIndex(0);
+        requests.add(wide);
+        requests.add(color(4, GREEN));
+        assertEquals(3, FormattingPlanner.coalesce(requests).size());
+    }
+}
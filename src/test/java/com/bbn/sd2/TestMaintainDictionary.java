@@ -76,6 +76,38 @@ public class TestMaintainDictionary {
         return DictionaryAccessor.execute(request);
     }
 
+    /**
+     * The number of Google Sheets reads one dictionary cycle is allowed to
+     * make.  The budget depends only on the number of tabs, so any read that
+     * is issued once per row will exceed it.
+     */
+    private static long maxSheetsReadsPerCycle() {
+        int tabCount = MaintainDictionary.tabs().size();
+
+        // Sheet properties and protections
+        long reads = 2;
+
+        // Headers, snapshot, header re-check, Status formatting and
+        // the re-read of updated rows for each tab
+        reads += 5 * tabCount;
+
+        // Mapping Failures headers, data and Status column
+        reads += 3;
+
+        return reads;
+    }
+
+    // Runs a dictionary cycle and checks it did not make per-row Sheets reads
+    private static void runDictionaryCycle() throws Exception {
+        long readsBefore = DictionaryAccessor.getSheetsReadCount();
+
+        DictionaryTestShared.initializeTestEnvironment(sheetId);
+
+        long reads = DictionaryAccessor.getSheetsReadCount() - readsBefore;
+        log.info("Dictionary cycle made " + reads + " Google Sheets reads");
+        assert(reads <= maxSheetsReadsPerCycle());
+    }
+
     @BeforeClass
     public static void setUpBeforeClass() throws Exception {
     	// Create scratch spreadsheet
@@ -152,7 +184,7 @@ public class TestMaintainDictionary {
 
         execute(sheetsService.spreadsheets().values().batchUpdate(sheetId, req));
 
-        DictionaryTestShared.initializeTestEnvironment(sheetId);
+        runDictionaryCycle();
         //              DictionaryMaintainerApp.main(options);
     }
 
@@ -365,7 +397,7 @@ public class TestMaintainDictionary {
         testCopyTab();
 
         // Run the dictionary application
-        DictionaryTestShared.initializeTestEnvironment(sheetId);
+        runDictionaryCycle();
 
         // Read entries from the Reagent tab
         List<DictionaryEntry> reagentEntries =
@@ -499,7 +531,7 @@ public class TestMaintainDictionary {
         SynBioHubAccessor.update(document);
 
         // Run the Dictionary
-        DictionaryTestShared.initializeTestEnvironment(sheetId);
+        runDictionaryCycle();
 
         // Fetch the entries from the Attribute tab
         List<DictionaryEntry> attributeEntries =
@@ -603,7 +635,7 @@ public class TestMaintainDictionary {
         DictionaryAccessor.deleteCellShiftUp("Reagent", deleteColumn, 5);
 
         // Run Dictionary update
-        DictionaryTestShared.initializeTestEnvironment(sheetId);
+        runDictionaryCycle();
 
         // Get sheet status
         String status = DictionaryAccessor.getCellData("Reagent", "Status", 1);
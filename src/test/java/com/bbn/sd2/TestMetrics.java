@@ -0,0 +1,88 @@
+package com.bbn.sd2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks the metrics and their Prometheus text format
+ */
+public class TestMetrics {
+    @Before
+    public void setUp() {
+        Metrics.clear();
+    }
+
+    @After
+    public void tearDown() {
+        Metrics.stop();
+        Metrics.clear();
+    }
+
+    @Test
+    public void testCounters() {
+        Metrics.increment(Metrics.GOOGLE_THROTTLES, "quota", "read");
+        Metrics.increment(Metrics.GOOGLE_THROTTLES, "quota", "read");
+        Metrics.add(Metrics.GOOGLE_QUOTA_WAIT, 1.5, "quota", "write");
+        Metrics.set(Metrics.LAST_CYCLE_END, 1000);
+        Metrics.increment(Metrics.SYNBIOHUB_ERRORS, "kind", "a \"quoted\"\nname");
+
+        String text = Metrics.render();
+        assertTrue(text.contains("# TYPE google_throttles_total counter\n"));
+        assertTrue(text.contains("google_throttles_total{quota=\"read\"} 2\n"));
+        assertTrue(text.contains("google_quota_wait_seconds_total{quota=\"write\"} 1.5\n"));
+        assertTrue(text.contains("dictionary_last_cycle_end_timestamp_seconds 1000\n"));
+        assertTrue(text.contains("synbiohub_request_errors_total{kind=\"a \\\"quoted\\\"\\nname\"} 1\n"));
+    }
+
+    @Test
+    public void testHistograms() {
+        Metrics.observe(Metrics.PHASE_SECONDS, 0.02, "phase", "reread", "tab", "Reagent");
+        Metrics.observe(Metrics.PHASE_SECONDS, 3.0, "phase", "reread", "tab", "Reagent");
+        try(Metrics.Timer timer = Metrics.phase("snapshot")) {
+        }
+
+        String text = Metrics.render();
+        String series = "dictionary_phase_seconds_bucket{phase=\"reread\",tab=\"Reagent\",";
+        assertTrue(text.contains("# TYPE dictionary_phase_seconds histogram\n"));
+        assertTrue(text.contains(series + "le=\"0.01\"} 0\n"));
+        assertTrue(text.contains(series + "le=\"0.025\"} 1\n"));
+        assertTrue(text.contains(series + "le=\"2.5\"} 1\n"));
+        assertTrue(text.contains(series + "le=\"5.0\"} 2\n"));
+        assertTrue(text.contains(series + "le=\"+Inf\"} 2\n"));
+        assertTrue(text.contains("dictionary_phase_seconds_count{phase=\"reread\",tab=\"Reagent\"} 2\n"));
+        assertTrue(text.contains("dictionary_phase_seconds_sum{phase=\"reread\",tab=\"Reagent\"} 3.02\n"));
+        assertTrue(text.contains("dictionary_phase_seconds_count{phase=\"snapshot\"} 1\n"));
+    }
+
+    @Test
+    public void testEndpoint() throws Exception {
+        int port = Metrics.start(new InetSocketAddress("localhost", 0));
+        Metrics.increment(Metrics.CYCLE_FAILURES);
+
+        HttpURLConnection connection =
+            (HttpURLConnection)new URL("http://localhost:" + port + "/metrics").openConnection();
+        assertEquals(200, connection.getResponseCode());
+        assertTrue(connection.getContentType().startsWith("text/plain; version=0.0.4"));
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try(InputStream is = connection.getInputStream()) {
+            byte[] buffer = new byte[4096];
+            for(int n; (n = is.read(buffer)) > 0; ) {
+                body.write(buffer, 0, n);
+            }
+        }
+        assertEquals(Metrics.render(), new String(body.toByteArray(), StandardCharsets.UTF_8));
+        assertTrue(Metrics.render().contains("dictionary_cycle_failures_total 1\n"));
+    }
+}
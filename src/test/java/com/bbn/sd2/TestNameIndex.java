@@ -0,0 +1,100 @@
+package com.bbn.sd2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.net.URI;
+
+import org.apache.commons.cli.CommandLine;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.sbolstandard.core2.ComponentDefinition;
+import org.sbolstandard.core2.SBOLDocument;
+import org.synbiohub.frontend.SynBioHubFrontend;
+
+/**
+ * Checks name resolution against the local SynBioHub stand-in
+ */
+public class TestNameIndex {
+    private FakeSynBioHubServer synBioHub;
+    private String collectionPrefix;
+
+    @Before
+    public void setUp() throws Exception {
+        synBioHub = new FakeSynBioHubServer();
+        synBioHub.start();
+        collectionPrefix = synBioHub.createCollection("scratch_test");
+
+        CommandLine cmd = DictionaryMaintainerApp.parseArguments("-S", synBioHub.getServerUrl(),
+                "-c", collectionPrefix, "-l", "tester", "-p", "secret");
+        SynBioHubAccessor.configure(cmd);
+        SynBioHubAccessor.restart();
+        NameIndex.beginPass();
+    }
+
+    @After
+    public void tearDown() {
+        SynBioHubAccessor.logout();
+        synBioHub.stop();
+    }
+
+    private static SBOLDocument component(String displayId, String name) throws Exception {
+        SBOLDocument document = SynBioHubAccessor.newBlankDocument();
+        ComponentDefinition cd = document.createComponentDefinition(displayId, "1", ComponentDefinition.DNA_REGION);
+        cd.setName(name);
+        return document;
+    }
+
+    @Test
+    public void testLookup() throws Exception {
+        SynBioHubAccessor.update(component("LacI", "LacI"));
+        SynBioHubAccessor.update(component("M9_glucose", "M9 glucose"));
+        SynBioHubAccessor.update(component("M9_glucose_2", "M9 glucose"));
+        String lacI = collectionPrefix + "LacI/1";
+
+        assertEquals(URI.create(lacI), SynBioHubAccessor.nameToURI("LacI"));
+
+        // Titles are matched in sanitized form
+        SynBioHubAccessor.update(component("L0x2Darabinose", "L-arabinose"));
+        String arabinose = collectionPrefix + "L0x2Darabinose/1";
+        NameIndex.beginPass();
+        assertEquals(URI.create(arabinose), SynBioHubAccessor.nameToURI("L-arabinose"));
+
+        // Names with more than one match are not resolved
+        assertNull(SynBioHubAccessor.nameToURI("M9 glucose"));
+
+        // One query per pass, and no searches for names in the collection
+        assertEquals(2, synBioHub.getRequestCount("sparql"));
+        assertEquals(0, synBioHub.getRequestCount("search"));
+
+        // Names that are not in the collection are searched for once
+        assertNull(SynBioHubAccessor.nameToURI("Missing"));
+        assertNull(SynBioHubAccessor.nameToURI("Missing"));
+        assertEquals(1, synBioHub.getRequestCount("search"));
+
+        // Display IDs are not matched
+        SynBioHubAccessor.update(component("pBAD", "arabinose promoter"));
+        NameIndex.beginPass();
+        assertNull(SynBioHubAccessor.nameToURI("pBAD"));
+        assertEquals(2, synBioHub.getRequestCount("search"));
+
+        // Objects outside the collection are still found by the search, so
+        // that the entry can be reported
+        synBioHub.user = "other";
+        String otherPrefix = synBioHub.createCollection("design");
+        SynBioHubFrontend frontend = new SynBioHubFrontend(synBioHub.getServerUrl());
+        frontend.login("tester", "secret");
+        frontend.addToCollection(URI.create(otherPrefix + "design_collection/1"), true,
+                                 component("Outside", "Outside"));
+        String outside = otherPrefix + "Outside/1";
+        assertEquals(URI.create(outside), SynBioHubAccessor.nameToURI("Outside"));
+        assertEquals(URI.create(outside), SynBioHubAccessor.nameToURI("Outside"));
+        assertEquals(3, synBioHub.getRequestCount("search"));
+        assertEquals(3, synBioHub.getRequestCount("sparql"));
+
+        // URLs are returned as they are
+        assertEquals(URI.create(lacI), SynBioHubAccessor.nameToURI(lacI));
+        assertEquals(3, synBioHub.getRequestCount("sparql"));
+    }
+}
@@ -0,0 +1,202 @@
+package com.bbn.sd2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.xml.namespace.QName;
+
+import org.json.JSONArray;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.sbolstandard.core2.SBOLDocument;
+
+/**
+ * Runs whole dictionary passes with both Google Sheets and SynBioHub
+ * replaced by local stand-ins
+ */
+public class TestOfflineDictionary {
+    private static final List<String> HEADERS = Arrays.asList("Common Name", "Type",
+        "SynBioHub URI", "Stub Object?", "Definition URI / CHEBI ID", "Status",
+        "Definition Import", "Last Updated", "Alias Names");
+    private static final List<String> MAPPING_FAILURE_HEADERS = Arrays.asList("Experiment/Run",
+        "Lab", "Item Name", "Item ID", "Item Type (Strain or Reagent Tab)", "Status");
+
+    private FakeSheetsServer sheets;
+    private FakeSynBioHubServer synBioHub;
+    private String spreadsheetId;
+    private String collectionPrefix;
+    private File conflictFile;
+
+    @Before
+    public void setUp() throws Exception {
+        sheets = new FakeSheetsServer();
+        sheets.start();
+        synBioHub = new FakeSynBioHubServer();
+        synBioHub.start();
+        collectionPrefix = synBioHub.createCollection("scratch_test");
+
+        List<String> tabs = new ArrayList<>(MaintainDictionary.tabs());
+        tabs.add("Mapping Failures");
+        spreadsheetId = sheets.createSpreadsheet(tabs.toArray(new String[0]));
+
+        for(String tab : MaintainDictionary.tabs()) {
+            sheets.setDictionaryTab(spreadsheetId, tab, HEADERS, new ArrayList<>());
+        }
+        sheets.setDictionaryTab(spreadsheetId, "Mapping Failures", MAPPING_FAILURE_HEADERS,
+                                new ArrayList<>());
+
+        List<List<Object>> reagents = new ArrayList<>();
+        for(int i=0; i<20; ++i) {
+            reagents.add(new ArrayList<>(Arrays.asList("Reagent " + i, (i % 2 == 0) ? "Protein" : "Media")));
+        }
+        sheets.setDictionaryTab(spreadsheetId, "Reagent", HEADERS, reagents);
+
+        List<List<Object>> strains = new ArrayList<>();
+        for(int i=0; i<5; ++i) {
+            strains.add(new ArrayList<>(Arrays.asList("Strain " + i, "Strain")));
+        }
+        sheets.setDictionaryTab(spreadsheetId, "Strain", HEADERS, strains);
+
+        conflictFile = File.createTempFile("conflicted_entries", ".json");
+        conflictFile.delete();
+
+        DictionaryMaintainerApp.restart();
+    }
+
+    @After
+    public void tearDown() {
+        MaintainDictionary.optimisticConcurrency = false;
+        SynBioHubAccessor.logout();
+        DictionaryAccessor.getReadRateLimiter().setRequestsPerMinute(60);
+        DictionaryAccessor.getWriteRateLimiter().setRequestsPerMinute(60);
+        synBioHub.stop();
+        sheets.stop();
+        conflictFile.delete();
+    }
+
+    private void runPass() throws Exception {
+        DictionaryMaintainerApp.restart();
+        DictionaryMaintainerApp.main("-t", "-n", "-s", "0", "-w", "4",
+                                     "-i", "testConfig.json",
+                                     "-S", synBioHub.getServerUrl(), "-c", collectionPrefix,
+                                     "-l", "tester", "-p", "secret",
+                                     "-G", sheets.getRootUrl(), "-g", spreadsheetId,
+                                     "-K", conflictFile.getPath());
+    }
+
+    /**
+     * Set an alias of the first reagent, and change it again while the
+     * first alias is being committed to SynBioHub
+     */
+    private void editDuringCommit() throws Exception {
+        sheets.setValues(spreadsheetId, "Reagent!I3", Arrays.asList(Arrays.asList("LB")));
+        synBioHub.beforeSubmit = () -> {
+            synBioHub.beforeSubmit = null;
+            sheets.setValues(spreadsheetId, "Reagent!I3", Arrays.asList(Arrays.asList("LB Broth")));
+        };
+        runPass();
+        assertEquals("LB Broth", sheets.getValues(spreadsheetId, "Reagent!I3").get(0).get(0));
+    }
+
+    private void assertAliasCommitted(String alias) {
+        SBOLDocument document = synBioHub.getObject(collectionPrefix + "Reagent0x200/1");
+        QName qName = new QName(CollectionSnapshot.DCTERMS_NS, "alternative");
+        assertEquals(alias,
+                     document.getTopLevels().iterator().next().getAnnotation(qName).getStringValue());
+    }
+
+    @Test
+    public void testPasses() throws Exception {
+        Metrics.clear();
+        runPass();
+
+        // Every row has a stub in SynBioHub, and its URI in the spreadsheet
+        assertEquals(25, synBioHub.getObjectCount());
+        List<List<Object>> uris = sheets.getValues(spreadsheetId, "Reagent!C3:C22");
+        for(int i=0; i<20; ++i) {
+            String uri = collectionPrefix + "Reagent0x20" + i + "/1";
+            assertEquals(uri, uris.get(i).get(0));
+
+            SBOLDocument document = synBioHub.getObject(uri);
+            assertNotNull(document);
+            assertEquals("Reagent " + i, document.getTopLevels().iterator().next().getName());
+        }
+        assertEquals(collectionPrefix + "Strain0x200/1",
+                     sheets.getValues(spreadsheetId, "Strain!C3").get(0).get(0));
+
+        // Every phase and request was measured
+        String metrics = Metrics.render();
+        assertTrue(metrics.contains("dictionary_cycle_seconds_count 1\n"));
+        assertTrue(metrics.contains("dictionary_phase_seconds_count{phase=\"reconcile\",tab=\"Reagent\"} 1\n"));
+        assertTrue(metrics.contains("dictionary_phase_seconds_count{phase=\"snapshot\"} 1\n"));
+        assertTrue(metrics.contains("google_request_seconds_count{kind=\"Spreadsheets.Values.BatchGet\"}"));
+        assertTrue(metrics.contains("synbiohub_request_seconds_count{kind=\"submit\"}"));
+
+        // A second pass finds nothing to change
+        long submitCount = synBioHub.getRequestCount("submit");
+        runPass();
+        assertEquals(submitCount, synBioHub.getRequestCount("submit"));
+        assertEquals(25, synBioHub.getObjectCount());
+
+        // The Status colors written in the first pass are remembered, so
+        // the second pass did not read the formatting of the column
+        String statusFormats = "dictionary_phase_seconds_count{phase=\"status_formats\",tab=\"Reagent\"}";
+        assertTrue(!Metrics.render().contains(statusFormats));
+
+        // After someone else edits the spreadsheet, it is read again
+        sheets.setValues(spreadsheetId, "Reagent!I3", Arrays.asList(Arrays.asList("LB")));
+        runPass();
+        assertTrue(Metrics.render().contains(statusFormats + " 1\n"));
+    }
+
+    @Test
+    public void testEditDuringCommit() throws Exception {
+        MaintainDictionary.optimisticConcurrency = true;
+        runPass();
+        editDuringCommit();
+
+        // SynBioHub now holds a later modified date than the row, but the
+        // next pass keeps the edit instead of syncing back from SynBioHub
+        runPass();
+        assertEquals("LB Broth", sheets.getValues(spreadsheetId, "Reagent!I3").get(0).get(0));
+        assertAliasCommitted("LB Broth");
+    }
+
+    @Test
+    public void testEditDuringCommitAcrossRestart() throws Exception {
+        MaintainDictionary.optimisticConcurrency = true;
+        runPass();
+        editDuringCommit();
+
+        // The edited row is saved, rather than only held in memory
+        String uri = collectionPrefix + "Reagent0x200/1";
+        JSONArray saved = new JSONArray(new String(Files.readAllBytes(conflictFile.toPath()),
+                                                   StandardCharsets.UTF_8));
+        assertEquals(1, saved.length());
+        assertEquals(uri, saved.getString(0));
+
+        // A restart forgets everything but the saved file, and the next
+        // pass still keeps the edit
+        ConflictStore.configure(DictionaryMaintainerApp.parseArguments(
+                "-K", new File(conflictFile.getPath() + ".missing").getPath()));
+        assertTrue(!ConflictStore.contains(URI.create(uri)));
+        runPass();
+        assertEquals("LB Broth", sheets.getValues(spreadsheetId, "Reagent!I3").get(0).get(0));
+        assertAliasCommitted("LB Broth");
+
+        // Once the edit is committed, the row is forgotten
+        saved = new JSONArray(new String(Files.readAllBytes(conflictFile.toPath()),
+                                         StandardCharsets.UTF_8));
+        assertEquals(0, saved.length());
+    }
+}
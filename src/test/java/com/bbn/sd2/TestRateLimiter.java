@@ -0,0 +1,69 @@
+package com.bbn.sd2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TestRateLimiter {
+
+    @Test
+    public void testBurstDoesNotWait() throws Exception {
+        RateLimiter limiter = new RateLimiter("test", 60);
+
+        for(int i=0; i<60; ++i) {
+            limiter.acquire();
+        }
+
+        assertEquals(60, limiter.getTokenCount());
+        assertEquals(0, limiter.getWaitCount());
+        assertEquals(0, limiter.getWaitMillis());
+    }
+
+    @Test
+    public void testWaitsWhenExhausted() throws Exception {
+        // 600 requests per minute refills one token every 100 ms
+        RateLimiter limiter = new RateLimiter("test", 600);
+
+        for(int i=0; i<600; ++i) {
+            limiter.acquire();
+        }
+
+        long start = System.currentTimeMillis();
+        limiter.acquire();
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertEquals(1, limiter.getWaitCount());
+        assertTrue(elapsed >= 50);
+        assertTrue(limiter.getWaitMillis() <= 100);
+    }
+
+    @Test
+    public void testThrottleAdaptsRate() throws Exception {
+        RateLimiter limiter = new RateLimiter("test", 600);
+
+        limiter.throttled("0");
+        assertEquals(1, limiter.getThrottleCount());
+        assertEquals(300.0, limiter.getRequestsPerMinute(), 0.001);
+        assertTrue(limiter.getAvailableTokens() <= 1.0);
+
+        // Successful requests gradually restore the configured rate
+        for(int i=0; i<600; ++i) {
+            limiter.succeeded();
+        }
+        assertEquals(600.0, limiter.getRequestsPerMinute(), 0.001);
+    }
+
+    @Test
+    public void testRetryAfterHoldsOff() throws Exception {
+        RateLimiter limiter = new RateLimiter("test", 600);
+
+        limiter.throttled("1");
+
+        long start = System.currentTimeMillis();
+        limiter.acquire();
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertTrue(elapsed >= 900);
+    }
+}
@@ -0,0 +1,139 @@
+package com.bbn.sd2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.bbn.sd2.DictionaryEntry.StubStatus;
+
+/**
+ * Checks that rows decoded with a compiled layout give the entries the
+ * dictionary expects
+ */
+public class TestRowDecoder {
+    private static final List<String> HEADERS = Arrays.asList("Common Name", "Type",
+        "SynBioHub URI", "Stub Object?", "Definition URI / CHEBI ID",
+        "Definition Import", "Status", "Last Updated", "Alias Names",
+        "BioFAB UID", "Ginkgo UID");
+
+    @Before
+    public void setUp() {
+        Map<String, String> labUIDMap = DictionaryMaintainerApp.labUIDMap;
+        labUIDMap.clear();
+        labUIDMap.put("BioFAB UID", "BioFAB_UID");
+        labUIDMap.put("Ginkgo UID", "Ginkgo_UID");
+        labUIDMap.put("Transcriptic UID", "Transcriptic_UID");
+    }
+
+    private static Map<String, Integer> headerMap(List<String> headers) {
+        Map<String, Integer> headerMap = new TreeMap<>();
+        for(int i=0; i<headers.size(); ++i) {
+            headerMap.put(headers.get(i), i);
+        }
+        return headerMap;
+    }
+
+    @Test
+    public void testDecodeRow() throws Exception {
+        RowDecoder decoder = RowDecoder.compile("Reagent", headerMap(HEADERS));
+
+        List<Object> row = new ArrayList<>(Arrays.asList("LB Broth", "Media",
+            "https://hub.sd2e.org/user/sd2e/design/LB_Broth/1", "YES",
+            "http://identifiers.org/chebi/CHEBI:1", "http://example.org/import",
+            "Synchronized", "2019-01-01T00:00:00Z", " lb ;broth;; ", "B1",
+            "G2 , G1,"));
+        DictionaryEntry e = decoder.decode(7, row);
+
+        assertEquals("Reagent", e.tab);
+        assertEquals(7, e.row_index);
+        assertEquals(StatusCode.VALID, e.statusCode);
+        assertEquals("LB Broth", e.name);
+        assertEquals("Media", e.type);
+        assertEquals(URI.create("https://hub.sd2e.org/user/sd2e/design/LB_Broth/1"), e.uri);
+        assertEquals(StubStatus.YES, e.stub);
+        assertEquals(URI.create("http://identifiers.org/chebi/CHEBI:1"), e.attributeDefinition);
+        assertEquals(Integer.valueOf(4), e.definitionURIColumn);
+        assertEquals("http://example.org/import", e.definitionImport);
+        assertEquals("Synchronized", e.statusLog);
+        assertEquals("2019-01-01T00:00:00Z", e.lastUpdated);
+        assertEquals(new Date(1546300800000L), e.modifiedDate);
+        assertEquals(new HashSet<>(Arrays.asList("lb", "broth")), e.aliasNames);
+        assertEquals(new TreeSet<>(Arrays.asList("B1")), e.labUIDs.get("BioFAB_UID"));
+        assertEquals(new TreeSet<>(Arrays.asList("G1", "G2")), e.labUIDs.get("Ginkgo_UID"));
+        assertEquals(2, e.labUIDs.size());
+
+        // The public constructor decodes rows in the same way
+        assertTrue(e.equals(new DictionaryEntry("Reagent", headerMap(HEADERS), 7, row)));
+    }
+
+    @Test
+    public void testShortAndInvalidRows() throws Exception {
+        RowDecoder decoder = RowDecoder.compile("Reagent", headerMap(HEADERS));
+
+        DictionaryEntry e = decoder.decode(3, new ArrayList<>(Arrays.asList("Beads")));
+        assertEquals(StatusCode.MISSING_TYPE, e.statusCode);
+        assertNull(e.uri);
+        assertEquals("", e.definitionImport);
+        assertNull(e.modifiedDate);
+        assertNull(e.labUIDs.get("BioFAB_UID"));
+        assertTrue(e.labUIDs.containsKey("BioFAB_UID"));
+
+        e = decoder.decode(4, new ArrayList<>(Arrays.asList("", "Bead", "", "maybe",
+            "not a uri", "", "", "January")));
+        assertEquals(StatusCode.MISSING_NAME, e.statusCode);
+        assertEquals(StubStatus.UNDEFINED, e.stub);
+        assertNull(e.attributeDefinition);
+        assertEquals("January", e.lastUpdated);
+        assertNull(e.modifiedDate);
+
+        e = decoder.decode(5, new ArrayList<>(Arrays.asList("Thing", "Gizmo")));
+        assertEquals(StatusCode.INVALID_TYPE, e.statusCode);
+
+        // Tabs without the optional columns
+        decoder = RowDecoder.compile("Reagent", headerMap(Arrays.asList("Common Name",
+            "Type", "SynBioHub URI", "Status", "Last Updated", "Definition URI")));
+        e = decoder.decode(6, new ArrayList<>(Arrays.asList("Water", "Solution", "", "",
+            "", "http://identifiers.org/chebi/CHEBI:15377")));
+        assertEquals(StatusCode.VALID, e.statusCode);
+        assertEquals(Integer.valueOf(5), e.definitionURIColumn);
+        assertEquals(URI.create("http://identifiers.org/chebi/CHEBI:15377"), e.attributeDefinition);
+        assertTrue(e.aliasNames.isEmpty());
+        assertTrue(e.labUIDs.isEmpty());
+    }
+
+    @Test
+    public void testSplitUIDs() {
+        String[] cells = { "a", " a ", "a,b", "a , b", "a,,b", "a,", "a, ,", ",a",
+            " ,a", ",", ",,", "a\t,\nb", "  a  ,  b  ", "a ,  , b", "a,b, " };
+
+        for(String cell : cells) {
+            assertEquals(cell, Arrays.asList(cell.split("\\s*,\\s*")),
+                         RowDecoder.splitUIDs(cell));
+        }
+    }
+
+    @Test
+    public void testSplitAliases() {
+        Set<String> aliases = new HashSet<>();
+        RowDecoder.splitAliases("a; b ;;c ; ", aliases);
+        assertEquals(new HashSet<>(Arrays.asList("a", "b", "c")), aliases);
+
+        aliases.clear();
+        RowDecoder.splitAliases(";", aliases);
+        assertTrue(aliases.isEmpty());
+    }
+}
@@ -0,0 +1,127 @@
+package com.bbn.sd2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.apache.commons.cli.CommandLine;
+import org.junit.After;
+import org.junit.Test;
+
+import com.google.api.services.sheets.v4.model.Request;
+import com.google.api.services.sheets.v4.model.ValueRange;
+
+/**
+ * Checks that collected writes are split into requests of capped size,
+ * and that writes to rows edited since they were read are dropped
+ */
+public class TestWriteBuffer {
+    private static final String TAB = "Reagent";
+    private static final List<String> HEADERS = Arrays.asList("Common Name", "Type",
+        "SynBioHub URI", "Stub Object?", "Definition URI / CHEBI ID", "Status",
+        "Definition Import", "Last Updated", "Alias Names");
+
+    private FakeSheetsServer sheets = null;
+
+    @After
+    public void tearDown() {
+        WriteBuffer.maxRequestBytes = 2000000;
+        if(sheets != null) {
+            DictionaryAccessor.getReadRateLimiter().setRequestsPerMinute(60);
+            DictionaryAccessor.getWriteRateLimiter().setRequestsPerMinute(60);
+            sheets.stop();
+        }
+    }
+
+    @Test
+    public void testSplit() throws IOException {
+        List<ValueRange> values = new ArrayList<>();
+        for(int row=3; row<103; ++row) {
+            values.add(DictionaryAccessor.writeLocationText("Reagent!C" + row,
+                                                            "https://example.org/" + row));
+        }
+
+        // Everything fits in one request
+        List<List<ValueRange>> batches = WriteBuffer.split(values);
+        assertEquals(1, batches.size());
+        assertEquals(100, batches.get(0).size());
+
+        // Small requests hold as many writes as fit, and at least one
+        WriteBuffer.maxRequestBytes = 500;
+        batches = WriteBuffer.split(values);
+        assertTrue(batches.size() > 1);
+        int count = 0;
+        for(List<ValueRange> batch : batches) {
+            assertTrue(!batch.isEmpty());
+            count += batch.size();
+        }
+        assertEquals(100, count);
+
+        WriteBuffer.maxRequestBytes = 1;
+        assertEquals(100, WriteBuffer.split(values).size());
+        assertEquals(0, WriteBuffer.split(new ArrayList<ValueRange>()).size());
+    }
+
+    @Test
+    public void testEditedRows() throws Exception {
+        sheets = new FakeSheetsServer();
+        sheets.start();
+        String spreadsheetId = sheets.createSpreadsheet(TAB);
+
+        List<List<Object>> rows = new ArrayList<>();
+        for(int i=0; i<3; ++i) {
+            rows.add(new ArrayList<>(Arrays.asList("Reagent " + i, "Protein")));
+        }
+        sheets.setDictionaryTab(spreadsheetId, TAB, HEADERS, rows);
+
+        CommandLine cmd = DictionaryMaintainerApp.parseArguments("-G", sheets.getRootUrl(),
+                                                                 "-g", spreadsheetId);
+        DictionaryAccessor.configure(cmd);
+        DictionaryAccessor.restart();
+        DictionaryAccessor.getReadRateLimiter().setRequestsPerMinute(6000);
+        DictionaryAccessor.getWriteRateLimiter().setRequestsPerMinute(6000);
+        DictionaryAccessor.cacheSheetProperties();
+
+        // The rows as they were read, before the third row is edited
+        Map<Integer, List<Object>> expected = new TreeMap<>();
+        expected.put(SpreadsheetSnapshot.HEADER_ROW, new ArrayList<>(HEADERS));
+        for(int row=3; row<=5; ++row) {
+            expected.put(row, sheets.getValues(spreadsheetId, TAB + "!" + row + ":" + row).get(0));
+        }
+        sheets.setValues(spreadsheetId, TAB + "!A4", Arrays.asList(Arrays.asList("Edited")));
+
+        List<ValueRange> values = new ArrayList<>();
+        List<Request> requests = new ArrayList<>();
+        for(int row=3; row<=5; ++row) {
+            values.add(DictionaryAccessor.writeLocationText(TAB + "!F" + row, "Valid " + row));
+            requests.add(DictionaryAccessor.setStatusColor(row - 1, 'F',
+                DictionaryAccessor.getCachedSheetProperties(TAB).getProperties().getSheetId(),
+                MaintainDictionary.greenColor()));
+        }
+
+        WriteBuffer.expect(TAB, expected);
+        WriteBuffer.add(values, requests, -1, null);
+        Map<String, Set<Integer>> editedRows = WriteBuffer.flush();
+        assertTrue(WriteBuffer.isEmpty());
+
+        assertEquals(1, editedRows.size());
+        assertEquals(Collections.singleton(4), editedRows.get(TAB));
+        assertEquals("Valid 3", sheets.getValues(spreadsheetId, TAB + "!F3").get(0).get(0));
+        assertTrue(sheets.getValues(spreadsheetId, TAB + "!F4").isEmpty());
+        assertEquals("Valid 5", sheets.getValues(spreadsheetId, TAB + "!F5").get(0).get(0));
+        assertEquals("Edited", sheets.getValues(spreadsheetId, TAB + "!A4").get(0).get(0));
+
+        // Google indexes the rows of formats from zero
+        assertTrue(sheets.getFormat(spreadsheetId, TAB, 2, 5) != null);
+        assertEquals(null, sheets.getFormat(spreadsheetId, TAB, 3, 5));
+        assertTrue(sheets.getFormat(spreadsheetId, TAB, 4, 5) != null);
+    }
+}
@@ -0,0 +1,156 @@
+package com.bbn.sd2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+import com.google.api.services.sheets.v4.model.ValueRange;
+
+/**
+ * Checks that writes of adjacent cells are merged into as few ranges as
+ * possible, without changing their effect
+ */
+public class TestWritePlanner {
+    private static ValueRange cell(String location, Object value) throws IOException {
+        return DictionaryAccessor.writeLocationText(location, value.toString());
+    }
+
+    private static void assertRange(ValueRange valueRange, String range, List<List<Object>> values) {
+        assertEquals(range, valueRange.getRange());
+        assertEquals(values, valueRange.getValues());
+    }
+
+    private static List<List<Object>> column(Object... values) {
+        List<List<Object>> rows = new ArrayList<>();
+        for(Object value : values) {
+            rows.add(Collections.singletonList(value));
+        }
+        return rows;
+    }
+
+    @Test
+    public void testMergeColumnsAndRows() throws IOException {
+        List<ValueRange> values = new ArrayList<>();
+        for(int row=2; row<=4; ++row) {
+            values.add(cell("Reagent!C" + row, "uri" + row));
+        }
+        // A gap, and rows given out of order
+        values.add(cell("Reagent!C7", "uri7"));
+        values.add(cell("Reagent!C6", "uri6"));
+        // The later write of a cell wins
+        values.add(cell("Reagent!C3", "changed"));
+        // Cells of one row that are alone in their column
+        values.add(cell("Reagent!Y10", "y"));
+        values.add(cell("Reagent!AA10", "aa"));
+        values.add(cell("Reagent!Z10", "z"));
+        values.add(cell("Reagent!AC10", "ac"));
+
+        List<ValueRange> planned = WritePlanner.merge(values);
+        assertEquals(4, planned.size());
+        assertRange(planned.get(0), "Reagent!C2:C4", column("uri2", "changed", "uri4"));
+        assertRange(planned.get(1), "Reagent!C6:C7", column("uri6", "uri7"));
+        assertRange(planned.get(2), "Reagent!Y10:AA10",
+                    Collections.singletonList(Arrays.asList("y", "z", "aa")));
+        assertRange(planned.get(3), "Reagent!AC10", column("ac"));
+    }
+
+    @Test
+    public void testOrderIsKept() throws IOException {
+        ValueRange wide = new ValueRange().setRange("Reagent!A3:B3")
+            .setValues(Collections.singletonList(Arrays.asList("a", "b")));
+
+        List<ValueRange> values = new ArrayList<>();
+        values.add(cell("Reagent!A2", "2"));
+        values.add(cell("Reagent!A3", "3"));
+        values.add(wide);
+        values.add(cell("Reagent!A4", "4"));
+        values.add(cell("Strain!A5", "5"));
+
+        List<ValueRange> planned = WritePlanner.merge(values);
+        assertEquals(4, planned.size());
+        assertRange(planned.get(0), "Reagent!A2:A3", column("2", "3"));
+        assertSame(wide, planned.get(1));
+        assertRange(planned.get(2), "Reagent!A4", column("4"));
+        assertRange(planned.get(3), "Strain!A5", column("5"));
+
+        assertEquals(27, WritePlanner.columnIndex("AB"));
+        assertEquals("AB", WritePlanner.columnName(27));
+        assertEquals("Z", WritePlanner.columnName(25));
+    }
+
+    @Test
+    public void testDropUnchanged() throws IOException {
+        Map<Integer, List<Object>> rows = new TreeMap<>();
+        rows.put(3, Arrays.asList("Water", "uri3", "Valid"));
+        rows.put(4, Arrays.asList("Beads"));
+
+        List<ValueRange> values = new ArrayList<>();
+        values.add(cell("Reagent!B3", "uri3"));
+        values.add(cell("Reagent!C3", "Invalid"));
+        // Only the last value written to a cell counts
+        values.add(cell("Reagent!C3", "Valid"));
+        // An empty cell, a changed cell, and rows or tabs that are not known
+        values.add(cell("Reagent!C4", ""));
+        values.add(cell("Reagent!A4", "LB Broth"));
+        values.add(cell("Reagent!A5", "Agar"));
+        values.add(cell("Strain!B3", "uri3"));
+
+        List<ValueRange> changed = WritePlanner.dropUnchanged(values, "Reagent", rows);
+        assertEquals(3, changed.size());
+        assertSame(values.get(4), changed.get(0));
+        assertSame(values.get(5), changed.get(1));
+        assertSame(values.get(6), changed.get(2));
+
+        // Cells written after a larger range are always written
+        ValueRange wide = new ValueRange().setRange("Reagent!A3:B3")
+            .setValues(Collections.singletonList(Arrays.asList("a", "b")));
+        values.clear();
+        values.add(cell("Reagent!A3", "Water"));
+        values.add(wide);
+        values.add(cell("Reagent!B3", "uri3"));
+        changed = WritePlanner.dropUnchanged(values, "Reagent", rows);
+        assertEquals(2, changed.size());
+        assertSame(wide, changed.get(0));
+    }
+
+    @Test
+    public void testMappingFailureRowsAfterDeletion() throws IOException {
+        // Mapping Failures as read: the header, a resolved row, and a row
+        // that is missing its lab, with an empty Status
+        List<List<Object>> values = new ArrayList<>();
+        values.add(Arrays.asList("Experiment/Run", "Lab", "Item Name", "Item ID",
+                                 "Item Type (Strain or Reagent Tab)", "Status"));
+        values.add(Arrays.asList("run1", "Lab1", "Water", "w1", "Reagent", "Missing Lab value"));
+        values.add(Arrays.asList("run2", "", "Beads", "b1", "Reagent", ""));
+
+        Map<String, String> rowEntries = new HashMap<>();
+        rowEntries.put("Experiment/Run", "run2");
+        rowEntries.put("Item Name", "Beads");
+        MappingFailureEntry entry = new MappingFailureEntry(rowEntries, 2);
+        // The resolved row above it is deleted
+        entry.decrementRow(1);
+        assertEquals(2, entry.getRow());
+        assertEquals(3, entry.getSnapshotRow());
+
+        Map<Integer, List<Object>> rows =
+            MaintainDictionary.mappingFailureRows(values, Collections.singletonList(entry));
+        assertEquals(values.get(2), rows.get(2));
+
+        // The Status of the moved row changes, though the deleted row that
+        // was in its place held the same text
+        List<ValueRange> updates = new ArrayList<>();
+        updates.add(cell("Mapping Failures!F" + entry.getRow(), entry.getStatus()));
+        assertEquals("Missing Lab value", entry.getStatus());
+        assertEquals(1, WritePlanner.dropUnchanged(updates, "Mapping Failures", rows).size());
+    }
+}